@@ -9,8 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 public class Checker {
@@ -22,12 +21,78 @@ public class Checker {
 
 	protected List<Metrics> _allMetrics = new ArrayList<>();
 
+	// The condition on the metrics given by the "rule" field, checked with the thresholds, and its scope
+	private Rule rule = null;
+	private String ruleScope = "";
+
 	private String jsonDefectTemplate = null;
 	protected String jsonDefectTemplateFilename = null;
 
 	private String jsonDefectEventTemplate = null;
 	protected String jsonDefectEventTemplateFilename = null;
 
+	/**
+	 * The thresholds as compiled by compile(): the scopes are resolved for each kind of measurable object and the
+	 * metrics into their handles. It's compiled again if the name, the thresholds, the rule or their scopes change.
+	 */
+	private static final class Compiled {
+		final String name;
+		final boolean valid;
+		final Metrics[] thresholds;
+		final Rule rule;
+		// The scopes of the thresholds, followed by the one of the rule if any
+		final String[] scopes;
+		// Indexed by scope (as above) and by Scope ordinal
+		final boolean[][] applies;
+		// Matched against the names of the OTHER scope, null when the threshold applies to all the objects
+		final Pattern[] patterns;
+
+		Compiled(Checker checker) {
+			name = checker.getName();
+			valid = checker.isValid();
+			thresholds = checker._allMetrics.toArray(new Metrics[0]);
+			rule = checker.rule;
+			int count = thresholds.length + ((rule != null) ? 1 : 0);
+			scopes = new String[count];
+			applies = new boolean[count][Scope.values().length];
+			patterns = new Pattern[count];
+			for (int i = 0; i < count; i++) {
+				String scope = (i < thresholds.length) ? thresholds[i].scope : checker.ruleScope;
+				scopes[i] = scope;
+				boolean all = (scope == null) || scope.isEmpty();
+				patterns[i] = all ? null : Pattern.compile(scope);
+				for (Scope kind : Scope.values()) {
+					applies[i][kind.ordinal()] = all || ((kind.getName() != null) && patterns[i].matcher(kind.getName()).matches());
+				}
+				if (i < thresholds.length)
+					thresholds[i].getRef();
+			}
+		}
+
+		boolean isCurrent(Checker checker) {
+			List<Metrics> currentThresholds = checker._allMetrics;
+			if ((checker.getName() != name) || (currentThresholds.size() != thresholds.length) || (checker.rule != rule))
+				return false;
+			for (int i = 0; i < thresholds.length; i++) {
+				if ((currentThresholds.get(i) != thresholds[i]) || (thresholds[i].scope != scopes[i]))
+					return false;
+			}
+			return (rule == null) || (checker.ruleScope == scopes[thresholds.length]);
+		}
+
+		boolean applies(int threshold, Measurable measured) {
+			Scope kind = measured.getScope();
+			if (kind != Scope.OTHER)
+				return applies[threshold][kind.ordinal()];
+			return (patterns[threshold] == null) || patterns[threshold].matcher(measured.getName()).matches();
+		}
+	}
+
+	private volatile Compiled _compiled = null;
+
+	// The defect templates compiled with the thresholds, see getDefectTemplate()
+	private volatile DefectTemplate _defectTemplate = null;
+
 	public Checker() {
 
 	}
@@ -118,6 +183,37 @@ public class Checker {
 		return _allMetrics.stream();
 	}
 
+	/** Returns the names of the metrics used by the thresholds and by the rule. */
+	public Stream<String> metricNames() {
+		Stream<String> result = _allMetrics.stream().map(m -> m.metric);
+		if (rule != null) {
+			result = Stream.concat(result, rule.getMetrics().stream());
+		}
+		return result.distinct();
+	}
+
+	//
+	// ******************************************************************************************************************
+	//
+
+	public Rule getRule() {
+		return rule;
+	}
+
+	/** Sets the condition checked with the thresholds, null for none. */
+	public void setRule(Rule rule) {
+		this.rule = rule;
+	}
+
+	public String getRuleScope() {
+		return ruleScope;
+	}
+
+	/** Sets the regular expression matching the names of the objects the rule applies to, empty for all. */
+	public void setRuleScope(String scope) {
+		ruleScope = (scope != null) ? scope : "";
+	}
+
 	//
 	// ******************************************************************************************************************
 	//
@@ -130,7 +226,7 @@ public class Checker {
 			logger.error("Invalid checker name (prefix is not METRICS.) '{}'", getName());
 		}
 
-		if (_allMetrics.isEmpty()) {
+		if (_allMetrics.isEmpty() && (rule == null)) {
 			logger.error("There's no metrics to check for in this checker ??");
 			result = false;
 		}
@@ -148,11 +244,48 @@ public class Checker {
 	 * Returns true if the current checker is applicable to the given function metrics.
 	 */
 	public boolean canCheck(Measurable measured) {
-		if (!isValid()) {
+		boolean valid = getCompiled().valid;
+		if (!valid) {
 			logger.debug("Can't check '{}' because invalid config.", this);
 		}
 
-		return isValid() && measured != null;
+		return valid && measured != null;
+	}
+
+	/**
+	 * Returns true if all the thresholds of this valid checker may apply to the objects of the given scope, so that it
+	 * may produce a defect on them. The objects of the OTHER scope are matched by name only by check().
+	 */
+	public boolean appliesTo(Scope kind) {
+		Compiled compiled = getCompiled();
+		if (!compiled.valid)
+			return false;
+		if (kind == Scope.OTHER)
+			return true;
+		for (int i = 0; i < compiled.applies.length; i++) {
+			if (!compiled.applies[i][kind.ordinal()])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Validates the checker and resolves the scopes and the metrics of its thresholds, so that check() doesn't parse
+	 * them again for each measured object. Called when the checker is enabled, and again by check() if the checker
+	 * was changed since.
+	 */
+	public void compile() {
+		_compiled = new Compiled(this);
+		_defectTemplate = DefectTemplate.compile(this);
+	}
+
+	private Compiled getCompiled() {
+		Compiled result = _compiled;
+		if ((result == null) || !result.isCurrent(this)) {
+			compile();
+			result = _compiled;
+		}
+		return result;
 	}
 
 	/**
@@ -164,32 +297,36 @@ public class Checker {
 			throw new IllegalArgumentException("Can't check measurable: " + measured);
 		}
 
-		Defect result = null;
-
-		List<String> violatingMetrics = _allMetrics.stream()
-				.filter(metric -> metric.scope.isEmpty() || (measured.getName().matches(metric.scope))) //
-				// For each metrics this checker puts a threshold, if the value in the measured object is above
-				// the threshold then produce the name of that metrics otherwise null
-				.map(metric -> {
-					if (measured.isMetrics(metric.metric)) {
-						return measured.getMetric(metric.metric) > metric.value ? metric.metric : null;
-					} else {
-						logger.warn("For checker {} Requesting unknown metrics '{}' on {}", getName(), metric.metric, measured);
-					}
-					return null;
-				})//
-				//
-				// Filter out null values for metrics under the threshold.
-				.filter(Objects::nonNull)
-				// Collect all metrics above their threshold in the checker into a list
-				.collect(Collectors.toList());
-
-		// If the number of metrics in the measured object above their threshold in the checkers
-		// is equal or above the total number of checked metrics in that checker then we have a defect
-		if (violatingMetrics.size() >= _allMetrics.size()) {
-			result = new Defect(this, measured);
-			result.setViolations(violatingMetrics);
+		// A defect needs all the thresholds to apply and to be passed over, the first one that doesn't ends the check
+		Compiled compiled = getCompiled();
+		Metrics[] thresholds = compiled.thresholds;
+		for (int i = 0; i < thresholds.length; i++) {
+			if (!compiled.applies(i, measured))
+				return null;
+			MetricRef ref = thresholds[i].getRef();
+			if (!measured.isMetrics(ref)) {
+				logger.warn("For checker {} Requesting unknown metrics '{}' on {}", getName(), thresholds[i].metric, measured);
+				return null;
+			}
+			if (!(measured.getMetric(ref) > thresholds[i].value))
+				return null;
 		}
+		Rule checked = compiled.rule;
+		if ((checked != null) && !(compiled.applies(thresholds.length, measured) && checked.test(measured)))
+			return null;
+
+		Defect result = new Defect(this, measured);
+		List<String> violatingMetrics = new ArrayList<>(thresholds.length);
+		for (Metrics threshold : thresholds) {
+			violatingMetrics.add(threshold.metric);
+		}
+		if (checked != null) {
+			for (String metric : checked.getMetrics()) {
+				if (!violatingMetrics.contains(metric))
+					violatingMetrics.add(metric);
+			}
+		}
+		result.setViolations(violatingMetrics);
 
 		return result;
 	}
@@ -226,6 +363,16 @@ public class Checker {
 		jsonDefectEventTemplate = value;
 	}
 
+	/** Returns the templates compiled for rendering the defects, compiled again if they or the thresholds changed. */
+	public DefectTemplate getDefectTemplate() {
+		DefectTemplate result = _defectTemplate;
+		if ((result == null) || !result.isCurrent(this)) {
+			result = DefectTemplate.compile(this);
+			_defectTemplate = result;
+		}
+		return result;
+	}
+
 	//
 	// ******************************************************************************************************************
 	//
@@ -236,7 +383,7 @@ public class Checker {
 			setName(root.get("name").asText(""));
 			setDescription(root.get("description").asText(""));
 			JsonNode metrics = root.get("thresholds");
-			if (metrics.isArray()) {
+			if ((metrics != null) && metrics.isArray()) {
 				for (JsonNode node : metrics) {
 					Metrics metric = new Metrics();
 					metric.scope = node.get("scope").asText("");
@@ -247,6 +394,21 @@ public class Checker {
 				}
 			}
 
+			{
+				JsonNode ruleNode = root.get("rule");
+
+				if (ruleNode != null) {
+					JsonNode scope = root.get("scope");
+					setRuleScope((scope != null) ? scope.asText("") : "");
+					try {
+						setRule(Rule.parse(ruleNode.asText("")));
+					} catch (IllegalArgumentException e) {
+						logger.error("Invalid rule for checker {}: {}", getName(), e.getMessage());
+						result = false;
+					}
+				}
+			}
+
 			{
 				JsonNode defectTemplate = root.get("defect-template");
 
@@ -321,6 +483,11 @@ public class Checker {
 			result.append(m.value);
 			result.append(" ");
 		}
+		if (rule != null) {
+			result.append("rule=");
+			result.append(rule);
+			result.append(" ");
+		}
 		result.append(")");
 		return result.toString();
 	}
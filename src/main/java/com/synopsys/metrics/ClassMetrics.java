@@ -0,0 +1,32 @@
+package com.synopsys.metrics;
+
+import com.synopsys.sipm.model.Parameter;
+
+/**
+ * Aggregates the metrics of all the methods of a class, as given by the "cn:" field of the names of the functions.
+ * <p>
+ * The nested classes are part of their outer class (see FuncMetrics.parse()), and the functions without a class name
+ * in the metrics file, like the C functions, are not grouped by class. The "file" parameter is the list of the sources
+ * of the class, set once all its methods are aggregated.
+ */
+public class ClassMetrics extends CompositeMetrics {
+
+  public static final String NAME = "Class Metrics";
+
+  // The id of the class name in FuncMetrics.getQualifiedNames()
+  protected final int _classId;
+
+  public ClassMetrics(int classId, String className) {
+    super(NAME);
+    _classId = classId;
+    add("class", className, Parameter.READ_WRITE);
+  }
+
+  public int getClassId() {
+    return _classId;
+  }
+
+  public String getClassName() {
+    return get("class");
+  }
+}
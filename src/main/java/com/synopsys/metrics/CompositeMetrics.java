@@ -1,89 +1,398 @@
 package com.synopsys.metrics;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Stream;
 
+/**
+ * Aggregates the metrics of several measurable objects.
+ * <p>
+ * The statistics of each metric are maintained incrementally as the measurable objects are added, so that the
+ * composite can also be fed by accumulate() without keeping the added objects (see the streaming mode of Main).
+ * <p>
+ * The checkers of a composite run in parallel with the ones of other composites and read the statistics many times,
+ * so getMetricStat() returns a snapshot computed once per metric and then read without lock until the composite
+ * changes again.
+ * <p>
+ * The distinct sources are kept as the ids of their pathnames (see SourceSet), the sorted list of their names and the
+ * label joining them are only built once when requested, and again when the composite changes.
+ * <p>
+ * The quantiles (suffixes _p50, _p90, _p99 or any other _pNN percentile) are given by a QuantileSketch for the
+ * metrics selected by setQuantileMetrics(), the other metrics don't pay for it. The memory of a sketch is bounded
+ * whatever the number of objects accumulated or merged.
+ */
 public class CompositeMetrics extends Measurable {
 
+	/** A function is significant for the module checkers when its LOC and CCM are above these values. */
+	public static final double MIN_SIGNIFICANT_LOC = 3;
+	public static final double MIN_SIGNIFICANT_CCM = 1;
+
+	/** Number of distinct sources of the significant objects, see getSignificantSourceCount(). */
+	public static final String tagFILE_COUNT = "file_count";
+
 	protected List<Measurable> _measures;
-	protected Map<String, StatData> _measuresStat;
+
+	// Running statistics indexed by metric id, null until the metric is found in an accumulated object
+	protected StatData[] _stats = new StatData[0];
+	protected long _count = 0;
+
+	// Distinct sources of all the accumulated objects, and of the significant ones
+	protected SourceSet _sources = new SourceSet();
+	protected SourceSet _significantSources = new SourceSet();
+	protected long _significantCount = 0;
+
+	// Names of the sources sorted and joined by getSourcesLabel(), null until requested after a change
+	private volatile String[] _sourceNames = null;
+	private volatile String _sourcesLabel = null;
+
+	// Snapshots returned by getMetricStat() indexed by metric id, null entries are not computed yet. The whole cache is
+	// dropped when the composite changes.
+	private volatile AtomicReferenceArray<StatData> _statCache = null;
+
+	private static final LongAdder _statCacheHits = new LongAdder();
+	private static final LongAdder _statCacheMisses = new LongAdder();
+
+	// Sketches of the distribution of the metrics selected by setQuantileMetrics(), indexed by metric id
+	protected QuantileSketch[] _sketches = null;
+
+	// Indexed by metric id, true for the metrics with a sketch
+	private static volatile boolean[] _quantileMetrics = new boolean[0];
+	private static volatile int _sketchSize = QuantileSketch.DEFAULT_K;
+
+	/**
+	 * Selects the metrics whose quantiles are available on the composites created from now on, and the size of their
+	 * sketches (see QuantileSketch).
+	 */
+	public static void setQuantileMetrics(Collection<String> names, int sketchSize) {
+		if (sketchSize < QuantileSketch.MIN_K)
+			throw new IllegalArgumentException("Invalid quantile sketch size " + sketchSize);
+		boolean[] metrics = new boolean[0];
+		for (String name : names) {
+			int id = getSchema().idOf(name);
+			if (id >= metrics.length) {
+				metrics = Arrays.copyOf(metrics, id + 1);
+			}
+			metrics[id] = true;
+		}
+		_sketchSize = sketchSize;
+		_quantileMetrics = metrics;
+	}
 
 	public CompositeMetrics(String name) {
-		super(name);
+		super(name, MetricStore.getCurrent().getCompositeStore());
 		addMetrics("count",0.0);
 		_measures = new ArrayList<>();
-		_measuresStat = new HashMap<>();
+
+		boolean[] quantileMetrics = _quantileMetrics;
+		for (int id = 0; id < quantileMetrics.length; id++) {
+			if (quantileMetrics[id]) {
+				if (_sketches == null) {
+					_sketches = new QuantileSketch[quantileMetrics.length];
+				}
+				_sketches[id] = new QuantileSketch(_sketchSize);
+			}
+		}
 	}
 
 	@Override
 	public Stream<String> getAllSources() {
-		return _measures.stream()//
-				.flatMap(Measurable::getAllSources)//
-				.flatMap(strList -> Stream.of(strList.split(",", 200))).sorted()//
-				.distinct();
+		String[] names = _sourceNames;
+		if (names == null) {
+			names = computeSourceNames();
+		}
+		return Stream.of(names);
+	}
+
+	private synchronized String[] computeSourceNames() {
+		String[] result = _sourceNames;
+		if (result == null) {
+			result = _sources.toSortedNames();
+			_sourceNames = result;
+		}
+		return result;
+	}
+
+	/** Returns the sources joined by commas, built once as long as the composite doesn't change. */
+	@Override
+	public String getSourcesLabel() {
+		String result = _sourcesLabel;
+		if (result == null) {
+			result = super.getSourcesLabel();
+			_sourcesLabel = result;
+		}
+		return result;
 	}
 
+	/** Returns the measurable objects added to this composite, empty when it is fed by accumulate(). */
 	public Stream<Measurable> stream() {
 		return _measures.stream();
 	}
 
 	public void add(Measurable m) {
 		_measures.add(m);
-		_measuresStat.clear();
+		accumulate(m);
+	}
+
+	/**
+	 * Updates the statistics of this composite with the metrics of the given object, without keeping a reference to
+	 * it. Several threads can accumulate into the same composite.
+	 */
+	public synchronized void accumulate(Measurable m) {
+		MetricSchema schema = getSchema();
+		if (_stats.length < schema.size()) {
+			_stats = Arrays.copyOf(_stats, schema.size());
+		}
+
+		for (int id = 0; id < _stats.length; id++) {
+			double value = m.getMetric(id);
+			if (Double.isNaN(value))
+				value = 0.0;
+
+			if ((_sketches != null) && (id < _sketches.length) && (_sketches[id] != null)) {
+				_sketches[id].add(value);
+			}
+
+			StatData stat = _stats[id];
+			if (stat == null) {
+				if (value == 0.0)
+					continue;
+				// The objects accumulated before didn't have this metric, they count as 0.0
+				stat = (_count == 0) ? new StatData() : new StatData(0.0, 0.0, _count, 0.0);
+				_stats[id] = stat;
+			}
+			stat.add(value);
+		}
+		_count++;
+		_statCache = null;
+
+		boolean significant = isSignificant(m);
+		if (significant) {
+			_significantCount++;
+		}
+		if (m instanceof FuncMetrics) {
+			int pathId = ((FuncMetrics) m).getPathId();
+			addSource(pathId, significant);
+		} else {
+			PathTable paths = FuncMetrics.getPaths();
+			m.getAllSources().flatMap(strList -> Stream.of(strList.split(",", 200)))
+					.forEach(source -> addSource(paths.intern(source), significant));
+		}
+	}
+
+	private void addSource(int pathId, boolean significant) {
+		if (_sources.add(pathId)) {
+			_sourceNames = null;
+			_sourcesLabel = null;
+		}
+		if (significant) {
+			_significantSources.add(pathId);
+		}
+	}
+
+	/**
+	 * Adds to this composite the objects added or accumulated into the other one, as if they were added to this one.
+	 * Used to combine the partial composites built by several threads, the other composite must not change meanwhile.
+	 */
+	public synchronized void merge(CompositeMetrics other) {
+		if (other._count == 0)
+			return;
+
+		mergeStatistics(other);
+
+		_measures.addAll(other._measures);
+		_sources.addAll(other._sources);
+		_significantSources.addAll(other._significantSources);
+		_sourceNames = null;
+		_sourcesLabel = null;
+	}
+
+	/** Adds the statistics and the counts of the other composite to the ones of this composite. */
+	protected synchronized void mergeStatistics(CompositeMetrics other) {
+		int size = Math.max(_stats.length, other._stats.length);
+		if (_stats.length < size) {
+			_stats = Arrays.copyOf(_stats, size);
+		}
+		for (int id = 0; id < size; id++) {
+			StatData stat = _stats[id];
+			StatData otherStat = (id < other._stats.length) ? other._stats[id] : null;
+			if ((stat == null) && (otherStat == null))
+				continue;
+			// A missing statistic stands for a metric that was 0.0 for all the objects
+			if (stat == null) {
+				stat = (_count == 0) ? new StatData() : new StatData(0.0, 0.0, _count, 0.0);
+				_stats[id] = stat;
+			}
+			stat.merge((otherStat != null) ? otherStat : new StatData(0.0, 0.0, other._count, 0.0));
+		}
+		if ((_sketches != null) && (other._sketches != null)) {
+			for (int id = 0; id < Math.min(_sketches.length, other._sketches.length); id++) {
+				if ((_sketches[id] != null) && (other._sketches[id] != null)) {
+					_sketches[id].merge(other._sketches[id]);
+				}
+			}
+		}
+
+		_count += other._count;
+		_significantCount += other._significantCount;
+		_statCache = null;
 	}
 
+	/** Returns true if the given object is significant enough to be counted by the module checkers. */
+	public static boolean isSignificant(Measurable m) {
+		return (m.getMetric(Measurable.tagLOC) > MIN_SIGNIFICANT_LOC)
+				&& (m.getMetric(Measurable.tagCCM) > MIN_SIGNIFICANT_CCM);
+	}
+
+	/** Returns the number of significant objects accumulated in this composite. */
+	public synchronized long getSignificantCount() {
+		return _significantCount;
+	}
+
+	/** Returns the number of distinct sources of the objects accumulated in this composite. */
+	public synchronized int getSourceCount() {
+		return _sources.size();
+	}
+
+	/** Returns the number of distinct sources of the significant objects accumulated in this composite. */
+	public synchronized int getSignificantSourceCount() {
+		return _significantSources.size();
+	}
+
+	/** Returns the number of objects accumulated in this composite. */
+	public synchronized long getCount() {
+		return _count;
+	}
+
+	/**
+	 * Returns the statistics of the given metric over all the objects of this composite. The result is shared by all
+	 * the callers and must not be modified.
+	 */
 	public StatData getMetricStat(String name) {
-		StatData stat = _measuresStat.get(name);
+		return getMetricStat(getSchema().find(name));
+	}
+
+	/** Returns the statistics of the metric with the given id, see getMetricStat(String). */
+	public StatData getMetricStat(int id) {
+		AtomicReferenceArray<StatData> cache = _statCache;
+		if ((cache != null) && (id >= 0) && (id < cache.length())) {
+			StatData result = cache.get(id);
+			if (result != null) {
+				_statCacheHits.increment();
+				return result;
+			}
+		}
+		return computeMetricStat(id);
+	}
+
+	/** Computes the snapshot of the statistics of the given metric id, unless another thread did it meanwhile. */
+	private synchronized StatData computeMetricStat(int id) {
+		AtomicReferenceArray<StatData> cache = _statCache;
+		if ((cache == null) || (id >= cache.length())) {
+			cache = new AtomicReferenceArray<>(Math.max(getSchema().size(), id + 1));
+			_statCache = cache;
+		}
+
+		StatData result = (id >= 0) ? cache.get(id) : null;
+		if (result != null) {
+			_statCacheHits.increment();
+			return result;
+		}
+		_statCacheMisses.increment();
+
+		StatData stat = ((id >= 0) && (id < _stats.length)) ? _stats[id] : null;
 		if (stat == null) {
-			stat = new StatData();
-			for (Measurable m : _measures)
-				stat.add(m.getMetric(name));
-			_measuresStat.put(name, stat);
+			// Not found in any accumulated object, it's 0.0 for all of them
+			result = (_count == 0) ? new StatData() : new StatData(0.0, 0.0, _count, 0.0);
+		} else {
+			result = new StatData(stat.min, stat.max, stat.count, stat.sum);
+		}
+		if (id >= 0) {
+			cache.set(id, result);
 		}
-		return stat;
+		return result;
+	}
+
+	/**
+	 * Returns the approximate quantile q (0.9 for the 90th percentile) of the values of the given metric, or 0.0 if the
+	 * quantiles of this metric are not computed.
+	 */
+	public double getQuantile(String name, double q) {
+		return getQuantile(getSchema().find(name), name, q);
+	}
+
+	private synchronized double getQuantile(int id, String name, double q) {
+		QuantileSketch sketch = ((_sketches != null) && (id >= 0) && (id < _sketches.length)) ? _sketches[id] : null;
+		if (sketch == null) {
+			_logger.warn("Quantiles of metric '{}' are not computed on '{}'", name, getName());
+			return 0.0;
+		}
+		return (sketch.getCount() == 0) ? 0.0 : sketch.quantile(q);
+	}
+
+	/** Returns the quantile (0.9 for "_p90") of a name ending with a percentile suffix, or else -1. */
+	static double quantileOf(String name) {
+		int length = name.length();
+		if ((length > 4) && (name.charAt(length - 4) == '_') && (name.charAt(length - 3) == 'p')
+				&& Character.isDigit(name.charAt(length - 2)) && Character.isDigit(name.charAt(length - 1))) {
+			return Integer.parseInt(name.substring(length - 2)) / 100.0;
+		}
+		return -1;
+	}
+
+	/** Returns the number of calls to getMetricStat() answered from the snapshots, for all the composites. */
+	public static long getStatCacheHits() {
+		return _statCacheHits.sum();
+	}
+
+	/** Returns the number of snapshots computed by getMetricStat(), for all the composites. */
+	public static long getStatCacheMisses() {
+		return _statCacheMisses.sum();
 	}
 
 	@Override
-	public boolean isMetrics(String metricName) {
-		if (!super.isMetrics(metricName)) {
-			int pos = metricName.lastIndexOf('_');
-			if (pos != -1) {
-				String prefix = metricName.substring(0, pos);
-				String suffix = metricName.substring(pos + 1);
-				if (suffix.matches("(min)|(max)|(mean)|(sum)|(count)")) {
-					return super.isMetrics(prefix);
-				} 
-			}
-			return false;
-		} 
-		return true;
+	public boolean isMetrics(MetricRef ref) {
+		if (super.isMetrics(ref))
+			return true;
+		if (ref.getOp() == MetricRef.Op.FILE_COUNT)
+			return true;
+		// The statistics and quantiles of a metric defined on this composite
+		return ref.isAggregate() && _store.isDefined(_row, ref.getBaseId());
 	}
 
 	@Override
-	public double getMetric(String name) {
+	public double getMetric(MetricRef ref) {
 		double result = 0.0d;
-		if (name.endsWith("_max")) {
-			String metric = name.substring(0, name.lastIndexOf("_max"));
-			result = getMetricStat(metric).max;
-		} else if (name.endsWith("_min")) {
-			String metric = name.substring(0, name.lastIndexOf("_min"));
-			result = getMetricStat(metric).min;
-		} else if (name.endsWith("_mean")) {
-			String metric = name.substring(0, name.lastIndexOf("_mean"));
-			result = getMetricStat(metric).mean();
-		} else if (name.endsWith("_sum")) {
-			String metric = name.substring(0, name.lastIndexOf("_sum"));
-			result = getMetricStat(metric).sum;
-		} else if (name.endsWith("_count")) {
-			String metric = name.substring(0, name.lastIndexOf("_count"));
-			result = getMetricStat(metric).count;
-		} else if (name.equals("count")) {
-			result = _measures.size();
-		} else {
-			result = super.getMetric(name);
+		switch (ref.getOp()) {
+		case MAX:
+			result = getMetricStat(ref.getBaseId()).max;
+			break;
+		case MIN:
+			result = getMetricStat(ref.getBaseId()).min;
+			break;
+		case MEAN:
+			result = getMetricStat(ref.getBaseId()).mean();
+			break;
+		case SUM:
+			result = getMetricStat(ref.getBaseId()).sum;
+			break;
+		case COUNT:
+			result = getMetricStat(ref.getBaseId()).count;
+			break;
+		case QUANTILE:
+			result = getQuantile(ref.getBaseId(), ref.getBaseName(), ref.getQuantile());
+			break;
+		case COMPOSITE_COUNT:
+			result = getCount();
+			break;
+		case FILE_COUNT:
+			result = getSignificantSourceCount();
+			break;
+		default:
+			result = super.getMetric(ref);
 		}
 		return result;
 	}
@@ -21,9 +21,6 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.*;
 import java.util.*;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import java.util.stream.Stream;
 
@@ -48,12 +45,40 @@ public class Config {
   protected String reportFile = "cov-metrics-report.json"; /* Default name for the Coverity defects file. */
   protected String metricsFileName = null;
 
+  /** Reads the metrics file on the caller's thread. */
+  public static final String READER_STAX = "stax";
+  /** Reads the metrics file with dedicated threads for uncompressing and XML parsing. */
+  public static final String READER_PIPELINE = "pipeline";
+  /** Scans the memory mapped metrics file (uncompressed files only) with several threads. */
+  public static final String READER_MAPPED = "mapped";
+
+  protected String reader = READER_STAX;
+  protected int readBufferSize = FuncMetricsPipeline.DEFAULT_BUFFER_SIZE;
+  protected int readQueueDepth = FuncMetricsPipeline.DEFAULT_QUEUE_DEPTH;
+  protected int parseBatchSize = FuncMetricsSpliterator.DEFAULT_BATCH_SIZE;
+
+  /** Checks the functions as they are parsed, without keeping them in memory. */
+  protected boolean streaming = false;
+
+  /** Also checks the aggregates of each directory, from the directories of the files up to the root. */
+  protected boolean directoryMetrics = false;
+
+  /** Also checks the aggregates of each class, for the functions whose class is given by the metrics file. */
+  protected boolean classMetrics = false;
+
+  /** Size of the sketches giving the quantiles (_p50, _p90...) of the composites, see QuantileSketch. */
+  protected int quantileSketchSize = QuantileSketch.DEFAULT_K;
+
+  /** Reads the parsed functions from a binary cache of the metrics file, built by the first run. */
+  protected boolean cache = false;
+  protected String cacheFileName = null;
+
   private Options options = null;
 
   /**
-   * The list of filters defined at the configuration level to include or exclude some function prefix for checking.
+   * The filters defined at the configuration level to include or exclude some function pathnames for checking.
    */
-  private List<Function<Measurable, Boolean>> exclusionFilters = new ArrayList<>();
+  private PathFilter pathFilter = new PathFilter();
 
   /**
    * The list of enabled checkers by the current configuration.
@@ -65,6 +90,14 @@ public class Config {
    */
   public List<Checker> availableCheckers = new ArrayList<>();
 
+  /**
+   * The enabled checkers that may apply to each scope, indexed by Scope ordinal, built from the enabled checkers by
+   * getCheckers(Scope) and again when a checker is enabled.
+   */
+  private volatile Checker[][] _checkersByScope = null;
+  // Number of the enabled checkers when the buckets were built
+  private int _bucketedCheckers = 0;
+
   // ------------------------------------------------------------------------------------------------------------------
   // Constructors.
   // ------------------------------------------------------------------------------------------------------------------
@@ -140,6 +173,38 @@ public class Config {
       options.addOption(Option.builder("o").longOpt("output").numberOfArgs(1)
               .desc("Change the outputfile for the JSON defect report").build());
 
+      options.addOption(Option.builder().required(false).longOpt("reader").numberOfArgs(1)
+              .desc("Select how the metrics file is read: stax (default), pipeline or mapped").build());
+
+      options.addOption(Option.builder().required(false).longOpt("read-buffer-size").numberOfArgs(1)
+              .desc("Size in bytes of the buffers used by the pipeline reader").build());
+
+      options.addOption(Option.builder().required(false).longOpt("read-queue-depth").numberOfArgs(1)
+              .desc("Number of function metrics queued ahead by the pipeline reader").build());
+
+      options.addOption(Option.builder().required(false).longOpt("parse-batch-size").numberOfArgs(1)
+              .desc("Number of function metrics parsed together by each thread").build());
+
+      options.addOption(Option.builder().required(false).longOpt("streaming")
+              .desc("Check the functions as they are parsed, only files and modules aggregates are kept").build());
+
+      options.addOption(Option.builder().required(false).longOpt("directory-metrics")
+              .desc("Check the aggregated metrics of each directory of the tree, checker scope 'Directory Metrics'")
+              .build());
+
+      options.addOption(Option.builder().required(false).longOpt("class-metrics")
+              .desc("Check the aggregated metrics of each class, checker scope 'Class Metrics'").build());
+
+      options.addOption(Option.builder().required(false).longOpt("quantile-sketch-size").numberOfArgs(1)
+              .desc("Accuracy of the quantiles of the aggregates like loc_p90, number of values kept by their sketches")
+              .build());
+
+      options.addOption(Option.builder().required(false).longOpt("cache")
+              .desc("Save the parsed metrics in a binary cache next to the metrics file, used by next runs").build());
+
+      options.addOption(Option.builder().required(false).longOpt("cache-file").numberOfArgs(1)
+              .desc("Location of the binary cache of the parsed metrics, implies --cache").build());
+
     }
     return options;
   }
@@ -261,6 +326,7 @@ public class Config {
 
     _logger.info("Clearing list of {} enabled checkers.", enabledCheckers.size());
     enabledCheckers.clear();
+    _checkersByScope = null;
 
     _logger.info("Clearing list of {} available checkers.", availableCheckers.size());
     availableCheckers.clear();
@@ -542,6 +608,118 @@ public class Config {
   // ******************************************************************************************************************
   //
 
+  public String getReader() {
+    return reader;
+  }
+
+  public void setReader(String value) {
+    reader = value;
+  }
+
+  public int getReadBufferSize() {
+    return readBufferSize;
+  }
+
+  public void setReadBufferSize(int value) {
+    readBufferSize = value;
+  }
+
+  public int getReadQueueDepth() {
+    return readQueueDepth;
+  }
+
+  public void setReadQueueDepth(int value) {
+    readQueueDepth = value;
+  }
+
+  public int getParseBatchSize() {
+    return parseBatchSize;
+  }
+
+  public void setParseBatchSize(int value) {
+    parseBatchSize = value;
+  }
+
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  public void setStreaming(boolean value) {
+    streaming = value;
+  }
+
+  public boolean isDirectoryMetrics() {
+    return directoryMetrics;
+  }
+
+  public void setDirectoryMetrics(boolean value) {
+    directoryMetrics = value;
+  }
+
+  public boolean isClassMetrics() {
+    return classMetrics;
+  }
+
+  public void setClassMetrics(boolean value) {
+    classMetrics = value;
+  }
+
+  public int getQuantileSketchSize() {
+    return quantileSketchSize;
+  }
+
+  public void setQuantileSketchSize(int value) {
+    quantileSketchSize = value;
+  }
+
+  public boolean isCache() {
+    return cache;
+  }
+
+  public void setCache(boolean value) {
+    cache = value;
+  }
+
+  /** Returns the location of the metrics cache, by default next to the metrics file. */
+  public String getCacheFileName() {
+    if ((cacheFileName == null) || cacheFileName.isEmpty()) {
+      String result = getFunctionsFileName();
+      if (result.endsWith(".gz"))
+        result = result.substring(0, result.length() - 3);
+      if (result.endsWith(".xml"))
+        result = result.substring(0, result.length() - 4);
+      return result + ".cache";
+    }
+    return cacheFileName;
+  }
+
+  public void setCacheFileName(String value) {
+    cacheFileName = value;
+  }
+
+  /**
+   * Returns the metrics to read from the metrics file: the ones checked by the enabled checkers or referenced by their
+   * templates. All the metrics are read when they are saved into the cache, it may be used later with other checkers.
+   */
+  public MetricsProjection getProjection() {
+    if (isCache())
+      return MetricsProjection.ALL;
+    return MetricsProjection.of(enabledCheckers);
+  }
+
+  /** Returns the metrics whose quantiles (_pNN suffixes) are used by the enabled checkers or by their templates. */
+  public Set<String> getQuantileMetrics() {
+    return MetricsProjection.quantilesOf(enabledCheckers);
+  }
+
+  public boolean isValidReader(String value) {
+    return READER_STAX.equals(value) || READER_PIPELINE.equals(value) || READER_MAPPED.equals(value);
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
   public String getConfigDir() {
     return cfgDirPath;
   }
@@ -644,7 +822,10 @@ public class Config {
 
     Checker checker = getAvailableChecker(name);
     if ((checker != null) && (checker.isValid())) {
+      // The scopes and the metric names of the thresholds are resolved once, not for each checked object
+      checker.compile();
       enabledCheckers.add(checker);
+      _checkersByScope = null;
       availableCheckers.remove(checker);
       _logger.info("Adding checker {}", checker);
     } else {
@@ -717,20 +898,7 @@ public class Config {
     boolean result = regex != null;
     if (result) {
       try {
-        Pattern pattern = Pattern.compile(regex);
-
-        // A filter returns TRUE if the fnmetrics is excluded
-
-        Function<Measurable, Boolean> filter = (fnmetrics) -> {
-          if (fnmetrics != null) {
-            String pathname = fnmetrics.getSourcesLabel();
-            Matcher matcher = pattern.matcher(pathname);
-            return (excluded) ? (matcher.matches()) : !matcher.matches();
-          }
-          return false;
-        };
-
-        exclusionFilters.add(filter);
+        pathFilter.add(regex, excluded);
 
         _logger.info("Adding filter, all functions defined in files matching " + regex + " are ignored");
       } catch (PatternSyntaxException e) {
@@ -749,13 +917,31 @@ public class Config {
    * Applies all filters at the global level to the given pathname and returns true of the file is to be processed.
    */
   public boolean filter(Measurable metrics) {
-    boolean result = !exclusionFilters.stream().anyMatch(filter -> filter.apply(metrics));
+    boolean result = filter(metrics.getSourcesLabel());
     if (!result) {
       _logger.debug("Functions metrics from " + metrics.getSourcesLabel() + " are filtered out.");
     }
     return result;
   }
 
+  /**
+   * Applies all filters at the global level to the given pathname (or list of pathnames of a composite) and returns
+   * true if it is to be processed.
+   */
+  public boolean filter(String pathname) {
+    return pathFilter.accepts(pathname);
+  }
+
+  /**
+   * Returns a new filter for the readers to skip the functions defined in excluded files, or null if there's no file
+   * filter.
+   */
+  public FunctionFilter getFunctionFilter() {
+    if (pathFilter.isEmpty())
+      return null;
+    return new FunctionFilter(pathFilter::accepts);
+  }
+
   //
   // ******************************************************************************************************************
   //
@@ -764,11 +950,58 @@ public class Config {
    * Build a stream of the defects generated by the enabled and not filtered out checkers on the given function.
    */
   public Stream<Defect> check(Measurable metrics) {
+    return findDefects(metrics).stream();
+  }
+
+  /**
+   * Returns the defects generated by the enabled checkers on the given object. Nothing is allocated when there's no
+   * defect, the result is then an immutable empty list.
+   */
+  public List<Defect> findDefects(Measurable metrics) {
+    List<Defect> result = Collections.emptyList();
+    if (metrics == null)
+      return result;
+
+    // Only the checkers of the scope of the object are offered to it, a function never reaches a module checker
+    Checker[] checkers = getCheckers(metrics.getScope());
+    for (int i = 0; i < checkers.length; i++) {
+      if (checkers[i].canCheck(metrics)) {
+        Defect defect = checkers[i].check(metrics);
+        if (defect != null) {
+          if (result.isEmpty()) {
+            result = new ArrayList<>();
+          }
+          result.add(defect);
+        }
+      }
+    }
+    return result;
+  }
 
-    return enabledCheckers.stream() // List all enabled checkers
-            .filter(checker -> checker.canCheck(metrics)) // Filter out checkers that doesn't apply to this function
-            .map(checker -> checker.check(metrics)) // Check function's metrics with current
-            .filter(defect -> defect != null); // Filter out null defects
+  /**
+   * Returns the enabled checkers which thresholds may all apply to the objects of the given scope, in the order they
+   * were enabled. The buckets are built once for all the scopes, and again if the list of the enabled checkers is
+   * changed, but not if the thresholds of an enabled checker are.
+   */
+  public Checker[] getCheckers(Scope scope) {
+    Checker[][] buckets = _checkersByScope;
+    if ((buckets == null) || (_bucketedCheckers != enabledCheckers.size())) {
+      synchronized (this) {
+        buckets = _checkersByScope;
+        if ((buckets == null) || (_bucketedCheckers != enabledCheckers.size())) {
+          buckets = new Checker[Scope.values().length][];
+          for (Scope kind : Scope.values()) {
+            buckets[kind.ordinal()] = enabledCheckers.stream()
+                    .filter(checker -> checker.appliesTo(kind))
+                    .toArray(Checker[]::new);
+            _logger.debug("{} enabled checkers for the scope {}.", buckets[kind.ordinal()].length, kind);
+          }
+          _bucketedCheckers = enabledCheckers.size();
+          _checkersByScope = buckets;
+        }
+      }
+    }
+    return buckets[scope.ordinal()];
   }
 
   //
@@ -832,6 +1065,26 @@ public class Config {
       }
     }
 
+    if (!isValidReader(reader)) {
+      _logger.error("Unknown metrics reader '{}'", reader);
+      result = false;
+    }
+
+    if ((readBufferSize <= 0) || (readQueueDepth <= 0)) {
+      _logger.error("Invalid reader buffer size {} or queue depth {}", readBufferSize, readQueueDepth);
+      result = false;
+    }
+
+    if (parseBatchSize <= 0) {
+      _logger.error("Invalid parse batch size {}", parseBatchSize);
+      result = false;
+    }
+
+    if (quantileSketchSize < QuantileSketch.MIN_K) {
+      _logger.error("Invalid quantile sketch size {}, minimum is {}", quantileSketchSize, QuantileSketch.MIN_K);
+      result = false;
+    }
+
     // ----------------------------------------
     // Validate the Enabled Checker list.
     // ----------------------------------------
@@ -1002,6 +1255,65 @@ public class Config {
           }
         }
 
+        // ----------------------------------------------------------------
+        // Selecting how the metrics file is read
+        // ----------------------------------------------------------------
+        {
+          if (line.hasOption("reader")) {
+            String value = line.getOptionValue("reader");
+            if (isValidReader(value)) {
+              setReader(value);
+            } else {
+              _logger.error("Unknown metrics reader '{}'", value);
+              result = false;
+            }
+          }
+
+          try {
+            if (line.hasOption("read-buffer-size")) {
+              setReadBufferSize(Integer.parseInt(line.getOptionValue("read-buffer-size")));
+            }
+            if (line.hasOption("read-queue-depth")) {
+              setReadQueueDepth(Integer.parseInt(line.getOptionValue("read-queue-depth")));
+            }
+            if (line.hasOption("parse-batch-size")) {
+              setParseBatchSize(Integer.parseInt(line.getOptionValue("parse-batch-size")));
+            }
+          } catch (NumberFormatException e) {
+            _logger.error("Unable to parse reader option: {}", e.getMessage());
+            result = false;
+          }
+
+          if (line.hasOption("streaming")) {
+            setStreaming(true);
+          }
+
+          if (line.hasOption("directory-metrics")) {
+            setDirectoryMetrics(true);
+          }
+
+          if (line.hasOption("class-metrics")) {
+            setClassMetrics(true);
+          }
+
+          if (line.hasOption("quantile-sketch-size")) {
+            try {
+              setQuantileSketchSize(Integer.parseInt(line.getOptionValue("quantile-sketch-size")));
+            } catch (NumberFormatException e) {
+              _logger.error("Unable to parse quantile sketch size: {}", e.getMessage());
+              result = false;
+            }
+          }
+
+          if (line.hasOption("cache-file")) {
+            setCacheFileName(line.getOptionValue("cache-file"));
+            setCache(true);
+          }
+          if (line.hasOption("cache")) {
+            setCache(true);
+          }
+        }
+
         // ----------------------------------------------------------------
         // Enabling all checkers.
         // ----------------------------------------------------------------
@@ -1160,6 +1472,21 @@ public class Config {
 
           Utils.getFieldAsText(root, "strip-path", "", this::setStripPath);
 
+          // Load how the metrics file is read
+          Utils.getFieldAsText(root, "reader", READER_STAX, this::setReader);
+          Utils.getFieldAsInt(root, "read-buffer-size", readBufferSize, this::setReadBufferSize);
+          Utils.getFieldAsInt(root, "read-queue-depth", readQueueDepth, this::setReadQueueDepth);
+          Utils.getFieldAsInt(root, "parse-batch-size", parseBatchSize, this::setParseBatchSize);
+          Utils.getFieldAsBoolean(root, "streaming", streaming, this::setStreaming);
+          Utils.getFieldAsBoolean(root, "directory-metrics", directoryMetrics, this::setDirectoryMetrics);
+          Utils.getFieldAsBoolean(root, "class-metrics", classMetrics, this::setClassMetrics);
+          Utils.getFieldAsInt(root, "quantile-sketch-size", quantileSketchSize, this::setQuantileSketchSize);
+          Utils.getFieldAsBoolean(root, "cache", cache, this::setCache);
+          Utils.getFieldAsText(root, "cache-file", "", value -> {
+            setCacheFileName(value);
+            setCache(true);
+          });
+
           // Add a new exclusion filter for each pattern (delimited by coma)
           Utils.getFieldAsStrArray(root, "excluded-files", null, filter -> addFileFilter(filter, true));
 
@@ -1,12 +1,9 @@
 package com.synopsys.metrics;
 
-import com.synopsys.sipm.model.Parameter;
-import com.synopsys.sipm.model.ParameterSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.List;
-import java.util.stream.Stream;
 
 /**
  * A Defect is generated by a Checker and refers to a Measurable Object (A function, a File, a Module...)
@@ -60,61 +57,26 @@ public class Defect {
 
 	/** Generates the JSON segment modeling this defect for the cov-import-result file. */
 	public String getJson() {
+		StringBuilder result = new StringBuilder();
+		return appendJson(result) ? result.toString() : null;
+	}
 
-		String result = checker.getJsonDefectTemplate();
-		String eventTemplate = checker.getJsonDefectEventTemplate();
-
+	/**
+	 * Appends the JSON segment modeling this defect to the given buffer, rendered by the compiled templates of the
+	 * checker (see DefectTemplate). Returns false, with the buffer unchanged, if the defect can't be rendered.
+	 */
+	public boolean appendJson(StringBuilder out) {
+		int length = out.length();
 		try {
-			//
-			// Replace all references to "${key}" of a defined parameter with name key
-			// by its value in the measured object.
-			//
-			result = measured.process(result);
-
-			//
-			// Look for each metrics referenced by the Checker triggering that defect
-			// in the Measurable object and replace them by their value and/or threshold
-			//
-			ParameterSet set = new ParameterSet();
-			// To replace occurrences of ${cc.threshold}, cc is the id of the metrics in Coverity data file
-			checker.metrics().forEach(
-					metrics -> set.add(metrics.name + ".threshold", Double.toString(metrics.value), Parameter.READ_WRITE));
-			// To replace occurrences of ${ccm.threshold}, ccm is the user friendly name of the metric
-			checker.metrics().forEach(
-					metrics -> set.add(metrics.metric + ".threshold", Double.toString(metrics.value), Parameter.READ_WRITE));
-
-			// To replace occurrences of ${cc} with value of the CCM in the measured object that triggers the defect
-			checker.metrics().forEach(
-					metrics -> set.add(metrics.name, Double.toString(measured.getMetric(metrics.metric)), Parameter.READ_WRITE));
-
-			// To replace occurrences of ${ccm} with value of the CCM in the measured object that triggers the defect
-			checker.metrics().forEach(//
-					metrics -> set.add(metrics.metric, Double.toString(measured.getMetric(metrics.metric)),
-							Parameter.READ_WRITE));
-
-			// Perform substitutions
-			result = set.process(result);
-
-			if ((eventTemplate != null) && (!eventTemplate.isEmpty())) {
-				StringBuilder eventBuilder = new StringBuilder();
-				Stream.of(measured.getSourcesLabel().split(","))//
-						.forEach(source -> {
-							String strEvent = measured.process(eventTemplate);
-							strEvent = set.process(strEvent);
-							if (eventBuilder.length() != 0)
-								eventBuilder.append(",\n");
-							eventBuilder.append(strEvent);
-						});
-				result = result.replace("EVENTS",eventBuilder.toString());
-			} else {
-				result = result.replace("EVENTS","");
-			}
-
+			if (checker.getDefectTemplate().render(measured, out))
+				return true;
+			logger.error("No defect template for checker {}", checker.getName());
 		} catch (Exception e) {
 			logger.error("Unable to process Defect template: " + e.getLocalizedMessage());
 			e.printStackTrace();
 		}
-		return result;
+		out.setLength(length);
+		return false;
 	}
 
 }
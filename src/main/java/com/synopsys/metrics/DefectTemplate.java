@@ -0,0 +1,254 @@
+package com.synopsys.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The defect and event templates of a checker, compiled once into literal segments and slots which are rendered into
+ * a buffer without intermediate strings (see Defect.appendJson()).
+ * <p>
+ * A slot "${key}" is replaced by the first defined of: the metric NAME of the measured object for "metrics.NAME", the
+ * parameter of the measured object (see Measurable.getTemplateValue()), the threshold ("name.threshold" or
+ * "metric.threshold") or the value of a metric of the checker ("name", "metric" or a metric of its rule). It's left
+ * unchanged otherwise, as by ParameterSet.process(). Each "EVENTS" of the defect template is replaced by the event
+ * template, once per source of the measured object.
+ */
+public final class DefectTemplate {
+
+  /** A part of a template, appended to the output for the given measured object. */
+  @FunctionalInterface
+  interface Segment {
+    void append(Measurable measured, StringBuilder out);
+  }
+
+  /** A value defined by the checker, appended if it's defined for the given measured object. */
+  @FunctionalInterface
+  interface Value {
+    boolean append(Measurable measured, StringBuilder out);
+  }
+
+  private static final String EVENTS = "EVENTS";
+
+  // What the templates were compiled from, see isCurrent()
+  private final String _defectText;
+  private final String _eventText;
+  private final Metrics[] _thresholds;
+  private final String[] _names;
+  private final String[] _metrics;
+  private final Rule _rule;
+
+  // null if the checker has no defect template
+  private final Segment[] _defect;
+
+  private DefectTemplate(Checker checker) {
+    _defectText = checker.getJsonDefectTemplate();
+    _eventText = checker.getJsonDefectEventTemplate();
+    _thresholds = checker._allMetrics.toArray(new Metrics[0]);
+    _names = new String[_thresholds.length];
+    _metrics = new String[_thresholds.length];
+    for (int i = 0; i < _thresholds.length; i++) {
+      _names[i] = _thresholds[i].name;
+      _metrics[i] = _thresholds[i].metric;
+    }
+    _rule = checker.getRule();
+
+    Map<String, Value> values = values(_thresholds, _rule);
+    // Without event template the EVENTS are removed, they are kept as is in the event template
+    Segment events = (measured, out) -> {
+    };
+    if ((_eventText != null) && !_eventText.isEmpty()) {
+      events = events(compile(_eventText, values, null));
+    }
+    _defect = (_defectText != null) ? compile(_defectText, values, events) : null;
+  }
+
+  /** Compiles the templates of the given checker, with its thresholds and its rule. */
+  public static DefectTemplate compile(Checker checker) {
+    return new DefectTemplate(checker);
+  }
+
+  /** Returns true if the templates, the thresholds and the rule of the checker are the ones compiled. */
+  public boolean isCurrent(Checker checker) {
+    List<Metrics> thresholds = checker._allMetrics;
+    if ((checker.getJsonDefectTemplate() != _defectText) || (checker.getJsonDefectEventTemplate() != _eventText)
+            || (checker.getRule() != _rule) || (thresholds.size() != _thresholds.length))
+      return false;
+    for (int i = 0; i < _thresholds.length; i++) {
+      Metrics threshold = thresholds.get(i);
+      if ((threshold != _thresholds[i]) || (threshold.name != _names[i]) || (threshold.metric != _metrics[i]))
+        return false;
+    }
+    return true;
+  }
+
+  /** Appends the JSON of a defect on the given object, returns false if the checker has no defect template. */
+  public boolean render(Measurable measured, StringBuilder out) {
+    if (_defect == null)
+      return false;
+    for (Segment segment : _defect) {
+      segment.append(measured, out);
+    }
+    return true;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /**
+   * Returns the values of the checker by parameter name, the later ones replacing the former ones as the parameters
+   * added to a ParameterSet.
+   */
+  private static Map<String, Value> values(Metrics[] thresholds, Rule rule) {
+    Map<String, Value> result = new HashMap<>();
+    for (Metrics threshold : thresholds) {
+      result.put(threshold.name + ".threshold", threshold(threshold));
+    }
+    for (Metrics threshold : thresholds) {
+      result.put(threshold.metric + ".threshold", threshold(threshold));
+    }
+    for (Metrics threshold : thresholds) {
+      result.put(threshold.name, value(threshold));
+    }
+    for (Metrics threshold : thresholds) {
+      result.put(threshold.metric, value(threshold));
+    }
+    if (rule != null) {
+      for (String name : rule.getMetrics()) {
+        MetricRef ref = MetricRef.of(name);
+        Value previous = result.get(name);
+        // Only if defined on the measured object, as a rule may hold without all its metrics
+        result.put(name, (measured, out) -> {
+          if (measured.isMetrics(ref)) {
+            out.append(measured.getMetric(ref));
+            return true;
+          }
+          return (previous != null) && previous.append(measured, out);
+        });
+      }
+    }
+    return result;
+  }
+
+  // The threshold is read when rendered, it may be set after the checker is enabled
+  private static Value threshold(Metrics threshold) {
+    return (measured, out) -> {
+      out.append(threshold.value);
+      return true;
+    };
+  }
+
+  private static Value value(Metrics threshold) {
+    return (measured, out) -> {
+      out.append(measured.getMetric(threshold.getRef()));
+      return true;
+    };
+  }
+
+  /** Returns the segment repeating the event for each source of the measured object, separated by ",\n". */
+  private static Segment events(Segment[] event) {
+    return (measured, out) -> {
+      int count = countSources(measured.getSourcesLabel());
+      if (count == 0)
+        return;
+      int start = out.length();
+      for (Segment segment : event) {
+        segment.append(measured, out);
+      }
+      // The events only depend on the measured object, the first one is copied
+      if (count > 1) {
+        String copy = out.substring(start);
+        for (int i = 1; i < count; i++) {
+          out.append(",\n");
+          out.append(copy);
+        }
+      }
+    };
+  }
+
+  /** Returns the number of elements of label.split(","), without splitting it. */
+  static int countSources(String label) {
+    if (label.isEmpty())
+      return 1;
+    int end = label.length();
+    while ((end > 0) && (label.charAt(end - 1) == ','))
+      end--;
+    if (end == 0)
+      return 0;
+    int result = 1;
+    for (int i = 0; i < end; i++) {
+      if (label.charAt(i) == ',')
+        result++;
+    }
+    return result;
+  }
+
+  /**
+   * Splits the template into literal segments and slots, each EVENTS of the literal text being replaced by the given
+   * segment, or kept if it's null.
+   */
+  private static Segment[] compile(String template, Map<String, Value> values, Segment events) {
+    List<Segment> result = new ArrayList<>();
+    int pos = 0;
+    while (pos < template.length()) {
+      int start = template.indexOf("${", pos);
+      int end = (start < 0) ? -1 : template.indexOf('}', start);
+      if (end < 0) {
+        addLiteral(template.substring(pos), result, events);
+        break;
+      }
+      addLiteral(template.substring(pos, start), result, events);
+      result.add(slot(template.substring(start + 2, end), values, events));
+      pos = end + 1;
+    }
+    return result.toArray(new Segment[0]);
+  }
+
+  private static void addLiteral(String text, List<Segment> result, Segment events) {
+    int pos = 0;
+    int index;
+    while ((events != null) && ((index = text.indexOf(EVENTS, pos)) >= 0)) {
+      addText(text.substring(pos, index), result);
+      result.add(events);
+      pos = index + EVENTS.length();
+    }
+    addText(text.substring(pos), result);
+  }
+
+  private static void addText(String text, List<Segment> result) {
+    if (!text.isEmpty())
+      result.add((measured, out) -> out.append(text));
+  }
+
+  private static Segment slot(String key, Map<String, Value> values, Segment events) {
+    // An unresolved reference is kept as is, but for its EVENTS
+    List<Segment> segments = new ArrayList<>();
+    addLiteral("${" + key + "}", segments, events);
+    Segment[] unresolved = segments.toArray(new Segment[0]);
+    Value value = values.get(key);
+    MetricRef metric = key.startsWith(Measurable.tagMETRICS_PREFIX)
+            ? MetricRef.of(key.substring(Measurable.tagMETRICS_PREFIX.length())) : null;
+    return (measured, out) -> {
+      if (metric != null) {
+        int id = metric.getId();
+        if (id != MetricSchema.UNKNOWN) {
+          double v = measured.getMetric(id);
+          if (!Double.isNaN(v)) {
+            out.append(v);
+            return;
+          }
+        }
+      }
+      String parameter = measured.getTemplateValue(key);
+      if (parameter != null) {
+        out.append(parameter);
+      } else if ((value == null) || !value.append(measured, out)) {
+        for (Segment segment : unresolved) {
+          segment.append(measured, out);
+        }
+      }
+    };
+  }
+}
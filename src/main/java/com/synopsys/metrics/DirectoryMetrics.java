@@ -0,0 +1,71 @@
+package com.synopsys.metrics;
+
+import com.synopsys.sipm.model.Parameter;
+
+import java.util.stream.Stream;
+
+/**
+ * Aggregates the metrics of all the functions defined in the files of a directory and of its sub-directories.
+ * <p>
+ * A directory is not fed with the functions, its statistics are merged from the ones of the files and of the
+ * sub-directories it contains (see rollup()), so that the whole tree is computed in a time proportional to its number
+ * of nodes. The sources are not collected either, only counted: the sources of a directory are its own pathname.
+ * <p>
+ * The "depth" metric is 0 for the root directory of the pathnames, 1 for its sub-directories and so on, checkers may
+ * use it along with the "Directory Metrics" scope to only check some levels of the tree.
+ */
+public class DirectoryMetrics extends CompositeMetrics {
+
+  public static final String NAME = "Directory Metrics";
+
+  // The id of the directory in FuncMetrics.getPaths()
+  protected final int _pathId;
+  protected final String _pathname;
+
+  protected int _sourceCount = 0;
+  protected int _significantSourceCount = 0;
+
+  public DirectoryMetrics(int pathId, String pathname, int depth) {
+    super(NAME);
+    _pathId = pathId;
+    _pathname = pathname.isEmpty() ? "/" : pathname;
+    addMetrics("depth", depth);
+    add("file", _pathname, Parameter.READ_WRITE);
+    add("directory", _pathname, Parameter.READ_WRITE);
+  }
+
+  public int getPathId() {
+    return _pathId;
+  }
+
+  public String getPathname() {
+    return _pathname;
+  }
+
+  @Override
+  public Stream<String> getAllSources() {
+    return Stream.of(_pathname);
+  }
+
+  /**
+   * Adds the statistics of a file or of a sub-directory of this directory, whose statistics are complete. Once the
+   * sketches are no longer exact the quantiles depend on the order of the children, see
+   * MetricsAggregator.rollupDirectories().
+   */
+  public synchronized void rollup(CompositeMetrics child) {
+    mergeStatistics(child);
+    _sourceCount += child.getSourceCount();
+    _significantSourceCount += child.getSignificantSourceCount();
+  }
+
+  /** Returns the number of files in this directory and in its sub-directories. */
+  @Override
+  public synchronized int getSourceCount() {
+    return _sourceCount;
+  }
+
+  @Override
+  public synchronized int getSignificantSourceCount() {
+    return _significantSourceCount;
+  }
+}
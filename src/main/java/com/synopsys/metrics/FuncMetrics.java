@@ -1,6 +1,5 @@
 package com.synopsys.metrics;
 
-import com.synopsys.sipm.model.Parameter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -8,16 +7,21 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.XMLEvent;
 import java.io.File;
+import java.util.Arrays;
 import java.util.stream.Stream;
 
 /**
  * Manages the code metrics for a single function. Each components of the XML metrics structure provided by Coverity is
  * saved as a String associated to a key. Those components stores: The name of the function the metrics relates to The
  * file where the function is defined Impact information (???) Coverage information And the code metrics themselves.
+ * <p>
+ * The raw XML values are only kept until parse(), which moves the metrics into the metric store and keeps the names.
+ * The directory, file, module and class names are derived from the pathname on request, and read by the templates
+ * through getTemplateValue().
  */
 public class FuncMetrics extends Measurable {
 
-	protected Logger logger = LogManager.getLogger(FuncMetrics.class);
+	protected static Logger logger = LogManager.getLogger(FuncMetrics.class);
 
 	public static String tagMETRICS = "metrics";
 	public static String tagFILE = "file";
@@ -27,15 +31,73 @@ public class FuncMetrics extends Measurable {
 
 	public static String[] loadedTags = { tagMETRICS, tagFILE, tagNAMES, tagCOVERAGE, tagIMPACT };
 
+	/** Keys of the values in the metrics, coverage and impact elements, in the order of their slots. */
+	public static final String[] METRICS_KEYS = { "be", "fe", "bl", "lc", "on", "ot", "cc", "pce", "pcs", "hf", "hr",
+			"ml" };
+	public static final String[] COVERAGE_KEYS = { "cu", "uu", "cf", "uf" };
+	public static final String[] IMPACT_KEYS = { "ad", "sd", "dd", "id", "md" };
+
+	private static final int COVERAGE_OFFSET = METRICS_KEYS.length;
+	private static final int IMPACT_OFFSET = COVERAGE_OFFSET + COVERAGE_KEYS.length;
+
+	/** The metric name of each slot, the Coverity keys lc and cc are known as loc and ccm. */
+	public static final String[] SLOT_NAMES = new String[IMPACT_OFFSET + IMPACT_KEYS.length];
+
+	/** The id in the metric schema of each slot. */
+	private static final int[] SLOT_IDS = new int[SLOT_NAMES.length];
+
+	static {
+		System.arraycopy(METRICS_KEYS, 0, SLOT_NAMES, 0, METRICS_KEYS.length);
+		System.arraycopy(COVERAGE_KEYS, 0, SLOT_NAMES, COVERAGE_OFFSET, COVERAGE_KEYS.length);
+		System.arraycopy(IMPACT_KEYS, 0, SLOT_NAMES, IMPACT_OFFSET, IMPACT_KEYS.length);
+		SLOT_NAMES[Arrays.asList(METRICS_KEYS).indexOf("lc")] = tagLOC;
+		SLOT_NAMES[Arrays.asList(METRICS_KEYS).indexOf("cc")] = tagCCM;
+		for (int i = 0; i < SLOT_NAMES.length; i++) {
+			SLOT_IDS[i] = getSchema().idOf(SLOT_NAMES[i]);
+		}
+	}
+
+	/** Returns true if the given slot holds a value of the coverage element. */
+	static boolean isCoverageSlot(int slot) {
+		return (slot >= COVERAGE_OFFSET) && (slot < IMPACT_OFFSET);
+	}
+
+	/** Returns true if the given slot holds a value of the impact element. */
+	static boolean isImpactSlot(int slot) {
+		return (slot >= IMPACT_OFFSET) && (slot < SLOT_NAMES.length);
+	}
+
+	// Receives the parsed values before they are copied into the metric store, one per parsing thread
+	private static final ThreadLocal<double[]> _parsedSlots = ThreadLocal
+			.withInitial(() -> new double[SLOT_NAMES.length]);
+
+	// The pathnames, and the module and class names found in the names element, are ids in these tables
+	private static final PathTable _paths = new PathTable(File.separatorChar);
+	private static final PathTable _qualifiedNames = new PathTable('.');
+
+	// The raw XML values, released by parse()
+	private String _metrics = "";
+	private String _names = "";
+	private String _coverage = "";
+	private String _impact = "";
+
+	private int _pathId = PathTable.ROOT;
+
+	// Parsed from the names, NONE or null if not found
+	private String _function = null;
+	private int _moduleId = PathTable.NONE;
+	private int _classId = PathTable.NONE;
+
 	public FuncMetrics() {
 		super("Function Metrics");
-		for (String tag : loadedTags) {
-			add(tag, "", Parameter.READ_WRITE);
-		}
-		add("fdir", null, Parameter.READ_WRITE);
-		add("fname", null, Parameter.READ_WRITE);
-		add("module", null, Parameter.READ_WRITE);
-		add("class", null, Parameter.READ_WRITE);
+	}
+
+	/** Forgets the raw values of the XML elements other than the file. */
+	void clearElements() {
+		_metrics = "";
+		_names = "";
+		_coverage = "";
+		_impact = "";
 	}
 
 	//
@@ -54,54 +116,178 @@ public class FuncMetrics extends Measurable {
 	// ******************************************************************************************************************
 	//
 
+	/** Returns the raw value of one of the loadedTags XML elements. */
+	public String getElement(String tag) {
+		if (tagFILE.equals(tag))
+			return getPathname();
+		if (tagMETRICS.equals(tag))
+			return _metrics;
+		if (tagNAMES.equals(tag))
+			return _names;
+		if (tagCOVERAGE.equals(tag))
+			return _coverage;
+		if (tagIMPACT.equals(tag))
+			return _impact;
+		return null;
+	}
+
+	/** Sets the raw value of one of the loadedTags XML elements. */
+	public void setElement(String tag, String value) {
+		if (value == null)
+			value = "";
+		if (tagFILE.equals(tag)) {
+			setPathname(value);
+		} else if (tagMETRICS.equals(tag)) {
+			_metrics = value;
+		} else if (tagNAMES.equals(tag)) {
+			_names = value;
+		} else if (tagCOVERAGE.equals(tag)) {
+			_coverage = value;
+		} else if (tagIMPACT.equals(tag)) {
+			_impact = value;
+		} else {
+			logger.warn("Unexpected function metrics element {}", tag);
+		}
+	}
+
+	//
+	// ******************************************************************************************************************
+	//
+
+	/** Returns the table of the pathnames of all the functions. */
+	public static PathTable getPaths() {
+		return _paths;
+	}
+
+	/** Returns the table of the module and class names of all the functions. */
+	public static PathTable getQualifiedNames() {
+		return _qualifiedNames;
+	}
+
 	public String getPathname() {
-		return get("file");
+		return _paths.toString(_pathId);
 	}
 
 	public void setPathname(String value) {
-		set("file", value);
+		_pathId = _paths.intern(value);
+	}
+
+	/** Returns the id of the pathname in getPaths(). */
+	public int getPathId() {
+		return _pathId;
+	}
+
+	/** Returns the id of the directory in getPaths(), NONE if the pathname has no directory. */
+	public int getDirId() {
+		int parent = _paths.parentOf(_pathId);
+		return (parent == PathTable.ROOT) ? PathTable.NONE : parent;
 	}
 
 	public void autoset() {
-		String file = getPathname();
-		if (file != null) {
-			int pos = file.lastIndexOf(File.separatorChar);
-			if (pos == -1) {
-				_logger.warn("Suspicious pathname");
-			} else {
-				String dir = file.substring(0, pos);
-				String name = file.substring(pos + 1);
-				set("fdir", dir);
-				set("fname", name);
-				set("module", dir);
-				set("class", name);
-			}
+		if (getDirId() == PathTable.NONE) {
+			_logger.warn("Suspicious pathname");
 		}
 	}
 
+	/** Returns the directory of the file defining the function, null if the pathname has no directory. */
+	public String getDirName() {
+		int dir = getDirId();
+		return (dir == PathTable.NONE) ? null : _paths.toString(dir);
+	}
+
+	/** Returns the name of the file defining the function, null if the pathname has no directory. */
+	public String getFileName() {
+		return (getDirId() == PathTable.NONE) ? null : _paths.segmentOf(_pathId);
+	}
+
 	//
 	// ******************************************************************************************************************
 	//
 
 	public String getFunctionName() {
-		return get("function");
+		return _function;
 	}
 
+	/** Returns the id of the module name in getQualifiedNames(), NONE if the metrics file doesn't give it. */
+	public int getModuleId() {
+		return _moduleId;
+	}
+
+	/** Returns the id of the class name in getQualifiedNames(), NONE if the metrics file doesn't give it. */
+	public int getClassId() {
+		return _classId;
+	}
+
+	/** Returns the class name found in the metrics file or the file name. */
 	public String getClassName() {
-		return get("class");
+		return (_classId != PathTable.NONE) ? _qualifiedNames.toString(_classId) : getFileName();
 	}
 
+	/** Returns the module name found in the metrics file or the directory name. */
 	public String getModuleName() {
-		return get("module");
+		return (_moduleId != PathTable.NONE) ? _qualifiedNames.toString(_moduleId) : getDirName();
+	}
+
+	/** Also makes the names of the function available as parameters. */
+	@Override
+	public void publishMetrics() {
+		super.publishMetrics();
+		set(tagFILE, getPathname());
+		set("fdir", getDirName());
+		set("fname", getFileName());
+		set("module", getModuleName());
+		set("class", getClassName());
+		if (_function != null)
+			set("function", _function);
+	}
+
+	/** Also the names of the function, as published by publishMetrics() but without setting them. */
+	@Override
+	public String getTemplateValue(String key) {
+		if (tagFILE.equals(key))
+			return getPathname();
+		if ("fdir".equals(key))
+			return getDirName();
+		if ("fname".equals(key))
+			return getFileName();
+		if ("module".equals(key))
+			return getModuleName();
+		if ("class".equals(key))
+			return getClassName();
+		if ("function".equals(key) && (_function != null))
+			return _function;
+		return super.getTemplateValue(key);
 	}
+
 	//
 	// ******************************************************************************************************************
 	//
 
+	/**
+	 * Sets the names of a function already parsed, read from the metrics cache (see MetricsCache) instead of the XML.
+	 */
+	void restore(int pathId, String function, int moduleId, int classId) {
+		_pathId = pathId;
+		_function = function;
+		_moduleId = moduleId;
+		_classId = classId;
+	}
+
 	/**
 	 * Read the function's metrics components from the Coverity XML syntax.
 	 */
 	public boolean read(XMLStreamReader xmlsr) {
+		return read(xmlsr, MetricsProjection.ALL, null);
+	}
+
+	/**
+	 * Read the function's metrics components from the Coverity XML syntax, the text of the elements not needed by the
+	 * given projection is skipped. If the filter rejects the function once its file element is read, the rest of the
+	 * record is skipped and false is returned.
+	 *
+	 * @param filter Decides from the pathname if the function is read, may be null to read all the functions
+	 */
+	public boolean read(XMLStreamReader xmlsr, MetricsProjection projection, FunctionFilter filter) {
 		//
 		// The expected XML structure for a function metrics is :
 		//
@@ -121,6 +307,8 @@ public class FuncMetrics extends Measurable {
 				int eventType = 0;
 				String key = "";
 				String value = "";
+				boolean skipped = false;
+				boolean excluded = false;
 				while (!result && xmlsr.hasNext()) {
 					eventType = xmlsr.next();
 					switch (eventType) {
@@ -137,6 +325,7 @@ public class FuncMetrics extends Measurable {
 						if (key.isEmpty()) {
 							logger.warn("Found unexpected node " + elementName);
 						}
+						skipped = excluded || !projection.needsElement(key);
 					}
 						break;
 					case XMLEvent.END_ELEMENT: {
@@ -149,7 +338,11 @@ public class FuncMetrics extends Measurable {
 						}
 
 						if (!value.isEmpty()) {
-							set(key, value);
+							setElement(key, value);
+						}
+
+						if (tagFILE.equals(key) && (filter != null) && !filter.test(this)) {
+							excluded = true;
 						}
 
 						key = "";
@@ -159,7 +352,7 @@ public class FuncMetrics extends Measurable {
 
 					case XMLEvent.CDATA:
 					case XMLEvent.CHARACTERS:
-						if (!key.isEmpty()) {
+						if (!key.isEmpty() && !skipped) {
 							String text = xmlsr.getText();
 							value += text;
 						}
@@ -168,6 +361,11 @@ public class FuncMetrics extends Measurable {
 						break;
 					}
 				}
+
+				if (excluded) {
+					clearElements();
+					return false;
+				}
 			}
 		} catch (XMLStreamException e2) {
 
@@ -181,58 +379,79 @@ public class FuncMetrics extends Measurable {
 	 * Parse the content of the <metrics> tag to extract all metrics.
 	 */
 	public boolean parse() {
+		return parse(MetricsProjection.ALL);
+	}
+
+	/**
+	 * Parse the content of the <metrics> tag to extract the metrics of the given projection, the other ones are not
+	 * decoded.
+	 */
+	public boolean parse(MetricsProjection projection) {
 		boolean result = true;
 
 		// ------------------------------------------------------------------------
 		// Parse the metrics field from the XML file into a list of metrics
 		// ------------------------------------------------------------------------
 
-		// TODO Can we clear previous metrics values here ?
-
-		String[] metricsList = get("metrics", "").split(";");
+		double[] slots = _parsedSlots.get();
+		Arrays.fill(slots, Double.NaN);
+		boolean[] wanted = projection.isAll() ? null : projection.getSlots();
 
-		if (metricsList.length == 0) {
+		String strMetrics = _metrics;
+		if (strMetrics.isEmpty()) {
 			_logger.error("There's no 'metrics' element associated to function in file {}", getPathname());
-		} else {
-			for (String metric : metricsList) {
-				String[] metricList = metric.split(":");
-				if (metricList.length == 2) {
-					if (metricList[0].equals("lc")) {
-						setMetrics(tagLOC, Double.parseDouble(metricList[1]));
-					} else if (metricList[0].equals("cc")) {
-						setMetrics(tagCCM, Double.parseDouble(metricList[1]));
-					} else {
-						addMetrics(metricList[0], Double.parseDouble(metricList[1]));
-					}
-				} else {
-					logger.error("Bad format for metrics : {}", metric);
-					result = false;
-				}
-			}
+			result = false;
+		} else if (MetricsParser.parse(strMetrics, METRICS_KEYS, slots, 0, wanted, (name, value) -> {
+			if (projection.contains(name))
+				addMetrics(name, value);
+		}) < 0) {
+			logger.error("Bad format for metrics : {}", strMetrics);
+			result = false;
 		}
 
+		if (projection.needsElement(tagCOVERAGE)
+				&& (MetricsParser.parse(_coverage, COVERAGE_KEYS, slots, COVERAGE_OFFSET, wanted, null) < 0)) {
+			logger.warn("Bad format for coverage : {}", _coverage);
+		}
+
+		if (projection.needsElement(tagIMPACT)
+				&& (MetricsParser.parse(_impact, IMPACT_KEYS, slots, IMPACT_OFFSET, wanted, null) < 0)) {
+			logger.warn("Bad format for impact : {}", _impact);
+		}
+
+		for (int i = 0; i < slots.length; i++) {
+			_store.set(_row, SLOT_IDS[i], slots[i]);
+		}
+		if (!isMetrics(tagLOC))
+			setMetrics(tagLOC, 0.0);
+		if (!isMetrics(tagCCM))
+			setMetrics(tagCCM, 0.0);
+
 		// ------------------------------------------------------------------------
 		// Parse the function and class names
 		// ------------------------------------------------------------------------
-		String strNames = get("names", "");
+		String strNames = _names;
 		if (strNames.isEmpty()) {
 			_logger.warn("There's no 'names' element for {}",getPathname());
 		} else {
 			String[] fields = strNames.split(";");
 			for (String field : fields) {
 				if (field.startsWith("fn:")) {
-					add("function", field.substring(3), Parameter.READ_WRITE);
+					_function = field.substring(3);
 				} else if (field.startsWith("mn:")) {
-					add("module", field.substring(3), Parameter.READ_WRITE);
+					_moduleId = _qualifiedNames.intern(field.substring(3));
 				} else if (field.startsWith("cn:")) {
 					int end = field.indexOf("$");
 					if (end == -1)
 						end = field.length();
-					add("class", field.substring(3, end), Parameter.READ_WRITE);
+					_classId = _qualifiedNames.intern(field.subSequence(3, end));
 				}
 			}
 		}
 
+		// The raw values are not needed anymore
+		clearElements();
+
 		return result;
 	}
 
@@ -34,11 +34,27 @@ public class FuncMetricsIter implements Iterator<FuncMetrics>, Closeable {
   // This is the XML stream parser
   protected XMLStreamReader xmlsr;
 
+  // The elements not needed by this projection are skipped
+  protected MetricsProjection projection = MetricsProjection.ALL;
+
+  // The records of the functions rejected by this filter are skipped, null to read all of them
+  protected FunctionFilter filter = null;
+
   public FuncMetricsIter(String filename) throws IOException, XMLStreamException {
     _inputFileName = filename;
     init();
   }
 
+  /**
+   * Iterates over the function metrics read from an already opened (and uncompressed) input stream, the given name is
+   * only used for diagnostics.
+   */
+  public FuncMetricsIter(InputStream input, String name) throws XMLStreamException {
+    _inputFileName = name;
+    gzipStream = input;
+    initParser();
+  }
+
   public void init() throws IOException, XMLStreamException {
 
     if (_inputFileName == null)
@@ -57,6 +73,11 @@ public class FuncMetricsIter implements Iterator<FuncMetrics>, Closeable {
       gzipStream = fileStream;
     }
 
+    initParser();
+  }
+
+  protected void initParser() throws XMLStreamException {
+
     // This is the stream with the parent XML tag <root>...</root>
     xmlInput = new SequenceInputStream(xmlRootPrefix, new SequenceInputStream(gzipStream, xmlRootSuffix));
 
@@ -75,6 +96,22 @@ public class FuncMetricsIter implements Iterator<FuncMetrics>, Closeable {
     xmlsr = xmlif.createXMLStreamReader(xmlInput);
   }
 
+  public MetricsProjection getProjection() {
+    return projection;
+  }
+
+  public void setProjection(MetricsProjection value) {
+    projection = (value != null) ? value : MetricsProjection.ALL;
+  }
+
+  public FunctionFilter getFilter() {
+    return filter;
+  }
+
+  public void setFilter(FunctionFilter value) {
+    filter = value;
+  }
+
   @Override
   public boolean hasNext() {
     boolean result = false;
@@ -97,12 +134,17 @@ public class FuncMetricsIter implements Iterator<FuncMetrics>, Closeable {
   @Override
   public FuncMetrics next() {
     FuncMetrics result = new FuncMetrics();
-    boolean loaded = result.read(xmlsr);
+    // The records skipped by the filter are read again into the same object
+    boolean loaded = result.read(xmlsr, projection, filter);
     while (!loaded && hasNext()) {
-      loaded = result.read(xmlsr);
+      loaded = result.read(xmlsr, projection, filter);
     }
 
-    return loaded ? result : null;
+    if (!loaded) {
+      result.release();
+      return null;
+    }
+    return result;
   }
 
   @Override
@@ -0,0 +1,312 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Iterates over a FUNCTIONS.metric.xml.gz file like FuncMetricsIter, but splits the work on dedicated threads:
+ * <ul>
+ * <li>The inflater thread reads and uncompresses the file into a small pool of large reusable buffers,</li>
+ * <li>The tokenizer thread runs the XML parser over these buffers and reads each fnmetric record,</li>
+ * <li>The caller's thread only takes the read records from a bounded queue.</li>
+ * </ul>
+ * Both queues are bounded, so the memory used by the pipeline is at most (buffer count x buffer size) plus the queue
+ * depth of unparsed FuncMetrics.
+ * <p>
+ * The inflater is interrupted, and closes the file, as soon as the tokenizer is done with the records or fails to
+ * parse them. A pipeline not read up to its end must be closed.
+ */
+public class FuncMetricsPipeline implements Iterator<FuncMetrics>, Closeable {
+
+  protected static Logger _logger = LogManager.getLogger(FuncMetricsPipeline.class);
+
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  public static final int DEFAULT_BUFFER_COUNT = 4;
+  public static final int DEFAULT_QUEUE_DEPTH = 4096;
+
+  // Marks the end of the records in the queue (the queue doesn't accept null values).
+  private static final FuncMetrics END_OF_RECORDS = new FuncMetrics();
+
+  // Marks the end of the uncompressed data in the buffer queue.
+  private static final Chunk END_OF_DATA = new Chunk(0);
+
+  /** A reusable buffer with the number of valid bytes in it. */
+  private static class Chunk {
+    final byte[] data;
+    int length;
+
+    Chunk(int size) {
+      data = new byte[size];
+    }
+  }
+
+  // This is the location of the input stream.
+  protected String _inputFileName;
+
+  protected final int _bufferSize;
+  protected final int _queueDepth;
+  protected final MetricsProjection _projection;
+  protected final FunctionFilter _filter;
+
+  // Buffers ready to be filled by the inflater
+  private final BlockingQueue<Chunk> _freeChunks;
+  // Buffers filled by the inflater, waiting for the tokenizer
+  private final BlockingQueue<Chunk> _filledChunks;
+  // Function metrics read by the tokenizer, waiting for the consumer
+  private final BlockingQueue<FuncMetrics> _records;
+
+  private Thread _inflater;
+  private Thread _tokenizer;
+
+  // The next record to return, already taken from the queue by hasNext()
+  private FuncMetrics _next = null;
+  private boolean _ended = false;
+
+  public FuncMetricsPipeline(String filename) throws IOException {
+    this(filename, DEFAULT_BUFFER_SIZE, DEFAULT_QUEUE_DEPTH);
+  }
+
+  public FuncMetricsPipeline(String filename, int bufferSize, int queueDepth) throws IOException {
+    this(filename, bufferSize, queueDepth, MetricsProjection.ALL, null);
+  }
+
+  /**
+   * The elements of the records not needed by the given projection, and the records of the functions rejected by the
+   * given filter (may be null), are skipped by the XML parsing stage.
+   */
+  public FuncMetricsPipeline(String filename, int bufferSize, int queueDepth, MetricsProjection projection,
+                             FunctionFilter filter) throws IOException {
+    if (bufferSize <= 0)
+      throw new IllegalArgumentException("Invalid buffer size " + bufferSize);
+    if (queueDepth <= 0)
+      throw new IllegalArgumentException("Invalid queue depth " + queueDepth);
+
+    _inputFileName = filename;
+    _bufferSize = bufferSize;
+    _queueDepth = queueDepth;
+    _projection = (projection != null) ? projection : MetricsProjection.ALL;
+    _filter = filter;
+
+    _freeChunks = new ArrayBlockingQueue<>(DEFAULT_BUFFER_COUNT);
+    _filledChunks = new ArrayBlockingQueue<>(DEFAULT_BUFFER_COUNT + 1);
+    _records = new ArrayBlockingQueue<>(queueDepth);
+
+    init();
+  }
+
+  public void init() throws IOException {
+
+    if (_inputFileName == null)
+      throw new IllegalArgumentException("Input file to parse is not defined.");
+
+    if (!new File(_inputFileName).canRead())
+      throw new IllegalArgumentException("Unable to read file '" + _inputFileName + "'");
+
+    for (int i = 0; i < DEFAULT_BUFFER_COUNT; i++) {
+      _freeChunks.add(new Chunk(_bufferSize));
+    }
+
+    // Opened here, so that a missing or corrupted file is reported to the caller.
+    InputStream fileStream = new FileInputStream(_inputFileName);
+    InputStream input = fileStream;
+    try {
+      if (_inputFileName.endsWith(".gz")) {
+        input = new GZIPInputStream(fileStream, _bufferSize);
+      }
+    } catch (IOException e) {
+      fileStream.close();
+      throw e;
+    }
+
+    final InputStream inflated = input;
+    _inflater = new Thread(() -> inflate(inflated), "metrics-inflater");
+    _inflater.setDaemon(true);
+
+    _tokenizer = new Thread(this::tokenize, "metrics-tokenizer");
+    _tokenizer.setDaemon(true);
+
+    _inflater.start();
+    _tokenizer.start();
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** First stage, fill the free buffers with uncompressed data until the end of the input file. */
+  private void inflate(InputStream input) {
+    try (InputStream is = input) {
+      boolean eof = false;
+      while (!eof) {
+        Chunk chunk = _freeChunks.take();
+        chunk.length = 0;
+        while (chunk.length < chunk.data.length) {
+          int count = is.read(chunk.data, chunk.length, chunk.data.length - chunk.length);
+          if (count < 0) {
+            eof = true;
+            break;
+          }
+          chunk.length += count;
+        }
+        if (chunk.length > 0) {
+          _filledChunks.put(chunk);
+        }
+      }
+    } catch (IOException e) {
+      _logger.error("Unable to read metrics from '{}': {}", _inputFileName, e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    try {
+      _filledChunks.put(END_OF_DATA);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Second stage, parse the XML from the filled buffers and queue each function metrics found. */
+  private void tokenize() {
+    FuncMetricsIter iter = null;
+    try {
+      iter = new FuncMetricsIter(new ChunkInputStream(), _inputFileName);
+      iter.setProjection(_projection);
+      iter.setFilter(_filter);
+      while (iter.hasNext()) {
+        FuncMetrics fm = iter.next();
+        if (fm != null) {
+          _records.put(fm);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (Exception e) {
+      if (Thread.currentThread().isInterrupted())
+        return;
+      _logger.error("Unable to parse metrics from '{}': {}", _inputFileName, e.getMessage());
+    } finally {
+      // The data left after the records or after a parsing error won't be read, the inflater would wait forever for a
+      // free buffer
+      _inflater.interrupt();
+      if (iter != null) {
+        try {
+          iter.close();
+        } catch (IOException e) {
+          _logger.error("Unable to close metrics reader: {}", e.getMessage());
+        }
+      }
+    }
+
+    try {
+      _records.put(END_OF_RECORDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** The input stream consumed by the XML parser, it gives back the buffers to the inflater once read. */
+  private class ChunkInputStream extends InputStream {
+
+    private Chunk current = null;
+    private int position = 0;
+
+    /** Returns false at the end of the data. */
+    private boolean fill() throws IOException {
+      if (current == END_OF_DATA)
+        return false;
+
+      if ((current != null) && (position < current.length))
+        return true;
+
+      try {
+        if (current != null) {
+          _freeChunks.put(current);
+        }
+        current = _filledChunks.take();
+        position = 0;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for uncompressed data.");
+      }
+      return current != END_OF_DATA;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return fill() ? current.data[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      if (!fill())
+        return -1;
+      int count = Math.min(len, current.length - position);
+      System.arraycopy(current.data, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return ((current != null) && (current != END_OF_DATA)) ? current.length - position : 0;
+    }
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Override
+  public boolean hasNext() {
+    if ((_next == null) && !_ended) {
+      try {
+        FuncMetrics fm = _records.take();
+        if (fm == END_OF_RECORDS) {
+          _ended = true;
+        } else {
+          _next = fm;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        _ended = true;
+      }
+    }
+    return _next != null;
+  }
+
+  @Override
+  public FuncMetrics next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    FuncMetrics result = _next;
+    _next = null;
+    return result;
+  }
+
+  /** Returns true while the threads of the pipeline are running. */
+  boolean isRunning() {
+    return _inflater.isAlive() || _tokenizer.isAlive();
+  }
+
+  /** Stops the threads of the pipeline, the inflater closes the file once interrupted. */
+  @Override
+  public void close() throws IOException {
+    _ended = true;
+    if (_tokenizer != null)
+      _tokenizer.interrupt();
+    if (_inflater != null)
+      _inflater.interrupt();
+  }
+
+}
@@ -0,0 +1,85 @@
+package com.synopsys.metrics;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Splits the function metrics read from a (non thread safe) iterator into fixed size batches for parallel streams.
+ * <p>
+ * The raw records are pulled from the iterator under a single lock, each call to trySplit() hands over a whole batch
+ * of records to the calling worker which can then parse them without any further synchronization. The batches are
+ * SIZED and ORDERED, while this spliterator itself is only ORDERED since the number of records in the metrics file is
+ * not known before the end of the reading.
+ */
+public class FuncMetricsSpliterator implements Spliterator<FuncMetrics> {
+
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  protected final Iterator<FuncMetrics> _source;
+  protected final int _batchSize;
+
+  // Protects the access to the source iterator
+  private final Object _lock = new Object();
+
+  public FuncMetricsSpliterator(Iterator<FuncMetrics> source) {
+    this(source, DEFAULT_BATCH_SIZE);
+  }
+
+  public FuncMetricsSpliterator(Iterator<FuncMetrics> source, int batchSize) {
+    if (source == null)
+      throw new IllegalArgumentException("Undefined function metrics iterator.");
+    if (batchSize <= 0)
+      throw new IllegalArgumentException("Invalid batch size " + batchSize);
+    _source = source;
+    _batchSize = batchSize;
+  }
+
+  /** Returns the next record from the source or null at the end. Must be called with the lock held. */
+  private FuncMetrics pull() {
+    while (_source.hasNext()) {
+      FuncMetrics fm = _source.next();
+      if (fm != null)
+        return fm;
+    }
+    return null;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super FuncMetrics> action) {
+    FuncMetrics fm;
+    synchronized (_lock) {
+      fm = pull();
+    }
+    if (fm == null)
+      return false;
+    action.accept(fm);
+    return true;
+  }
+
+  @Override
+  public Spliterator<FuncMetrics> trySplit() {
+    FuncMetrics[] batch = new FuncMetrics[_batchSize];
+    int count = 0;
+    synchronized (_lock) {
+      FuncMetrics fm;
+      while ((count < _batchSize) && ((fm = pull()) != null)) {
+        batch[count++] = fm;
+      }
+    }
+    if (count == 0)
+      return null;
+    return Spliterators.spliterator(batch, 0, count, ORDERED | NONNULL | IMMUTABLE);
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+}
@@ -0,0 +1,58 @@
+package com.synopsys.metrics;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Accepts or rejects the functions by their pathname, so that the readers can skip the records of the excluded files
+ * right after their file element.
+ * <p>
+ * The decision is made once per pathname and kept by path id (see FuncMetrics.getPaths()), the functions of a file
+ * being usually contiguous in the metrics file the regular expressions are only evaluated for the first function of
+ * each file. Several readers threads can share the same filter.
+ */
+public class FunctionFilter implements Predicate<FuncMetrics> {
+
+  private static final byte UNKNOWN = 0;
+  private static final byte ACCEPTED = 1;
+  private static final byte REJECTED = 2;
+
+  protected final Predicate<String> _pathFilter;
+
+  // Indexed by path id, only replaced by larger copies
+  private volatile byte[] _decisions = new byte[1024];
+
+  /**
+   * @param pathFilter Returns true for the pathnames of the functions to keep
+   */
+  public FunctionFilter(Predicate<String> pathFilter) {
+    if (pathFilter == null)
+      throw new IllegalArgumentException("Undefined pathname filter.");
+    _pathFilter = pathFilter;
+  }
+
+  /** Returns true if the function is to be kept, only its pathname must be set. */
+  @Override
+  public boolean test(FuncMetrics fm) {
+    return accepts(fm.getPathId());
+  }
+
+  /** Returns true if the functions of the given path id are to be kept. */
+  public boolean accepts(int pathId) {
+    byte[] decisions = _decisions;
+    if ((pathId < decisions.length) && (decisions[pathId] != UNKNOWN))
+      return decisions[pathId] == ACCEPTED;
+
+    // Evaluated again if several threads ask for the same pathname, they all find the same decision
+    boolean result = _pathFilter.test(FuncMetrics.getPaths().toString(pathId));
+    synchronized (this) {
+      decisions = _decisions;
+      if (pathId >= decisions.length) {
+        decisions = Arrays.copyOf(decisions, Math.max(pathId + 1, 2 * decisions.length));
+      }
+      decisions[pathId] = result ? ACCEPTED : REJECTED;
+      _decisions = decisions;
+    }
+    return result;
+  }
+}
@@ -4,21 +4,24 @@ import com.synopsys.sipm.model.Parameter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.FileOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-import static java.util.stream.Collectors.joining;
-
 public class Main {
 
 	protected static Logger _logger = LogManager.getLogger(Main.class);
+
+	/** Order of the counts of defects printed on the console, the highest first and then by name. */
+	private static final Comparator<Map.Entry<String, Integer>> BY_COUNT = Map.Entry
+			.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
 	protected Config config;
 
 	//
@@ -53,9 +56,30 @@ public class Main {
 
 	/** Extract from given file the XML segment for Function metrics, returns unparsed FuncMetrics. */
 	public Iterator<FuncMetrics> getFunctionMetricIter(String filename) {
+		return getFunctionMetricIter(filename, MetricsProjection.ALL, null);
+	}
+
+	/**
+	 * Extract from given file the XML segment for Function metrics, returns unparsed FuncMetrics. The records rejected
+	 * by the filter (may be null) are skipped.
+	 */
+	public Iterator<FuncMetrics> getFunctionMetricIter(String filename, MetricsProjection projection,
+			FunctionFilter filter) {
+		if ((config != null) && Config.READER_PIPELINE.equals(config.getReader())) {
+			try {
+				return new FuncMetricsPipeline(filename, config.getReadBufferSize(), config.getReadQueueDepth(),
+						projection, filter);
+			} catch (Exception e) {
+				_logger.error("Unable to start the pipeline reader on {}: {}", filename, e.getMessage());
+				return null;
+			}
+		}
+
 		FuncMetricsIter result = null;
 		try {
 			result = new FuncMetricsIter(filename);
+			result.setProjection(projection);
+			result.setFilter(filter);
 		} catch (Exception e) {
 			// TODO: handle exception
 			if (result != null) {
@@ -75,82 +99,204 @@ public class Main {
 	//
 
 	/**
-	 * Returns a new stream for converting each XML segment for the metrics of a function into a Hash map.
+	 * Returns a new stream for converting each XML segment for the metrics of a function into a Hash map. The records
+	 * are read in batches, each batch being parsed by a single thread of the parallel stream. The metrics and the
+	 * functions are the ones selected by the configuration.
 	 */
 	public Stream<FuncMetrics> getParsedStream(String filename) {
+		if (config == null)
+			return getParsedStream(filename, MetricsProjection.ALL, null);
+		return getParsedStream(filename, config.getProjection(), config.isCache() ? null : config.getFunctionFilter());
+	}
+
+	/**
+	 * Returns a new stream of the parsed functions of the given file. Only the metrics of the projection are parsed, and
+	 * the records of the functions rejected by the filter (may be null) are skipped by the readers. Closing the stream
+	 * closes the reader, and stops its threads when it's not read up to its end.
+	 */
+	public Stream<FuncMetrics> getParsedStream(String filename, MetricsProjection projection, FunctionFilter filter) {
 
-		Iterator<FuncMetrics> iter = getFunctionMetricIter(filename);
+		_logger.debug("Reading {} from {}", projection, filename);
 
-		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, 0), true).filter(fm -> fm.parse());
+		if ((config != null) && Config.READER_MAPPED.equals(config.getReader())) {
+			if (filename.endsWith(".gz")) {
+				_logger.warn("Unable to map compressed file {}, using the XML parser instead.", filename);
+			} else {
+				try {
+					MappedFuncMetricsReader reader = new MappedFuncMetricsReader(filename);
+					reader.setProjection(projection);
+					reader.setFilter(filter);
+					return StreamSupport.stream(reader.spliterator(), true).filter(fm -> fm.parse(projection));
+				} catch (IOException e) {
+					_logger.error("Unable to map file {}, using the XML parser instead: {}", filename, e.getMessage());
+				}
+			}
+		}
 
+		Iterator<FuncMetrics> iter = getFunctionMetricIter(filename, projection, filter);
+		if (iter == null) {
+			_logger.error("Unable to read function metrics from {}", filename);
+			return Stream.empty();
+		}
+
+		int batchSize = (config != null) ? config.getParseBatchSize() : FuncMetricsSpliterator.DEFAULT_BATCH_SIZE;
+
+		Stream<FuncMetrics> result = StreamSupport.stream(new FuncMetricsSpliterator(iter, batchSize), true)
+				.filter(fm -> fm.parse(projection));
+		if (iter instanceof Closeable) {
+			result = result.onClose(() -> {
+				try {
+					((Closeable) iter).close();
+				} catch (IOException e) {
+					_logger.error("Unable to close the reader of {}: {}", filename, e.getMessage());
+				}
+			});
+		}
+		return result;
 	}
 
-	public static void main(String[] args) {
+	/**
+	 * Calls the action for each function of the given file not excluded by the configuration, possibly from several
+	 * threads. When the cache is enabled the functions are read from the cache if it's up to date, or else they are
+	 * parsed and saved into a new cache. The cache keeps all the functions, they are filtered once read.
+	 */
+	public void forEachFunction(String filename, Consumer<FuncMetrics> action) {
+		if ((config == null) || !config.isCache()) {
+			try (Stream<FuncMetrics> functions = getParsedStream(filename)) {
+				functions.forEach(action);
+			}
+			return;
+		}
 
-		_logger.info("");
-		_logger.info("**************************************");
-		_logger.info("** Starting new execution from here **");
-		_logger.info("**************************************");
-		_logger.info("");
+		FunctionFilter filter = config.getFunctionFilter();
+		Consumer<FuncMetrics> filtered = action;
+		if (filter != null) {
+			filtered = fm -> {
+				if (filter.test(fm)) {
+					action.accept(fm);
+				} else {
+					fm.release();
+				}
+			};
+		}
 
-		if ((args == null) || args.length == 0) {
-			_logger.error("Unable to execute without command line arguments.");
+		MetricsCache cache = new MetricsCache(filename, config.getCacheFileName());
+		Stream<FuncMetrics> cached = cache.load();
+		if (cached != null) {
+			_logger.info("Reading function metrics from cache {}", cache.getCacheFile());
+			try (Stream<FuncMetrics> functions = cached) {
+				functions.forEach(filtered);
+			}
 			return;
 		}
 
-		_logger.info("Command line arguments:");
-		for (String opt : args) {
-			_logger.info("'" + opt + "'");
+		MetricsCache.Writer writer = null;
+		try {
+			writer = cache.newWriter();
+		} catch (IOException e) {
+			_logger.error("Unable to create metrics cache {}: {}", cache.getCacheFile(), e.getMessage());
 		}
-		_logger.info("");
 
-		Main main = new Main();
+		if (writer == null) {
+			try (Stream<FuncMetrics> functions = getParsedStream(filename, MetricsProjection.ALL, filter)) {
+				functions.forEach(action);
+			}
+		} else {
+			Consumer<FuncMetrics> next = filtered;
+			try (MetricsCache.Writer w = writer;
+					Stream<FuncMetrics> functions = getParsedStream(filename, MetricsProjection.ALL, null)) {
+				try {
+					functions.forEach(fm -> {
+						w.add(fm);
+						next.accept(fm);
+					});
+				} catch (RuntimeException e) {
+					// Only a part of the functions were added, the cache must not be saved
+					w.abort();
+					throw e;
+				}
+			} catch (IOException e) {
+				_logger.error("Unable to save metrics cache {}: {}", cache.getCacheFile(), e.getMessage());
+			}
+		}
+	}
 
-		main.init(args);
+	/**
+	 * Returns the aggregates of the directories of the given files when enabled by the configuration, or else an empty
+	 * map.
+	 */
+	protected Map<Integer, CompositeMetrics> getDirectoryMetrics(Map<Integer, CompositeMetrics> fileMetrics) {
+		if ((config == null) || !config.isDirectoryMetrics())
+			return new HashMap<>();
+		Map<Integer, CompositeMetrics> result = MetricsAggregator.rollupDirectories(fileMetrics);
+		_logger.debug("Found metrics for {} different directories.", result.size());
+		return result;
+	}
 
-		Config config = main.config;
+	/** Selects the metrics whose quantiles are needed by the checkers, before the composites are created. */
+	protected void initQuantileMetrics() {
+		if (config == null)
+			return;
+		Set<String> metrics = config.getQuantileMetrics();
+		if (!metrics.isEmpty()) {
+			_logger.debug("Computing the quantiles of metrics {}", metrics);
+		}
+		CompositeMetrics.setQuantileMetrics(metrics, config.getQuantileSketchSize());
+	}
 
-		String inputMetricFileName = config.getFunctionsFileName();
+	/**
+	 * Reads all the function metrics from the given file, aggregates them by files and modules and returns the defects
+	 * found on all of them.
+	 */
+	public List<Defect> checkAll(String inputMetricFileName) {
+		Queue<Defect> defects = new ConcurrentLinkedQueue<>();
+		checkAll(inputMetricFileName, defects::add);
+		return new ArrayList<>(defects);
+	}
+
+	/**
+	 * Reads all the function metrics from the given file, aggregates them by files and modules and passes the defects
+	 * found on all of them to the given consumer, possibly by several threads and in no particular order.
+	 */
+	public void checkAll(String inputMetricFileName, Consumer<Defect> consumer) {
 
 		// ----------------------------------------------------------------------------------------------------------------
 		// Initialize the collection of Measurable objects with the Function Metrics extracted from Coverity metrics file
 		// ----------------------------------------------------------------------------------------------------------------
 		_logger.debug("Collecting all function metrics from {}", inputMetricFileName);
+		// The metrics of the objects of the previous analyses are reclaimed with their store once they are dropped
+		MetricStore.startNew();
+		initQuantileMetrics();
 		List<FuncMetrics> funcMeasures = new ArrayList<>();
-		main.getParsedStream(inputMetricFileName).forEach(m -> funcMeasures.add(m));
+		forEachFunction(inputMetricFileName, m -> {
+			synchronized (funcMeasures) {
+				funcMeasures.add(m);
+			}
+		});
 		_logger.debug("Parsing input file metrics found {} functions with metrics.", funcMeasures.size());
 
 		// ----------------------------------------------------------------------------------------------------------------
 		// Add to the collection of Measurable objects the aggregated function metrics for a same file
 		// ----------------------------------------------------------------------------------------------------------------
-		HashMap<String, CompositeMetrics> fileMetrics = new HashMap<>();
-		HashMap<String, CompositeMetrics> moduleMetrics = new HashMap<>();
+		Map<Integer, CompositeMetrics> fileMetrics;
+		Map<Long, CompositeMetrics> moduleMetrics;
+		Map<Integer, CompositeMetrics> classMetrics;
 		{
 			_logger.debug("Aggregating function metrics by files and modules");
-			Map<String, List<FuncMetrics>> fileMeasures = new HashMap<>();
-			Map<String, List<FuncMetrics>> moduleFuncMetrics = new HashMap<>();
-
-			for (FuncMetrics fMetrics : funcMeasures) {
-
-				String fileLabel = fMetrics.getPathname();
-				List<FuncMetrics> byFileList = fileMeasures.get(fileLabel);
-				if (byFileList == null) {
-					byFileList = new ArrayList<>();
-					fileMeasures.put(fileLabel, byFileList);
-				}
-				byFileList.add(fMetrics);
-
-				String className = fMetrics.getClassName();
-				String moduleLabel = fMetrics.getModuleName();
-
-				List<FuncMetrics> byModuleList = moduleFuncMetrics.get(moduleLabel);
-				if (byModuleList == null) {
-					byModuleList = new ArrayList<>();
-					moduleFuncMetrics.put(moduleLabel, byModuleList);
-				}
-				byModuleList.add(fMetrics);
-
-			}
+			// Functions are grouped by the ids of their file and module, the labels are only built for the composites.
+			// Each thread aggregates its share of the functions, the partial composites are merged at the end.
+			boolean withClasses = (config != null) && config.isClassMetrics();
+			MetricsAggregator aggregates = funcMeasures.parallelStream()
+					.collect(MetricsAggregator.collector(withClasses));
+			fileMetrics = aggregates.getFiles();
+			moduleMetrics = aggregates.getModules();
+			classMetrics = aggregates.getClasses();
+
+			_logger.debug("Path table has {} entries for {} segments of {} chars.", FuncMetrics.getPaths().size(),
+					FuncMetrics.getPaths().getSegmentCount(), FuncMetrics.getPaths().getSegmentChars());
+			_logger.debug("Module and class table has {} entries for {} segments of {} chars.",
+					FuncMetrics.getQualifiedNames().size(), FuncMetrics.getQualifiedNames().getSegmentCount(),
+					FuncMetrics.getQualifiedNames().getSegmentChars());
 
 			//
 			// Remove common prefixes on file names
@@ -183,66 +329,164 @@ public class Main {
 
 				}
 			}
-			_logger.debug("Found metrics for {} different files.", fileMeasures.size());
-			_logger.debug("Found metrics for {} different modules.", moduleFuncMetrics.size());
+			_logger.debug("Found metrics for {} different files.", fileMetrics.size());
+			_logger.debug("Found metrics for {} different modules.", moduleMetrics.size());
+			_logger.debug("Found metrics for {} different classes.", classMetrics.size());
+		}
+		Map<Integer, CompositeMetrics> directoryMetrics = getDirectoryMetrics(fileMetrics);
 
-			//
-			// For each file listed in the sources of the function metrics, we collect the metrics for
-			// each of the functions into a single 'file' composite metric.
-			//
-			for (Map.Entry<String, List<FuncMetrics>> entry : fileMeasures.entrySet()) {
-				String fileLabel = entry.getKey();
-				FileMetrics metrics = new FileMetrics("File Metrics");
-				for (Measurable m : entry.getValue()) {
-					metrics.add(m);
-				}
-				metrics.add("file", fileLabel, Parameter.READ_WRITE);
-				fileMetrics.put(fileLabel, metrics);
-				_logger.debug("Registered {} functions in file {}.", entry.getValue().size(), fileLabel);
+		// ----------------------------------------------------------------------------------------------------------------
+		// Collecting defect results.
+		// ----------------------------------------------------------------------------------------------------------------
+		// The functions of the excluded files were already skipped by the readers, only the composites are filtered
+		Stream<Measurable> allMeasures = Stream.concat(funcMeasures.stream(), //
+				Stream.of(fileMetrics, moduleMetrics, classMetrics, directoryMetrics) //
+						.flatMap(map -> map.values().stream()) //
+						.filter(measurable -> config.filter(measurable)));
+
+		// Each measured item may trigger multiple defects, most of them none and the empty list is then not allocated
+		allMeasures.parallel() //
+				.forEach(measurable -> config.findDefects(measurable).forEach(consumer));
+
+		_logger.debug("Composite statistics computed {} times and reused {} times.",
+				CompositeMetrics.getStatCacheMisses(), CompositeMetrics.getStatCacheHits());
+	}
+
+	/**
+	 * Checks each function as soon as it is parsed and accumulates its metrics into the aggregates of its file and
+	 * module. The functions without defect are dropped once checked, so the memory used depends on the number of files
+	 * and modules and on the number of defects, not on the number of functions.
+	 */
+	public List<Defect> checkStreaming(String inputMetricFileName) {
+		Queue<Defect> defects = new ConcurrentLinkedQueue<>();
+		checkStreaming(inputMetricFileName, defects::add, false);
+		return new ArrayList<>(defects);
+	}
+
+	/**
+	 * Checks the functions as they are parsed as above, the defects being passed to the given consumer, possibly by
+	 * several threads, as soon as they are found. The consumer must be done with a defect when it returns: all the
+	 * functions are then dropped, so the memory used doesn't depend on the number of defects either.
+	 */
+	public void checkStreaming(String inputMetricFileName, Consumer<Defect> consumer) {
+		checkStreaming(inputMetricFileName, consumer, true);
+	}
+
+	private void checkStreaming(String inputMetricFileName, Consumer<Defect> consumer, boolean releaseAll) {
+
+		_logger.debug("Checking function metrics from {} as they are parsed", inputMetricFileName);
+		MetricStore.startNew();
+		initQuantileMetrics();
+		Map<Integer, CompositeMetrics> fileMetrics = new ConcurrentHashMap<>();
+		Map<Long, CompositeMetrics> moduleMetrics = new ConcurrentHashMap<>();
+		Map<Integer, CompositeMetrics> classMetrics = new ConcurrentHashMap<>();
+		boolean withClasses = config.isClassMetrics();
+		LongAdder funcCount = new LongAdder();
+
+		forEachFunction(inputMetricFileName, fMetrics -> {
+			funcCount.increment();
+
+			fileMetrics.computeIfAbsent(fMetrics.getPathId(), key -> MetricsAggregator.newFileMetrics(fMetrics))
+					.accumulate(fMetrics);
+
+			moduleMetrics.computeIfAbsent(MetricsAggregator.getModuleKey(fMetrics),
+					key -> MetricsAggregator.newModuleMetrics(fMetrics)).accumulate(fMetrics);
+
+			if (withClasses && (fMetrics.getClassId() != PathTable.NONE)) {
+				classMetrics.computeIfAbsent(fMetrics.getClassId(), key -> MetricsAggregator.newClassMetrics(fMetrics))
+						.accumulate(fMetrics);
 			}
 
-			//
-			//
-			//
-			for (Map.Entry<String, List<FuncMetrics>> entry : moduleFuncMetrics.entrySet()) {
-				String moduleLabel = entry.getKey();
-				ModuleMetrics metrics = new ModuleMetrics("Module Metrics");
-				for (Measurable m : entry.getValue()) {
-					metrics.add(m);
-				}
-				metrics.add("file", metrics.getSourcesLabel(), Parameter.READ_WRITE);
-				metrics.add("module", moduleLabel, Parameter.READ_WRITE);
-				moduleMetrics.put(moduleLabel, metrics);
-				_logger.debug("Registered {} functions in module {}", entry.getValue().size(), moduleLabel);
+			List<Defect> found = config.findDefects(fMetrics);
+			boolean retained = !releaseAll && !found.isEmpty();
+			found.forEach(consumer);
+
+			// Only the functions with a defect kept by the consumer are still referenced
+			if (!retained) {
+				fMetrics.release();
 			}
+		});
+
+		_logger.debug("Checked {} functions in {} files, {} modules and {} classes.", funcCount.sum(),
+				fileMetrics.size(), moduleMetrics.size(), classMetrics.size());
+
+		for (CompositeMetrics metrics : moduleMetrics.values()) {
+			metrics.add("file", metrics.getSourcesLabel(), Parameter.READ_WRITE);
+		}
+		for (CompositeMetrics metrics : classMetrics.values()) {
+			metrics.add("file", metrics.getSourcesLabel(), Parameter.READ_WRITE);
+		}
+
+		Map<Integer, CompositeMetrics> directoryMetrics = getDirectoryMetrics(fileMetrics);
+
+		Stream.of(fileMetrics, moduleMetrics, classMetrics, directoryMetrics) //
+				.flatMap(map -> map.values().stream()).parallel() //
+				.filter(measurable -> config.filter(measurable)) //
+				.forEach(measurable -> config.findDefects(measurable).forEach(consumer));
+	}
+
+	//
+	// ******************************************************************************************************************
+	//
+
+	public static void main(String[] args) {
+
+		_logger.info("");
+		_logger.info("**************************************");
+		_logger.info("** Starting new execution from here **");
+		_logger.info("**************************************");
+		_logger.info("");
+
+		if ((args == null) || args.length == 0) {
+			_logger.error("Unable to execute without command line arguments.");
+			return;
+		}
 
+		_logger.info("Command line arguments:");
+		for (String opt : args) {
+			_logger.info("'" + opt + "'");
 		}
+		_logger.info("");
+
+		Main main = new Main();
+
+		main.init(args);
+
+		Config config = main.config;
+
+		String inputMetricFileName = config.getFunctionsFileName();
+
 		// ----------------------------------------------------------------------------------------------------------------
-		// Collecting defect results.
+		// Build the JSON file for cov-import-results, the defects are rendered as they are found and sorted in the file
 		// ----------------------------------------------------------------------------------------------------------------
-		Stream<Measurable> allMeasures = Stream.concat(funcMeasures.stream(), //
-				Stream.concat(fileMetrics.values().stream(), moduleMetrics.values().stream()));
-
-		List<Defect> defects = allMeasures.parallel() //
-				.filter(measurable -> config.filter(measurable)) // Checker.check implementation to implement filtering ?
-				.flatMap(measurable -> config.check(measurable))// Each measured item may trigger multiple defects
-				.collect(Collectors.toList());
+		ReportWriter report;
+		try (ReportWriter writer = new ReportWriter(Paths.get(config.getReportFile()))) {
+			report = writer;
+			try {
+				if (config.isStreaming()) {
+					main.checkStreaming(inputMetricFileName, writer::write);
+				} else {
+					main.checkAll(inputMetricFileName, writer::write);
+				}
+			} catch (RuntimeException e) {
+				// Only a part of the defects were found, the report must not be left complete
+				writer.abort();
+				throw e;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
 
 		// ----------------------------------------------------------------------------------------------------------------
 		// Counts results by checker
 		// ----------------------------------------------------------------------------------------------------------------
 		{
-			Map<String, Integer> countBy = new HashMap<>();
-			for (Defect defect : defects) {
-				String key = defect.checker.getName();
-				countBy.compute(key, (k, v) -> (v == null) ? Integer.valueOf(1) : v + 1);
-			}
-
-			System.out.println("Defects count " + defects.size());
+			System.out.println("Defects count " + report.getCount());
 			System.out.println("Defects count by checker");
 
-			countBy.entrySet().stream()//
-					.sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue())) //
+			report.getCountByChecker().entrySet().stream()//
+					.sorted(BY_COUNT) //
 					.forEach(e -> System.out.printf("\t%8d %s\n", e.getValue(), e.getKey()));
 
 		}
@@ -251,70 +495,11 @@ public class Main {
 		// Counts results by file
 		// ----------------------------------------------------------------------------------------------------------------
 		{
-			Map<String, Integer> countBy = new HashMap<>();
-			for (Defect defect : defects) {
-				String src = defect.measured.getSourcesLabel();
-				if (defect.measured instanceof FuncMetrics) {
-					src = "[FUNCTION]  " + src;
-				} else if (defect.measured instanceof ModuleMetrics) {
-					src = "[MODULE]    " + src;
-				} else if (defect.measured instanceof FileMetrics) {
-					src = "[FILE]      " + src;
-				}
-				countBy.compute(src, (k, v) -> (v == null) ? Integer.valueOf(1) : v + 1);
-			}
-
 			System.out.println("Defects count by file");
-			countBy.entrySet().stream().sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
+			report.getCountByFile().entrySet().stream().sorted(BY_COUNT)
 					.forEach(e -> System.out.printf("\t%8d %s\n", e.getValue(), e.getKey()));
 		}
 
-		_logger.info("Found {} defects.", defects.size());
-
-		// ----------------------------------------------------------------------------------------------------------------
-		// Build the JSON file for cov-import-results
-		// ----------------------------------------------------------------------------------------------------------------
-		{
-			try (FileOutputStream os = new FileOutputStream(config.getReportFile());
-					 Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
-
-				writer.write("\n" + "{\n" + "\t\"header\" : {\n" + "\t\t\"version\" : 1,\n"
-						+ "\t\t\"format\" : \"cov-import-results input\" \n" + "\t},\n" + "\t\n" + "\t\"issues\": [\n");
-
-				boolean first = true;
-				for (int iDefect = 0; iDefect < defects.size(); iDefect++) {
-					String json = defects.get(iDefect).getJson();
-					if (json != null) {
-						if (!first)
-							writer.write(",\n");
-						writer.write("\t\t");
-						writer.write(json);
-						first = false;
-					} else {
-						_logger.error("Unable to retreive JSON excerpt for defect");
-					}
-				}
-
-				// End of JSON segments for defects and beginning of the array for source files.
-				writer.write("\n\t],\n" + "\t\"sources\": [\n");
-
-				
-				String json = defects.stream()//
-						.map(defect -> defect.measured.getSourcesLabel())//
-						.flatMap(strList -> Stream.of(strList.split(",")))
-						.sorted() //
-						.distinct() //
-						.map(path -> "\t\t{ \"file\": \"" + path + "\", \"encoding\": \"ASCII\" }")//
-						.collect(joining(",\n"));
-
-				writer.write(json);
-
-				writer.write("\n\t]\n}\n");
-
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-
-		}
+		_logger.info("Found {} defects.", report.getCount());
 	}
 }
@@ -0,0 +1,399 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Reads an uncompressed FUNCTIONS.metric.xml file by scanning directly the bytes of the memory mapped file.
+ * <p>
+ * The scanner only knows the fixed layout written by Coverity for each function:
+ * <pre>
+ * &lt;fnmetric&gt;
+ *   &lt;file&gt;...&lt;/file&gt;
+ *   &lt;names&gt;&lt;![CDATA[...]]&gt;&lt;/names&gt;
+ *   &lt;metrics&gt;...&lt;/metrics&gt;
+ *   &lt;coverage&gt;...&lt;/coverage&gt;
+ *   &lt;impact&gt;...&lt;/impact&gt;
+ * &lt;/fnmetric&gt;
+ * </pre>
+ * Tags are matched on bytes, only the element values are decoded as strings. A record with anything else in it (an
+ * unknown element, an XML entity, ...) is handed over to the StAX parser used by FuncMetricsIter.
+ * <p>
+ * The spliterator splits the file in disjoint regions aligned on the beginning of the records, so that several
+ * threads can scan the same file.
+ */
+public class MappedFuncMetricsReader {
+
+  protected static Logger _logger = LogManager.getLogger(MappedFuncMetricsReader.class);
+
+  // Files larger than the maximal size of a mapping are mapped in several windows overlapping each other, a record
+  // starting in a window must end in the same window.
+  static final long WINDOW_STEP = 1L << 30;
+  static final int WINDOW_OVERLAP = 16 << 20;
+
+  // Regions smaller than this are not split any further.
+  static final long MIN_REGION_SIZE = 64 * 1024;
+
+  // Used to estimate the number of functions in a region.
+  static final int AVERAGE_RECORD_SIZE = 512;
+
+  private static final byte[] RECORD_START = ascii("<fnmetric>");
+  private static final byte[] RECORD_END = ascii("</fnmetric>");
+  private static final byte[] CDATA_START = ascii("<![CDATA[");
+  private static final byte[] CDATA_END = ascii("]]>");
+
+  // The element names as bytes, in the same order as FuncMetrics.loadedTags
+  private static final byte[][] FIELDS = new byte[FuncMetrics.loadedTags.length][];
+  private static final int FILE_FIELD = Arrays.asList(FuncMetrics.loadedTags).indexOf(FuncMetrics.tagFILE);
+
+  static {
+    for (int i = 0; i < FIELDS.length; i++) {
+      FIELDS[i] = ascii(FuncMetrics.loadedTags[i]);
+    }
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  // This is the location of the input file.
+  protected String _inputFileName;
+  protected long _size;
+  protected MappedByteBuffer[] _windows;
+
+  // The elements not needed by this projection are not decoded
+  protected MetricsProjection _projection = MetricsProjection.ALL;
+
+  // The records of the functions rejected by this filter are skipped, null to read all of them
+  protected FunctionFilter _filter = null;
+
+  public MappedFuncMetricsReader(String filename) throws IOException {
+    _inputFileName = filename;
+    init();
+  }
+
+  public void init() throws IOException {
+
+    if (_inputFileName == null)
+      throw new IllegalArgumentException("Input file to parse is not defined.");
+
+    if (_inputFileName.endsWith(".gz"))
+      throw new IllegalArgumentException("Unable to map compressed file '" + _inputFileName + "'");
+
+    // The mappings stay valid once the channel is closed.
+    try (FileChannel channel = FileChannel.open(Paths.get(_inputFileName), StandardOpenOption.READ)) {
+      _size = channel.size();
+      int count = (int) ((_size + WINDOW_STEP - 1) / WINDOW_STEP);
+      _windows = new MappedByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long base = i * WINDOW_STEP;
+        long length = Math.min(WINDOW_STEP + WINDOW_OVERLAP, _size - base);
+        _windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+      }
+    }
+  }
+
+  public MetricsProjection getProjection() {
+    return _projection;
+  }
+
+  public void setProjection(MetricsProjection value) {
+    _projection = (value != null) ? value : MetricsProjection.ALL;
+  }
+
+  public FunctionFilter getFilter() {
+    return _filter;
+  }
+
+  public void setFilter(FunctionFilter value) {
+    _filter = value;
+  }
+
+  /** Returns a spliterator over all the functions of the file. */
+  public Spliterator<FuncMetrics> spliterator() {
+    return new Region(0, _size);
+  }
+
+  /** Returns an iterator over all the functions of the file, in the order of the file. */
+  public Iterator<FuncMetrics> iterator() {
+    return Spliterators.iterator(spliterator());
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  private static boolean matches(MappedByteBuffer buf, int offset, int limit, byte[] pattern) {
+    if (offset + pattern.length > limit)
+      return false;
+    for (int i = 0; i < pattern.length; i++) {
+      if (buf.get(offset + i) != pattern[i])
+        return false;
+    }
+    return true;
+  }
+
+  /** Returns the offset of the pattern starting in [from, to) or -1. */
+  private static int indexOf(MappedByteBuffer buf, int from, int to, int limit, byte[] pattern) {
+    byte first = pattern[0];
+    for (int i = from; i < to; i++) {
+      if ((buf.get(i) == first) && matches(buf, i, limit, pattern))
+        return i;
+    }
+    return -1;
+  }
+
+  private static int indexOf(MappedByteBuffer buf, int from, int limit, byte value) {
+    for (int i = from; i < limit; i++) {
+      if (buf.get(i) == value)
+        return i;
+    }
+    return -1;
+  }
+
+  private static int skipSpaces(MappedByteBuffer buf, int offset, int limit) {
+    while (offset < limit) {
+      byte b = buf.get(offset);
+      if ((b != ' ') && (b != '\n') && (b != '\r') && (b != '\t'))
+        break;
+      offset++;
+    }
+    return offset;
+  }
+
+  /** Returns the position of the first record starting in [from, to) or -1. */
+  protected long findRecord(long from, long to) {
+    while (from < to) {
+      int w = (int) (from / WINDOW_STEP);
+      long base = w * WINDOW_STEP;
+      MappedByteBuffer buf = _windows[w];
+      int last = (int) (Math.min(to, base + WINDOW_STEP) - base);
+      int found = indexOf(buf, (int) (from - base), Math.min(last, buf.limit()), buf.limit(), RECORD_START);
+      if (found >= 0)
+        return base + found;
+      from = base + WINDOW_STEP;
+    }
+    return -1;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** The functions with their record starting in a given range of the file. */
+  private class Region implements Spliterator<FuncMetrics> {
+
+    private long position;
+    private final long end;
+
+    // Set by read() and fallback() to the position following the record
+    private long recordEnd;
+
+    // Set by read() when the function is rejected by the filter, its object is then reused for the next record
+    private boolean excluded;
+    private FuncMetrics spare = null;
+
+    // Reused for decoding the values
+    private byte[] scratch = new byte[256];
+
+    Region(long start, long end) {
+      this.position = start;
+      this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super FuncMetrics> action) {
+      while (position < end) {
+        long start = findRecord(position, end);
+        if (start < 0) {
+          position = end;
+          break;
+        }
+
+        FuncMetrics fm = (spare != null) ? spare : new FuncMetrics();
+        spare = null;
+        excluded = false;
+        if (!read(start, fm)) {
+          fm.release();
+          fm = fallback(start);
+        } else if (excluded) {
+          spare = fm;
+          fm = null;
+        }
+        position = recordEnd;
+
+        if (fm != null) {
+          fm.autoset();
+          action.accept(fm);
+          return true;
+        }
+      }
+
+      if (spare != null) {
+        spare.release();
+        spare = null;
+      }
+      return false;
+    }
+
+    @Override
+    public Spliterator<FuncMetrics> trySplit() {
+      if (end - position < MIN_REGION_SIZE)
+        return null;
+
+      long split = findRecord(position + (end - position) / 2, end);
+      if (split < 0)
+        return null;
+
+      Region prefix = new Region(position, split);
+      position = split;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return (end - position) / AVERAGE_RECORD_SIZE + 1;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /** Scans the record at the given position, returns false if it doesn't have the expected layout. */
+    private boolean read(long start, FuncMetrics fm) {
+      int w = (int) (start / WINDOW_STEP);
+      long base = w * WINDOW_STEP;
+      MappedByteBuffer buf = _windows[w];
+      int limit = buf.limit();
+      int p = (int) (start - base) + RECORD_START.length;
+
+      while (true) {
+        p = skipSpaces(buf, p, limit);
+
+        if (matches(buf, p, limit, RECORD_END)) {
+          recordEnd = base + p + RECORD_END.length;
+          return true;
+        }
+
+        // Opening tag
+        if ((p >= limit) || (buf.get(p) != '<'))
+          return false;
+        int field = -1;
+        for (int i = 0; (i < FIELDS.length) && (field == -1); i++) {
+          if (matches(buf, p + 1, limit, FIELDS[i]) && (p + 1 + FIELDS[i].length < limit)
+                  && (buf.get(p + 1 + FIELDS[i].length) == '>')) {
+            field = i;
+          }
+        }
+        if (field == -1)
+          return false;
+        p += FIELDS[field].length + 2;
+
+        // Value, either raw text without entities or a CDATA section
+        int valueStart;
+        int valueEnd;
+        if (matches(buf, p, limit, CDATA_START)) {
+          valueStart = p + CDATA_START.length;
+          valueEnd = indexOf(buf, valueStart, limit, limit, CDATA_END);
+          if (valueEnd < 0)
+            return false;
+          p = valueEnd + CDATA_END.length;
+        } else {
+          valueStart = p;
+          valueEnd = indexOf(buf, p, limit, (byte) '<');
+          if (valueEnd < 0)
+            return false;
+          if (indexOf(buf, valueStart, valueEnd, (byte) '&') >= 0)
+            return false;
+          p = valueEnd;
+        }
+
+        // Closing tag
+        if ((p + FIELDS[field].length + 3 > limit) || (buf.get(p) != '<') || (buf.get(p + 1) != '/')
+                || !matches(buf, p + 2, limit, FIELDS[field]) || (buf.get(p + 2 + FIELDS[field].length) != '>'))
+          return false;
+        p += FIELDS[field].length + 3;
+
+        if ((valueEnd > valueStart) && _projection.needsElement(FuncMetrics.loadedTags[field])) {
+          fm.setElement(FuncMetrics.loadedTags[field], decode(buf, valueStart, valueEnd));
+        }
+
+        // The rest of the record of a rejected function is not scanned
+        if ((_filter != null) && (field == FILE_FIELD) && !_filter.test(fm)) {
+          int last = indexOf(buf, p, limit, limit, RECORD_END);
+          if (last < 0)
+            return false;
+          recordEnd = base + last + RECORD_END.length;
+          fm.clearElements();
+          excluded = true;
+          return true;
+        }
+      }
+    }
+
+    private String decode(MappedByteBuffer buf, int from, int to) {
+      int length = to - from;
+      if (scratch.length < length) {
+        scratch = new byte[Math.max(length, 2 * scratch.length)];
+      }
+      boolean ascii = true;
+      for (int i = 0; i < length; i++) {
+        byte b = buf.get(from + i);
+        scratch[i] = b;
+        ascii &= (b >= 0);
+      }
+      return new String(scratch, 0, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /** Reads the record at the given position with the StAX parser. */
+    private FuncMetrics fallback(long start) {
+      int w = (int) (start / WINDOW_STEP);
+      long base = w * WINDOW_STEP;
+      MappedByteBuffer buf = _windows[w];
+      int from = (int) (start - base);
+      int last = indexOf(buf, from, buf.limit(), buf.limit(), RECORD_END);
+      if (last < 0) {
+        _logger.error("Unable to find the end of the function metrics at offset {} in {}", start, _inputFileName);
+        recordEnd = end;
+        return null;
+      }
+      last += RECORD_END.length;
+      recordEnd = base + last;
+
+      _logger.debug("Unexpected function metrics layout at offset {} in {}, using XML parser", start, _inputFileName);
+
+      byte[] record = new byte[last - from];
+      for (int i = 0; i < record.length; i++) {
+        record[i] = buf.get(from + i);
+      }
+
+      FuncMetrics result = null;
+      try (FuncMetricsIter iter = new FuncMetricsIter(new ByteArrayInputStream(record), _inputFileName)) {
+        iter.setProjection(_projection);
+        iter.setFilter(_filter);
+        if (iter.hasNext()) {
+          result = iter.next();
+        }
+      } catch (Exception e) {
+        _logger.error("Unable to parse function metrics at offset {} in {}: {}", start, _inputFileName,
+                e.getMessage());
+      }
+      return result;
+    }
+  }
+
+}
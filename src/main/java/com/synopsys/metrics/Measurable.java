@@ -18,12 +18,37 @@ public abstract class Measurable extends ParameterSet {
 
   public static final String tagMETRICS_PREFIX = "metrics.";
 
+  // The values of the metrics are not parameters, they are stored in a row of the store of the analysis
+  protected final MetricStore _store;
+  protected final int _row;
+
   public Measurable(String name) {
+    this(name, MetricStore.getCurrent());
+  }
+
+  /** Creates an object whose metrics are stored in a new row of the given store. */
+  protected Measurable(String name, MetricStore store) {
+    _store = store;
+    _row = store.newRow();
     add(tagNAME, name, Parameter.READ_WRITE);
     addMetrics(tagLOC, 0.0);
     addMetrics(tagCCM, 0.0);
   }
 
+  /**
+   * Gives back the storage of the metrics of this object, which must not be used anymore. This is for the objects
+   * which are only accumulated into composites and then dropped during an analysis, the rows of the other objects are
+   * reclaimed with their store (see MetricStore.startNew()).
+   */
+  public void release() {
+    _store.freeRow(_row);
+  }
+
+  /** Returns the schema giving the ids of the metrics. */
+  public static MetricSchema getSchema() {
+    return MetricStore.getCurrent().getSchema();
+  }
+
   public String getName() {
     return get(tagNAME, "");
   }
@@ -32,6 +57,11 @@ public abstract class Measurable extends ParameterSet {
     set(tagNAME, value);
   }
 
+  /** Returns the kind of this object for the scopes of the checkers, given by its name. */
+  public Scope getScope() {
+    return Scope.of(getName());
+  }
+
   public abstract Stream<String> getAllSources();
 
   public String getSourcesLabel() {
@@ -48,34 +78,84 @@ public abstract class Measurable extends ParameterSet {
   }
 
   public boolean isMetrics(String metricName) {
-    return hasName(tagMETRICS_PREFIX + metricName);
+    return isMetrics(MetricRef.of(metricName));
+  }
+
+  /** Returns true if the metric referenced by a checker or a template is defined. */
+  public boolean isMetrics(MetricRef ref) {
+    return _store.isDefined(_row, ref.getId());
+  }
+
+  /** Returns true if the metric with the given id (see MetricSchema) is defined. */
+  public boolean isMetrics(int metricId) {
+    return _store.isDefined(_row, metricId);
   }
 
   /**
    * Returns a metric's value.
    */
   public double getMetric(String metricsName) {
-    double result = 0.0;
-    if (isMetrics(metricsName)) {
-      String metricValue = get(tagMETRICS_PREFIX + metricsName, "0.0");
-      try {
-        result = Double.parseDouble(metricValue);
-      } catch (NumberFormatException e) {
-        _logger.error("For metric named {}, unable to convert value {} as a double", metricsName, metricValue);
-        result = 0.0;
-      }
-    } else {
-      _logger.warn("Requesting metrics with unknown name '{}' on '{}'", metricsName, this.getName());
+    return getMetric(MetricRef.of(metricsName));
+  }
+
+  /**
+   * Returns the value of the metric referenced by a checker or a template, 0.0 if it's not defined.
+   */
+  public double getMetric(MetricRef ref) {
+    double result = _store.get(_row, ref.getId());
+    if (Double.isNaN(result)) {
+      _logger.warn("Requesting metrics with unknown name '{}' on '{}'", ref.getName(), this.getName());
+      result = 0.0;
     }
     return result;
   }
 
+  /**
+   * Returns the value of the metric with the given id (see MetricSchema), or NaN if it's not defined.
+   */
+  public double getMetric(int metricId) {
+    return _store.get(_row, metricId);
+  }
+
   public void setMetrics(String name, double value) {
-    set(tagMETRICS_PREFIX + name, Double.toString(value));
+    _store.set(_row, name, value);
   }
 
   public void addMetrics(String name, double value) {
-    add(tagMETRICS_PREFIX + name, Double.toString(value), Parameter.READ_WRITE);
+    _store.set(_row, name, value);
+  }
+
+  /** Sets the value of the metric with the given id (see MetricSchema), NaN makes it undefined. */
+  public void setMetrics(int metricId, double value) {
+    _store.set(_row, metricId, value);
+  }
+
+  /**
+   * Copies all the metrics as parameters named "metrics.NAME", so that they can be referenced by a template. This is
+   * the only place where the values of the metrics are converted to strings.
+   */
+  public void publishMetrics() {
+    MetricSchema schema = getSchema();
+    for (int id = 0; id < schema.size(); id++) {
+      double value = _store.get(_row, id);
+      if (!Double.isNaN(value)) {
+        String name = tagMETRICS_PREFIX + schema.nameOf(id);
+        if (hasName(name)) {
+          set(name, Double.toString(value));
+        } else {
+          add(name, Double.toString(value), Parameter.READ_WRITE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the value of the parameter referenced by "${key}" in a template, null if it's not defined, as after
+   * publishMetrics() but without changing this object, so that several defects of the object can be rendered at once.
+   * The "metrics.NAME" parameters are read from the metric store by the templates (see DefectTemplate).
+   */
+  public String getTemplateValue(String key) {
+    return get(key);
   }
 
   @Override
@@ -0,0 +1,135 @@
+package com.synopsys.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A metric name as used by a checker threshold or a template, resolved once into the id of the metric and the
+ * statistic of a composite it stands for: "loc_max" is the maximum of the metric loc, "ccm_p90" its 90th percentile,
+ * "count" the number of objects of a composite and "ml" the metric ml itself.
+ * <p>
+ * Measurable.getMetric(MetricRef) then reads the value without parsing the name. The ids are looked up in the
+ * MetricSchema until the metric is registered, as a checker may be resolved before the metrics file is read, and kept
+ * once found since they never change.
+ */
+public final class MetricRef {
+
+  /** What a name stands for on a composite, see CompositeMetrics.getMetric(). */
+  public enum Op {
+    /** The value of the metric with this name. */
+    VALUE,
+    MIN,
+    MAX,
+    MEAN,
+    SUM,
+    COUNT,
+    QUANTILE,
+    /** The number of objects of the composite, for the name "count". */
+    COMPOSITE_COUNT,
+    /** The number of distinct sources of the significant objects, see CompositeMetrics.tagFILE_COUNT. */
+    FILE_COUNT
+  }
+
+  private static final String[] STAT_SUFFIXES = { "_max", "_min", "_mean", "_sum", "_count" };
+  private static final Op[] STAT_OPS = { Op.MAX, Op.MIN, Op.MEAN, Op.SUM, Op.COUNT };
+
+  private static final Map<String, MetricRef> _refs = new ConcurrentHashMap<>();
+
+  protected final String _name;
+  protected final Op _op;
+  // Name of the metric the statistic is computed on, the name itself for a VALUE
+  protected final String _baseName;
+  protected final double _quantile;
+
+  // Ids of the name and of the base name in the schema, UNKNOWN until registered
+  private volatile int _id = MetricSchema.UNKNOWN;
+  private volatile int _baseId = MetricSchema.UNKNOWN;
+
+  private MetricRef(String name) {
+    Op op = Op.VALUE;
+    String baseName = name;
+    double quantile = -1;
+    if (name.equals(CompositeMetrics.tagFILE_COUNT)) {
+      op = Op.FILE_COUNT;
+    } else {
+      for (int i = 0; i < STAT_SUFFIXES.length; i++) {
+        if (name.endsWith(STAT_SUFFIXES[i])) {
+          op = STAT_OPS[i];
+          baseName = name.substring(0, name.length() - STAT_SUFFIXES[i].length());
+          break;
+        }
+      }
+      if (op == Op.VALUE) {
+        quantile = CompositeMetrics.quantileOf(name);
+        if (quantile >= 0) {
+          op = Op.QUANTILE;
+          baseName = name.substring(0, name.length() - 4);
+        } else if (name.equals("count")) {
+          op = Op.COMPOSITE_COUNT;
+        }
+      }
+    }
+    _name = name;
+    _op = op;
+    _baseName = baseName;
+    _quantile = quantile;
+  }
+
+  /** Returns the handle of the given metric name, the same one for all the callers. */
+  public static MetricRef of(String name) {
+    if (name == null)
+      throw new IllegalArgumentException("Undefined metric name.");
+    MetricRef result = _refs.get(name);
+    if (result == null) {
+      result = _refs.computeIfAbsent(name, MetricRef::new);
+    }
+    return result;
+  }
+
+  public String getName() {
+    return _name;
+  }
+
+  public Op getOp() {
+    return _op;
+  }
+
+  /** Returns true for a statistic or a quantile of another metric, like "loc_sum" or "ccm_p90". */
+  public boolean isAggregate() {
+    return (_op != Op.VALUE) && (_op != Op.COMPOSITE_COUNT) && (_op != Op.FILE_COUNT);
+  }
+
+  public String getBaseName() {
+    return _baseName;
+  }
+
+  /** Returns the quantile for the QUANTILE operation, 0.9 for "_p90". */
+  public double getQuantile() {
+    return _quantile;
+  }
+
+  /** Returns the id of the name in the schema, or UNKNOWN if no object has this metric yet. */
+  public int getId() {
+    int result = _id;
+    if (result == MetricSchema.UNKNOWN) {
+      result = Measurable.getSchema().find(_name);
+      _id = result;
+    }
+    return result;
+  }
+
+  /** Returns the id of the base name in the schema, or UNKNOWN if no object has this metric yet. */
+  public int getBaseId() {
+    int result = _baseId;
+    if (result == MetricSchema.UNKNOWN) {
+      result = Measurable.getSchema().find(_baseName);
+      _baseId = result;
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return _name;
+  }
+}
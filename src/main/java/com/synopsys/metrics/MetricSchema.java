@@ -0,0 +1,59 @@
+package com.synopsys.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the names of the metrics into small integer ids, used as column index in the MetricStore.
+ * <p>
+ * Ids are allocated in the order the names are first seen and never reused, so an id resolved once (for example for
+ * the metric of a checker threshold) stays valid for the whole execution. The schema is shared by all the threads.
+ */
+public class MetricSchema {
+
+  /** Returned by find() for a name never registered. */
+  public static final int UNKNOWN = -1;
+
+  private final Map<String, Integer> _ids = new ConcurrentHashMap<>();
+
+  // Indexed by id, replaced on each new name so that readers don't need to lock
+  private volatile String[] _names = new String[0];
+
+  /** Returns the id of the given metric name, registering it if needed. */
+  public int idOf(String name) {
+    if (name == null)
+      throw new IllegalArgumentException("Undefined metric name.");
+
+    Integer id = _ids.get(name);
+    if (id == null) {
+      synchronized (this) {
+        id = _ids.get(name);
+        if (id == null) {
+          String[] names = Arrays.copyOf(_names, _names.length + 1);
+          id = _names.length;
+          names[id] = name;
+          _names = names;
+          _ids.put(name, id);
+        }
+      }
+    }
+    return id;
+  }
+
+  /** Returns the id of the given metric name or UNKNOWN if it was never registered. */
+  public int find(String name) {
+    Integer id = (name != null) ? _ids.get(name) : null;
+    return (id != null) ? id : UNKNOWN;
+  }
+
+  /** Returns the name of the metric with the given id. */
+  public String nameOf(int id) {
+    return _names[id];
+  }
+
+  /** Returns the number of registered metrics, all ids are below this value. */
+  public int size() {
+    return _names.length;
+  }
+}
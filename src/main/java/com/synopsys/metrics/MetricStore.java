@@ -0,0 +1,201 @@
+package com.synopsys.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Column oriented storage of the metric values of all the measurable objects.
+ * <p>
+ * Each Measurable owns a row of the store, each metric (see MetricSchema) is a column made of fixed size chunks of
+ * doubles. A missing value is stored as NaN, so reading a metric is a couple of array accesses without parsing or
+ * boxing, and a function costs 8 bytes per metric instead of a map entry with a String value.
+ * <p>
+ * Rows are allocated atomically and distinct rows can be written concurrently, like the functions parsed by the
+ * workers of a parallel stream. The arrays only grow: any growth publishes a new copy of the column table through a
+ * volatile field so that readers never lock.
+ * <p>
+ * Each analysis creates the functions in a new store (see startNew()) and the composites in the store attached to it.
+ * A row released by its object is reused by the next objects of the same store, the rows of the objects not released
+ * are reclaimed with the whole store once all the objects of the analysis are dropped.
+ */
+public class MetricStore {
+
+  static final int CHUNK_BITS = 14;
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private static volatile MetricStore _current = new MetricStore(new MetricSchema());
+
+  /** Returns the store of the measurable objects created from now on. */
+  public static MetricStore getCurrent() {
+    return _current;
+  }
+
+  /**
+   * Replaces the current store by a new one with the same schema, for the objects of a new analysis. The objects
+   * already created keep their rows in the previous store.
+   */
+  public static synchronized MetricStore startNew() {
+    MetricStore result = new MetricStore(_current._schema);
+    _current = result;
+    return result;
+  }
+
+  protected final MetricSchema _schema;
+
+  // The rows of the composites, apart from the ones of the functions so that the metrics only defined on the composites
+  // don't allocate whole chunks for a few rows among the functions
+  private volatile MetricStore _compositeStore = null;
+
+  private final AtomicInteger _rowCount = new AtomicInteger();
+
+  // Rows released by objects that are not used anymore, reused by newRow()
+  private int[] _freeRows = new int[0];
+  private volatile int _freeCount = 0;
+
+  // Indexed by [metric id][chunk][row in chunk], missing columns and chunks are null.
+  private volatile double[][][] _columns = new double[0][][];
+
+  public MetricStore(MetricSchema schema) {
+    if (schema == null)
+      throw new IllegalArgumentException("Undefined metric schema.");
+    _schema = schema;
+  }
+
+  public MetricSchema getSchema() {
+    return _schema;
+  }
+
+  /** Returns the store of the composites of the functions of this store, with the same schema. */
+  public MetricStore getCompositeStore() {
+    MetricStore result = _compositeStore;
+    if (result == null) {
+      synchronized (this) {
+        result = _compositeStore;
+        if (result == null) {
+          result = new MetricStore(_schema);
+          _compositeStore = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Allocates a new row, with all the metrics undefined. */
+  public int newRow() {
+    if (_freeCount > 0) {
+      synchronized (this) {
+        if (_freeCount > 0) {
+          _freeCount--;
+          return _freeRows[_freeCount];
+        }
+      }
+    }
+    return _rowCount.getAndIncrement();
+  }
+
+  /** Clears the given row and makes it available for newRow(), it must not be used anymore by its owner. */
+  public synchronized void freeRow(int row) {
+    double[][][] columns = _columns;
+    for (int id = 0; id < columns.length; id++) {
+      set(row, id, Double.NaN);
+    }
+    if (_freeCount == _freeRows.length) {
+      _freeRows = Arrays.copyOf(_freeRows, Math.max(1024, 2 * _freeRows.length));
+    }
+    _freeRows[_freeCount] = row;
+    _freeCount = _freeCount + 1;
+  }
+
+  /** Returns the number of rows allocated, including the free ones. */
+  public int getRowCount() {
+    return _rowCount.get();
+  }
+
+  /** Returns the number of chunks allocated by all the columns. */
+  int getChunkCount() {
+    int result = 0;
+    for (double[][] chunks : _columns) {
+      if (chunks != null) {
+        for (double[] chunk : chunks) {
+          if (chunk != null)
+            result++;
+        }
+      }
+    }
+    return result;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns the value of a metric or NaN if it is not defined. */
+  public double get(int row, int id) {
+    double[][][] columns = _columns;
+    if ((id < 0) || (id >= columns.length))
+      return Double.NaN;
+    double[][] chunks = columns[id];
+    int chunk = row >>> CHUNK_BITS;
+    if ((chunks == null) || (chunk >= chunks.length) || (chunks[chunk] == null))
+      return Double.NaN;
+    return chunks[chunk][row & CHUNK_MASK];
+  }
+
+  /** Sets the value of a metric, NaN makes it undefined. */
+  public void set(int row, int id, double value) {
+    double[][][] columns = _columns;
+    if (id < columns.length) {
+      double[][] chunks = columns[id];
+      int chunk = row >>> CHUNK_BITS;
+      if ((chunks != null) && (chunk < chunks.length) && (chunks[chunk] != null)) {
+        chunks[chunk][row & CHUNK_MASK] = value;
+        return;
+      }
+    }
+    if (!Double.isNaN(value)) {
+      allocate(row, id)[row & CHUNK_MASK] = value;
+    }
+  }
+
+  /** Returns the chunk holding the given row of the given column, creating it if needed. */
+  private synchronized double[] allocate(int row, int id) {
+    if ((row < 0) || (row >= _rowCount.get()))
+      throw new IllegalArgumentException("Invalid metric row " + row);
+    if ((id < 0) || (id >= _schema.size()))
+      throw new IllegalArgumentException("Invalid metric id " + id);
+
+    int chunk = row >>> CHUNK_BITS;
+    double[][][] columns = _columns;
+    if ((id < columns.length) && (columns[id] != null) && (chunk < columns[id].length)
+            && (columns[id][chunk] != null))
+      return columns[id][chunk];
+
+    columns = Arrays.copyOf(columns, Math.max(columns.length, _schema.size()));
+    double[][] chunks = (columns[id] == null) ? new double[chunk + 1][]
+            : Arrays.copyOf(columns[id], Math.max(columns[id].length, chunk + 1));
+    double[] values = new double[CHUNK_SIZE];
+    Arrays.fill(values, Double.NaN);
+    chunks[chunk] = values;
+    columns[id] = chunks;
+    _columns = columns;
+    return values;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns true if the metric is defined for the given row. */
+  public boolean isDefined(int row, int id) {
+    return !Double.isNaN(get(row, id));
+  }
+
+  public double get(int row, String name) {
+    return get(row, _schema.find(name));
+  }
+
+  public void set(int row, String name, double value) {
+    set(row, _schema.idOf(name), value);
+  }
+}
@@ -16,4 +16,19 @@ public class Metrics {
 
   /** The threshold above which a defect should be triggered. */
   public double value = 0;
+
+  // The measure resolved by getRef(), and the name it was resolved from
+  private MetricRef ref = null;
+  private String refMetric = null;
+
+  /** Returns the handle of the measure, resolved again only if the name of the measure is changed. */
+  public MetricRef getRef() {
+    MetricRef result = ref;
+    if ((result == null) || (refMetric != metric)) {
+      result = MetricRef.of(metric);
+      refMetric = metric;
+      ref = result;
+    }
+    return result;
+  }
 }
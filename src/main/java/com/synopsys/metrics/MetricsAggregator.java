@@ -0,0 +1,205 @@
+package com.synopsys.metrics;
+
+import com.synopsys.sipm.model.Parameter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collector;
+
+/**
+ * Groups the functions by file and by module into FileMetrics and ModuleMetrics composites, and optionally by class
+ * into ClassMetrics composites.
+ * <p>
+ * An aggregator is not thread safe, it's a partial result of the collector(): each thread of a parallel stream of
+ * functions fills its own aggregator without any lock, and the partial aggregators are merged two by two at the end,
+ * the composites of a same file or module being combined by CompositeMetrics.merge().
+ */
+public class MetricsAggregator {
+
+  protected final Map<Integer, CompositeMetrics> _files = new HashMap<>();
+  protected final Map<Long, CompositeMetrics> _modules = new HashMap<>();
+  protected final Map<Integer, CompositeMetrics> _classes = new HashMap<>();
+
+  // Also groups the functions by class
+  protected final boolean _withClasses;
+
+  public MetricsAggregator() {
+    this(false);
+  }
+
+  /**
+   * @param withClasses If true the functions with a class name in the metrics file are also grouped by class
+   */
+  public MetricsAggregator(boolean withClasses) {
+    _withClasses = withClasses;
+  }
+
+  /** Returns a collector of the functions of a stream into their files and modules. */
+  public static Collector<FuncMetrics, ?, MetricsAggregator> collector() {
+    return collector(false);
+  }
+
+  /** Returns a collector of the functions of a stream into their files, modules and optionally classes. */
+  public static Collector<FuncMetrics, ?, MetricsAggregator> collector(boolean withClasses) {
+    return Collector.of(() -> new MetricsAggregator(withClasses), MetricsAggregator::add, MetricsAggregator::merge,
+            MetricsAggregator::complete, Collector.Characteristics.UNORDERED);
+  }
+
+  /** Returns the key grouping the functions of a module, the id of the module name or else of the directory. */
+  public static long getModuleKey(FuncMetrics fm) {
+    return (fm.getModuleId() != PathTable.NONE) ? (1L << 32) | fm.getModuleId() : (long) fm.getDirId();
+  }
+
+  /** Adds the function to the composites of its file, of its module and of its class. */
+  public void add(FuncMetrics fm) {
+    CompositeMetrics file = _files.get(fm.getPathId());
+    if (file == null) {
+      file = newFileMetrics(fm);
+      _files.put(fm.getPathId(), file);
+    }
+    file.add(fm);
+
+    long moduleKey = getModuleKey(fm);
+    CompositeMetrics module = _modules.get(moduleKey);
+    if (module == null) {
+      module = newModuleMetrics(fm);
+      _modules.put(moduleKey, module);
+    }
+    module.add(fm);
+
+    if (_withClasses && (fm.getClassId() != PathTable.NONE)) {
+      CompositeMetrics cls = _classes.get(fm.getClassId());
+      if (cls == null) {
+        cls = newClassMetrics(fm);
+        _classes.put(fm.getClassId(), cls);
+      }
+      cls.add(fm);
+    }
+  }
+
+  /** Moves the composites of the other aggregator into this one and returns this one. */
+  public MetricsAggregator merge(MetricsAggregator other) {
+    other._files.forEach((key, file) -> _files.merge(key, file, (mine, theirs) -> {
+      mine.merge(theirs);
+      return mine;
+    }));
+    other._modules.forEach((key, module) -> _modules.merge(key, module, (mine, theirs) -> {
+      mine.merge(theirs);
+      return mine;
+    }));
+    other._classes.forEach((key, cls) -> _classes.merge(key, cls, (mine, theirs) -> {
+      mine.merge(theirs);
+      return mine;
+    }));
+    other._files.clear();
+    other._modules.clear();
+    other._classes.clear();
+    return this;
+  }
+
+  /** Sets the labels only known once all the functions are aggregated, and returns this aggregator. */
+  public MetricsAggregator complete() {
+    for (CompositeMetrics module : _modules.values()) {
+      module.add("file", module.getSourcesLabel(), Parameter.READ_WRITE);
+    }
+    for (CompositeMetrics cls : _classes.values()) {
+      cls.add("file", cls.getSourcesLabel(), Parameter.READ_WRITE);
+    }
+    return this;
+  }
+
+  /** Returns the composites of the files, keyed by path id. */
+  public Map<Integer, CompositeMetrics> getFiles() {
+    return _files;
+  }
+
+  /** Returns the composites of the modules, keyed by getModuleKey(). */
+  public Map<Long, CompositeMetrics> getModules() {
+    return _modules;
+  }
+
+  /** Returns the composites of the classes, keyed by the id of their name in FuncMetrics.getQualifiedNames(). */
+  public Map<Integer, CompositeMetrics> getClasses() {
+    return _classes;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /**
+   * Returns the composites of all the directories containing the given files, up to the root, keyed by the path id of
+   * the directory (see FuncMetrics.getPaths()). Each file is merged into its directory and each directory into its
+   * parent once complete, so the cost depends on the number of files and directories, not on the number of functions.
+   * <p>
+   * The files and the directories are merged in the order of their pathnames, and not of their ids which depend on
+   * the order the functions were read, so that the quantiles of the directories are the same from one run to another.
+   */
+  public static Map<Integer, CompositeMetrics> rollupDirectories(Map<Integer, CompositeMetrics> files) {
+    PathTable paths = FuncMetrics.getPaths();
+
+    TreeMap<String, Integer> sortedFiles = new TreeMap<>();
+    for (Integer fileId : files.keySet()) {
+      sortedFiles.put(paths.toString(fileId), fileId);
+    }
+
+    Map<Integer, DirectoryMetrics> directories = new HashMap<>();
+    for (Integer fileId : sortedFiles.values()) {
+      int dirId = paths.parentOf(fileId);
+      if ((dirId == PathTable.NONE) || (dirId == PathTable.ROOT))
+        continue;
+      getDirectory(directories, paths, dirId).rollup(files.get(fileId));
+    }
+
+    // The sub-directories before their parents, each one once all its children are merged into it
+    List<DirectoryMetrics> sorted = new ArrayList<>(directories.values());
+    sorted.sort(Comparator.comparingDouble((DirectoryMetrics directory) -> -directory.getMetric("depth"))
+            .thenComparing(DirectoryMetrics::getPathname));
+    for (DirectoryMetrics directory : sorted) {
+      int parentId = paths.parentOf(directory._pathId);
+      if ((parentId != PathTable.NONE) && (parentId != PathTable.ROOT)) {
+        directories.get(parentId).rollup(directory);
+      }
+    }
+    return new HashMap<>(directories);
+  }
+
+  /** Returns the composite of the given directory, creating the ones of its parents if needed. */
+  private static DirectoryMetrics getDirectory(Map<Integer, DirectoryMetrics> directories, PathTable paths, int id) {
+    DirectoryMetrics result = directories.get(id);
+    if (result == null) {
+      int parentId = paths.parentOf(id);
+      int depth = 0;
+      if ((parentId != PathTable.NONE) && (parentId != PathTable.ROOT)) {
+        depth = (int) getDirectory(directories, paths, parentId).getMetric("depth") + 1;
+      }
+      result = new DirectoryMetrics(id, paths.toString(id), depth);
+      directories.put(id, result);
+    }
+    return result;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  static CompositeMetrics newFileMetrics(FuncMetrics fm) {
+    FileMetrics result = new FileMetrics("File Metrics");
+    result.add("file", fm.getPathname(), Parameter.READ_WRITE);
+    return result;
+  }
+
+  static CompositeMetrics newModuleMetrics(FuncMetrics fm) {
+    ModuleMetrics result = new ModuleMetrics("Module Metrics");
+    result.add("module", fm.getModuleName(), Parameter.READ_WRITE);
+    return result;
+  }
+
+  static CompositeMetrics newClassMetrics(FuncMetrics fm) {
+    return new ClassMetrics(fm.getClassId(), fm.getClassName());
+  }
+}
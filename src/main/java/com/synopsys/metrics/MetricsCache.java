@@ -0,0 +1,362 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary copy of the parsed function metrics, so that the analysis can be run again on the same metrics file without
+ * uncompressing and parsing the XML.
+ * <p>
+ * The cache file is made of:
+ * <ul>
+ * <li>a header giving the size, modification time and CRC of the metrics file it was built from, and the offsets of
+ * the other sections,</li>
+ * <li>the rows, one per function: the indexes of its pathname, module and class names, its function name and its
+ * defined metrics as (column, value) pairs,</li>
+ * <li>the schema, the metric name of each column,</li>
+ * <li>the distinct pathnames, then the distinct module and class names,</li>
+ * <li>the offset of each row, so that the rows can be read by several threads.</li>
+ * </ul>
+ * The cache is memory mapped when loaded. A cache built from another content of the metrics file is ignored, and
+ * rebuilt by the next run.
+ */
+public class MetricsCache {
+
+  protected static Logger _logger = LogManager.getLogger(MetricsCache.class);
+
+  static final int MAGIC = 0x434D4331; // "CMC1"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+
+  private static final int NO_INDEX = -1;
+
+  protected final Path _sourceFile;
+  protected final Path _cacheFile;
+
+  public MetricsCache(String sourceFileName, String cacheFileName) {
+    if ((sourceFileName == null) || (cacheFileName == null))
+      throw new IllegalArgumentException("Undefined metrics or cache file.");
+    _sourceFile = Paths.get(sourceFileName);
+    _cacheFile = Paths.get(cacheFileName);
+  }
+
+  public Path getCacheFile() {
+    return _cacheFile;
+  }
+
+  /** Returns the size, the modification time and the CRC of the metrics file. */
+  static long[] signature(Path source) throws IOException {
+    CRC32C crc = new CRC32C();
+    try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+      while (channel.read(buffer) > 0) {
+        buffer.flip();
+        crc.update(buffer);
+        buffer.clear();
+      }
+    }
+    return new long[] { Files.size(source), Files.getLastModifiedTime(source).toMillis(), crc.getValue() };
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /**
+   * Returns the functions read from the cache, already parsed, or null if there's no cache for the current content of
+   * the metrics file.
+   */
+  public Stream<FuncMetrics> load() {
+    if (!Files.isRegularFile(_cacheFile))
+      return null;
+
+    try (FileChannel channel = FileChannel.open(_cacheFile, StandardOpenOption.READ)) {
+      if ((channel.size() < HEADER_SIZE) || (channel.size() > Integer.MAX_VALUE)) {
+        _logger.warn("Ignoring metrics cache {} with unexpected size {}", _cacheFile, channel.size());
+        return null;
+      }
+
+      // The mapping stays valid once the channel is closed.
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if ((buf.getInt(0) != MAGIC) || (buf.getInt(4) != VERSION)) {
+        _logger.warn("Ignoring metrics cache {} with unknown format", _cacheFile);
+        return null;
+      }
+
+      long[] signature = signature(_sourceFile);
+      if ((buf.getLong(8) != signature[0]) || (buf.getLong(16) != signature[1]) || (buf.getLong(24) != signature[2])) {
+        _logger.info("Metrics cache {} is out of date with {}", _cacheFile, _sourceFile);
+        return null;
+      }
+
+      int rowCount = buf.getInt(32);
+      ByteBuffer section = buf.duplicate();
+
+      // Metric ids of the columns
+      section.position(buf.getInt(36));
+      int[] columns = new int[section.getInt()];
+      for (int i = 0; i < columns.length; i++) {
+        columns[i] = Measurable.getSchema().idOf(readString(section));
+      }
+
+      // Ids of the pathnames, and of the module and class names, in the tables of FuncMetrics
+      section.position(buf.getInt(40));
+      int[] pathIds = new int[section.getInt()];
+      for (int i = 0; i < pathIds.length; i++) {
+        pathIds[i] = FuncMetrics.getPaths().intern(readString(section));
+      }
+
+      section.position(buf.getInt(44));
+      int[] nameIds = new int[section.getInt()];
+      for (int i = 0; i < nameIds.length; i++) {
+        nameIds[i] = FuncMetrics.getQualifiedNames().intern(readString(section));
+      }
+
+      int index = buf.getInt(48);
+      _logger.debug("Loading {} functions from metrics cache {}", rowCount, _cacheFile);
+
+      return IntStream.range(0, rowCount).parallel()
+              .mapToObj(i -> readRow(buf, buf.getInt(index + 4 * i), columns, pathIds, nameIds));
+
+    } catch (IOException | RuntimeException e) {
+      _logger.error("Unable to read metrics cache {}: {}", _cacheFile, e.getMessage());
+      return null;
+    }
+  }
+
+  private static FuncMetrics readRow(ByteBuffer buf, int offset, int[] columns, int[] pathIds, int[] nameIds) {
+    FuncMetrics result = new FuncMetrics();
+
+    int path = buf.getInt(offset);
+    int module = buf.getInt(offset + 4);
+    int clazz = buf.getInt(offset + 8);
+    int length = buf.getInt(offset + 12);
+    offset += 16;
+
+    String function = null;
+    if (length >= 0) {
+      function = decode(buf, offset, length);
+      offset += length;
+    }
+
+    result.restore(pathIds[path], function, (module == NO_INDEX) ? PathTable.NONE : nameIds[module],
+            (clazz == NO_INDEX) ? PathTable.NONE : nameIds[clazz]);
+
+    int count = buf.getShort(offset);
+    offset += 2;
+    for (int i = 0; i < count; i++) {
+      result.setMetrics(columns[buf.getShort(offset)], buf.getDouble(offset + 2));
+      offset += 10;
+    }
+    return result;
+  }
+
+  private static String decode(ByteBuffer buf, int offset, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buf.get(offset + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Reads a string at the position of the buffer, and moves the position after it. */
+  private static String readString(ByteBuffer buf) {
+    int length = buf.getInt();
+    String result = decode(buf, buf.position(), length);
+    buf.position(buf.position() + length);
+    return result;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns a new writer building the cache from the functions parsed from the metrics file. */
+  public Writer newWriter() throws IOException {
+    return new Writer();
+  }
+
+  /**
+   * Writes the rows of the functions as they are added, possibly by several threads, into a temporary file. The other
+   * sections and the header are written by close(), which then replaces the cache file.
+   */
+  public class Writer implements Closeable {
+
+    private final long[] _signature;
+    private final Path _tmpFile;
+    private final FileChannel _channel;
+    private final DataOutputStream _out;
+    private boolean _failed = false;
+
+    private int[] _offsets = new int[1024];
+    private int _rowCount = 0;
+
+    // Cache index of the ids of the pathnames and qualified names, and the names in the order of their index
+    private int[] _pathIndexes = new int[0];
+    private final List<String> _pathNames = new ArrayList<>();
+    private int[] _nameIndexes = new int[0];
+    private final List<String> _qualifiedNames = new ArrayList<>();
+
+    Writer() throws IOException {
+      _signature = signature(_sourceFile);
+      _tmpFile = _cacheFile.resolveSibling(_cacheFile.getFileName() + ".tmp");
+      _channel = FileChannel.open(_tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING);
+      _out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(_channel), 1 << 16));
+      _out.write(new byte[HEADER_SIZE]);
+    }
+
+    private void writeString(String value) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      _out.writeInt(bytes.length);
+      _out.write(bytes);
+    }
+
+    private int indexOf(int id, boolean path) {
+      if (id == PathTable.NONE)
+        return NO_INDEX;
+
+      int[] indexes = path ? _pathIndexes : _nameIndexes;
+      if (id >= indexes.length) {
+        int size = indexes.length;
+        indexes = Arrays.copyOf(indexes, Math.max(id + 1, 2 * size));
+        Arrays.fill(indexes, size, indexes.length, NO_INDEX);
+        if (path) {
+          _pathIndexes = indexes;
+        } else {
+          _nameIndexes = indexes;
+        }
+      }
+      if (indexes[id] == NO_INDEX) {
+        List<String> names = path ? _pathNames : _qualifiedNames;
+        indexes[id] = names.size();
+        names.add(path ? FuncMetrics.getPaths().toString(id) : FuncMetrics.getQualifiedNames().toString(id));
+      }
+      return indexes[id];
+    }
+
+    /** Adds the row of a parsed function. */
+    public synchronized void add(FuncMetrics fm) {
+      if (_failed)
+        return;
+
+      try {
+        if (_rowCount == _offsets.length) {
+          _offsets = Arrays.copyOf(_offsets, 2 * _offsets.length);
+        }
+        _offsets[_rowCount++] = _out.size();
+
+        _out.writeInt(indexOf(fm.getPathId(), true));
+        _out.writeInt(indexOf(fm.getModuleId(), false));
+        _out.writeInt(indexOf(fm.getClassId(), false));
+        if (fm.getFunctionName() == null) {
+          _out.writeInt(-1);
+        } else {
+          writeString(fm.getFunctionName());
+        }
+
+        int size = Measurable.getSchema().size();
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+          if (fm.isMetrics(id))
+            count++;
+        }
+        _out.writeShort(count);
+        for (int id = 0; id < size && count > 0; id++) {
+          double value = fm.getMetric(id);
+          if (!Double.isNaN(value)) {
+            _out.writeShort(id);
+            _out.writeDouble(value);
+            count--;
+          }
+        }
+      } catch (IOException e) {
+        _logger.error("Unable to write metrics cache {}: {}", _tmpFile, e.getMessage());
+        _failed = true;
+      }
+    }
+
+    /** Drops the cache file when closed, as some functions couldn't be read or added. */
+    public synchronized void abort() {
+      _failed = true;
+    }
+
+    /** Completes the cache file, unless a row failed to be written or the writer was aborted. */
+    @Override
+    public synchronized void close() throws IOException {
+      boolean written = false;
+      try {
+        if (!_failed) {
+          MetricSchema schema = Measurable.getSchema();
+          int schemaOffset = _out.size();
+          _out.writeInt(schema.size());
+          for (int id = 0; id < schema.size(); id++) {
+            writeString(schema.nameOf(id));
+          }
+
+          int pathsOffset = _out.size();
+          _out.writeInt(_pathNames.size());
+          for (String name : _pathNames) {
+            writeString(name);
+          }
+
+          int namesOffset = _out.size();
+          _out.writeInt(_qualifiedNames.size());
+          for (String name : _qualifiedNames) {
+            writeString(name);
+          }
+
+          int indexOffset = _out.size();
+          for (int i = 0; i < _rowCount; i++) {
+            _out.writeInt(_offsets[i]);
+          }
+          _out.flush();
+
+          // The offsets are ints, and the cache is mapped as a single buffer
+          if (_channel.size() > Integer.MAX_VALUE)
+            throw new IOException("Metrics cache is larger than 2 GB");
+
+          ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+          header.putInt(MAGIC).putInt(VERSION);
+          header.putLong(_signature[0]).putLong(_signature[1]).putLong(_signature[2]);
+          header.putInt(_rowCount).putInt(schemaOffset).putInt(pathsOffset).putInt(namesOffset).putInt(indexOffset);
+          header.rewind();
+          _channel.write(header, 0);
+          written = true;
+        }
+      } finally {
+        _out.close();
+        if (!written) {
+          Files.deleteIfExists(_tmpFile);
+        }
+      }
+
+      // The cache is skipped if a row failed to be written
+      if (written) {
+        Files.move(_tmpFile, _cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        _logger.debug("Wrote {} functions into metrics cache {}", _rowCount, _cacheFile);
+      }
+    }
+  }
+}
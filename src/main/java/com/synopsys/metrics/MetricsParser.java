@@ -0,0 +1,169 @@
+package com.synopsys.metrics;
+
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Single pass parser for the "key:value;key:value;..." strings found in the metrics, coverage and impact elements of
+ * the Coverity metrics file.
+ * <p>
+ * The keys are compared in place against a table of known keys and the values are decoded directly into a slot of a
+ * double array, so that parsing a function allocates nothing: no split arrays, no substrings, no boxing. Only the
+ * unusual cases allocate: unknown keys, which are reported with their name, and numbers which can't be decoded
+ * exactly by hand (exponents, more than 15 significant digits), which use Double.parseDouble.
+ */
+public final class MetricsParser {
+
+  /** Returned by parse() when the text doesn't follow the expected syntax. */
+  public static final int BAD_FORMAT = -1;
+
+  // Powers of ten exactly representable as a double.
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+          1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  // Above this value the mantissa can't be converted exactly to a double.
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  private MetricsParser() {
+  }
+
+  /**
+   * Parses the given text and stores the value of each known key into values[offset + index of key in keys].
+   *
+   * @param text    The text to parse, may be null or empty
+   * @param keys    The known keys
+   * @param values  Receives the values of the known keys
+   * @param offset  Index in values of the slot of the first known key
+   * @param unknown Receives the name and value of the keys not found in keys, may be null to ignore them
+   * @return The number of key:value pairs found or BAD_FORMAT
+   */
+  public static int parse(CharSequence text, String[] keys, double[] values, int offset,
+                          ObjDoubleConsumer<String> unknown) {
+    return parse(text, keys, values, offset, null, unknown);
+  }
+
+  /**
+   * Same as parse() above, but the values of the known keys for which wanted[offset + index of key in keys] is false
+   * are skipped without being decoded.
+   *
+   * @param wanted The slots to decode, null for all of them
+   */
+  public static int parse(CharSequence text, String[] keys, double[] values, int offset, boolean[] wanted,
+                          ObjDoubleConsumer<String> unknown) {
+    if (text == null)
+      return 0;
+
+    int count = 0;
+    int length = text.length();
+    int pos = 0;
+    while (pos < length) {
+
+      // Empty entries (like a trailing ';') are skipped
+      if (text.charAt(pos) == ';') {
+        pos++;
+        continue;
+      }
+
+      int keyStart = pos;
+      while ((pos < length) && (text.charAt(pos) != ':')) {
+        if (text.charAt(pos) == ';')
+          return BAD_FORMAT;
+        pos++;
+      }
+      if (pos == length)
+        return BAD_FORMAT;
+      int keyEnd = pos++;
+
+      int valueStart = pos;
+      while ((pos < length) && (text.charAt(pos) != ';')) {
+        pos++;
+      }
+      int valueEnd = pos;
+      count++;
+
+      int index = indexOf(keys, text, keyStart, keyEnd);
+      if ((index >= 0) && (wanted != null) && !wanted[offset + index]) {
+        // Not decoded, only checked to be a value
+        if (valueEnd == valueStart)
+          return BAD_FORMAT;
+        continue;
+      }
+
+      double value = parseDouble(text, valueStart, valueEnd);
+      if (Double.isNaN(value))
+        return BAD_FORMAT;
+
+      if (index >= 0) {
+        values[offset + index] = value;
+      } else if (unknown != null) {
+        unknown.accept(text.subSequence(keyStart, keyEnd).toString(), value);
+      }
+    }
+    return count;
+  }
+
+  /** Returns the index of the key equal to text[start, end) or -1. */
+  static int indexOf(String[] keys, CharSequence text, int start, int end) {
+    int length = end - start;
+    for (int i = 0; i < keys.length; i++) {
+      String key = keys[i];
+      if (key.length() == length) {
+        int j = 0;
+        while ((j < length) && (key.charAt(j) == text.charAt(start + j))) {
+          j++;
+        }
+        if (j == length)
+          return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Decodes the decimal number in text[start, end), returns NaN if it's not a number. */
+  static double parseDouble(CharSequence text, int start, int end) {
+    int pos = start;
+    boolean negative = false;
+    if ((pos < end) && ((text.charAt(pos) == '-') || (text.charAt(pos) == '+'))) {
+      negative = text.charAt(pos) == '-';
+      pos++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int decimals = 0;
+    boolean point = false;
+    for (; pos < end; pos++) {
+      char c = text.charAt(pos);
+      if ((c >= '0') && (c <= '9')) {
+        if (mantissa > (MAX_EXACT_MANTISSA - 10) / 10)
+          return slowParseDouble(text, start, end);
+        mantissa = mantissa * 10 + (c - '0');
+        digits++;
+        if (point)
+          decimals++;
+      } else if ((c == '.') && !point) {
+        point = true;
+      } else {
+        // Exponent, infinity or anything else the JDK may know better
+        return slowParseDouble(text, start, end);
+      }
+    }
+
+    if (digits == 0)
+      return Double.NaN;
+
+    if (decimals >= POWERS_OF_TEN.length)
+      return slowParseDouble(text, start, end);
+
+    // Both operands are exact so the division is correctly rounded, like Double.parseDouble.
+    double result = (double) mantissa / POWERS_OF_TEN[decimals];
+    return negative ? -result : result;
+  }
+
+  private static double slowParseDouble(CharSequence text, int start, int end) {
+    try {
+      return Double.parseDouble(text.subSequence(start, end).toString());
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+}
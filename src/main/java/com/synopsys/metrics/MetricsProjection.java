@@ -0,0 +1,162 @@
+package com.synopsys.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The metrics of the functions needed by an analysis, the other ones are skipped by the readers and by
+ * FuncMetrics.parse() without being decoded nor stored.
+ * <p>
+ * The names are the ones of the metric store (loc and ccm for the Coverity keys lc and cc). The LOC and the CCM are
+ * always part of a projection, they are used by the composites to count the significant functions.
+ */
+public class MetricsProjection {
+
+  /** Keeps all the metrics. */
+  public static final MetricsProjection ALL = new MetricsProjection(null);
+
+  // Suffixes of the statistics of a composite, see CompositeMetrics.getMetric()
+  private static final String[] STAT_SUFFIXES = { "_min", "_max", "_mean", "_sum", "_count" };
+
+  private static final String THRESHOLD_SUFFIX = ".threshold";
+
+  private static final Pattern REFERENCE = Pattern.compile("\\$\\{([^}]+)}");
+
+  // null for all the metrics
+  private final Set<String> _names;
+
+  // Indexed by FuncMetrics slot
+  private final boolean[] _slots = new boolean[FuncMetrics.SLOT_NAMES.length];
+  private final boolean _coverage;
+  private final boolean _impact;
+
+  /** Returns a projection on the given metric names, or on all the metrics if names is null. */
+  public MetricsProjection(Collection<String> names) {
+    if (names == null) {
+      _names = null;
+    } else {
+      Set<String> set = new TreeSet<>(names);
+      set.add(Measurable.tagLOC);
+      set.add(Measurable.tagCCM);
+      _names = Collections.unmodifiableSet(set);
+    }
+
+    boolean coverage = false;
+    boolean impact = false;
+    for (int slot = 0; slot < _slots.length; slot++) {
+      _slots[slot] = contains(FuncMetrics.SLOT_NAMES[slot]);
+      if (_slots[slot]) {
+        coverage |= FuncMetrics.isCoverageSlot(slot);
+        impact |= FuncMetrics.isImpactSlot(slot);
+      }
+    }
+    _coverage = coverage;
+    _impact = impact;
+  }
+
+  public boolean isAll() {
+    return _names == null;
+  }
+
+  /** Returns true if the metric with the given name is needed. */
+  public boolean contains(String metricName) {
+    return (_names == null) || _names.contains(metricName);
+  }
+
+  /** Returns the needed metrics indexed by FuncMetrics slot, the array must not be modified. */
+  boolean[] getSlots() {
+    return _slots;
+  }
+
+  /** Returns true if the value of the given XML element of a function (see FuncMetrics.loadedTags) is needed. */
+  public boolean needsElement(String tag) {
+    if (FuncMetrics.tagCOVERAGE.equals(tag))
+      return _coverage;
+    if (FuncMetrics.tagIMPACT.equals(tag))
+      return _impact;
+    return true;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /**
+   * Returns the name of the function metric behind a name used by a checker or a template: "metrics.ml" is ml,
+   * "loc_sum", "loc_p90" or "loc.threshold" is loc.
+   */
+  public static String baseName(String name) {
+    String result = name;
+    if (result.startsWith(Measurable.tagMETRICS_PREFIX))
+      result = result.substring(Measurable.tagMETRICS_PREFIX.length());
+    if (result.endsWith(THRESHOLD_SUFFIX))
+      result = result.substring(0, result.length() - THRESHOLD_SUFFIX.length());
+    for (String suffix : STAT_SUFFIXES) {
+      if (result.endsWith(suffix) && (result.length() > suffix.length())) {
+        result = result.substring(0, result.length() - suffix.length());
+        break;
+      }
+    }
+    if (CompositeMetrics.quantileOf(result) >= 0)
+      result = result.substring(0, result.length() - 4);
+    return result;
+  }
+
+  /** Adds to the given set the names of the function metrics referenced by ${...} in the template. */
+  public static void addReferences(String template, Set<String> names) {
+    if (template == null)
+      return;
+    Matcher matcher = REFERENCE.matcher(template);
+    while (matcher.find()) {
+      names.add(baseName(matcher.group(1)));
+    }
+  }
+
+  /** Returns the projection on the metrics checked by the given checkers or referenced by their templates. */
+  public static MetricsProjection of(Collection<Checker> checkers) {
+    Set<String> names = new TreeSet<>();
+    for (Checker checker : checkers) {
+      checker.metricNames().forEach(metric -> names.add(baseName(metric)));
+      addReferences(checker.getJsonDefectTemplate(), names);
+      addReferences(checker.getJsonDefectEventTemplate(), names);
+    }
+    return new MetricsProjection(names);
+  }
+
+  /** Returns the names of the function metrics whose quantiles (_pNN suffixes) are used by the given checkers. */
+  public static Set<String> quantilesOf(Collection<Checker> checkers) {
+    Set<String> references = new TreeSet<>();
+    for (Checker checker : checkers) {
+      checker.metricNames().forEach(references::add);
+      addRawReferences(checker.getJsonDefectTemplate(), references);
+      addRawReferences(checker.getJsonDefectEventTemplate(), references);
+    }
+
+    Set<String> result = new TreeSet<>();
+    for (String reference : references) {
+      String name = reference.endsWith(THRESHOLD_SUFFIX)
+              ? reference.substring(0, reference.length() - THRESHOLD_SUFFIX.length()) : reference;
+      if (CompositeMetrics.quantileOf(name) >= 0)
+        result.add(baseName(name));
+    }
+    return result;
+  }
+
+  private static void addRawReferences(String template, Set<String> names) {
+    if (template == null)
+      return;
+    Matcher matcher = REFERENCE.matcher(template);
+    while (matcher.find()) {
+      names.add(matcher.group(1));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return (_names == null) ? "all metrics" : String.join(",", _names);
+  }
+}
@@ -0,0 +1,262 @@
+package com.synopsys.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The pathname exclusion and inclusion filters of the configuration, compiled together so that a pathname (or the
+ * label of a composite) is checked in a single pass whatever the number of patterns.
+ * <p>
+ * A regular expression must match the entire pathname, and most of the exclusion patterns are either a literal
+ * pathname or a literal directory followed by ".*", like "/usr/include/.*". Those ones are stored in a trie of
+ * characters walked once along the pathname. All the other exclusion patterns are joined in a single alternation, so
+ * that only one matcher runs for them. The patterns that can't be joined without changing their meaning (back
+ * references, comments mode) and the inclusion patterns are matched one by one.
+ * <p>
+ * The decision is kept per pathname, up to MAX_DECISIONS pathnames. Patterns are added while the configuration is
+ * loaded, the filter can then be used by several threads.
+ */
+public class PathFilter {
+
+  /** Maximum number of pathnames whose decision is kept. */
+  public static final int MAX_DECISIONS = 1 << 16;
+
+  private static final String METACHARS = "\\^$.|?*+()[]{}";
+  private static final String ANY_SUFFIX = ".*";
+
+  // A node of the trie of the literal patterns
+  private static final class Node {
+    final Map<Character, Node> children = new HashMap<>();
+    boolean prefix = false; // A pattern is the path to this node followed by .*
+    boolean exact = false; // A pattern is the path to this node
+  }
+
+  // The patterns as compiled by compile(), replaced when a pattern is added
+  private static final class Compiled {
+    Node trie = new Node();
+    Pattern joined = null;
+    List<Pattern> separate = new ArrayList<>();
+    List<Pattern> inclusions = new ArrayList<>();
+  }
+
+  private final List<String> _exclusions = new ArrayList<>();
+  private final List<String> _inclusions = new ArrayList<>();
+
+  private volatile Compiled _compiled = null;
+
+  private final Map<String, Boolean> _decisions = new ConcurrentHashMap<>();
+
+  /**
+   * Adds a pattern that must match an entire pathname.
+   *
+   * @param excluded If true the pathnames matching the regex are excluded, otherwise the ones not matching it are.
+   * @throws PatternSyntaxException if the regex is invalid, the filter is then unchanged.
+   */
+  public synchronized void add(String regex, boolean excluded) {
+    if (regex == null)
+      throw new IllegalArgumentException("Undefined pathname filter.");
+    Pattern.compile(regex);
+    if (excluded) {
+      _exclusions.add(regex);
+    } else {
+      _inclusions.add(regex);
+    }
+    _compiled = null;
+    _decisions.clear();
+  }
+
+  public synchronized boolean isEmpty() {
+    return _exclusions.isEmpty() && _inclusions.isEmpty();
+  }
+
+  /** Returns true if the given pathname is to be processed. */
+  public boolean accepts(String pathname) {
+    return !isExcluded(pathname);
+  }
+
+  /** Returns true if the given pathname is filtered out, a null pathname is never excluded. */
+  public boolean isExcluded(String pathname) {
+    if (pathname == null)
+      return false;
+
+    Boolean result = _decisions.get(pathname);
+    if (result == null) {
+      result = evaluate(getCompiled(), pathname);
+      if (_decisions.size() < MAX_DECISIONS) {
+        _decisions.put(pathname, result);
+      }
+    }
+    return result;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  private Compiled getCompiled() {
+    Compiled result = _compiled;
+    if (result == null) {
+      synchronized (this) {
+        result = _compiled;
+        if (result == null) {
+          result = compile();
+          _compiled = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private Compiled compile() {
+    Compiled result = new Compiled();
+
+    List<String> joinable = new ArrayList<>();
+    for (String regex : _exclusions) {
+      String literal = literalOf(regex);
+      if (literal != null) {
+        insert(result.trie, literal).exact = true;
+        continue;
+      }
+      if (regex.endsWith(ANY_SUFFIX)) {
+        literal = literalOf(regex.substring(0, regex.length() - ANY_SUFFIX.length()));
+        if (literal != null) {
+          insert(result.trie, literal).prefix = true;
+          continue;
+        }
+      }
+      if (isJoinable(regex)) {
+        joinable.add(regex);
+      } else {
+        result.separate.add(Pattern.compile(regex));
+      }
+    }
+
+    if (!joinable.isEmpty()) {
+      StringBuilder alternation = new StringBuilder();
+      for (String regex : joinable) {
+        if (alternation.length() > 0)
+          alternation.append('|');
+        alternation.append("(?:").append(regex).append(')');
+      }
+      try {
+        result.joined = Pattern.compile(alternation.toString());
+      } catch (PatternSyntaxException e) {
+        // Like the same named group in two patterns
+        for (String regex : joinable) {
+          result.separate.add(Pattern.compile(regex));
+        }
+      }
+    }
+
+    for (String regex : _inclusions) {
+      result.inclusions.add(Pattern.compile(regex));
+    }
+    return result;
+  }
+
+  private static boolean evaluate(Compiled compiled, String pathname) {
+    if (matchesLiteral(compiled.trie, pathname))
+      return true;
+    if ((compiled.joined != null) && compiled.joined.matcher(pathname).matches())
+      return true;
+    for (Pattern pattern : compiled.separate) {
+      if (pattern.matcher(pathname).matches())
+        return true;
+    }
+    for (Pattern pattern : compiled.inclusions) {
+      if (!pattern.matcher(pathname).matches())
+        return true;
+    }
+    return false;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  private static Node insert(Node root, String literal) {
+    Node node = root;
+    for (int i = 0; i < literal.length(); i++) {
+      node = node.children.computeIfAbsent(literal.charAt(i), c -> new Node());
+    }
+    return node;
+  }
+
+  /** Returns true if the pathname is one of the literal patterns, or starts with one of the literal prefixes. */
+  private static boolean matchesLiteral(Node root, String pathname) {
+    Node node = root;
+    for (int i = 0; node != null; i++) {
+      // Like the regex, .* doesn't match the line terminators
+      if (node.prefix && !hasLineTerminator(pathname, i))
+        return true;
+      if (i == pathname.length())
+        return node.exact;
+      node = node.children.get(pathname.charAt(i));
+    }
+    return false;
+  }
+
+  private static boolean hasLineTerminator(String text, int from) {
+    for (int i = from; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if ((c == '\n') || (c == '\r') || (c == '\u0085') || (c == '\u2028') || (c == '\u2029'))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the string matched by the given regex if it has no other construct than characters and escaped
+   * punctuation, or else null.
+   */
+  static String literalOf(String regex) {
+    StringBuilder result = new StringBuilder(regex.length());
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i++;
+        if ((i == regex.length()) || Character.isLetterOrDigit(regex.charAt(i)))
+          return null;
+        result.append(regex.charAt(i));
+      } else if (METACHARS.indexOf(c) >= 0) {
+        return null;
+      } else {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+
+  /** Returns false for the patterns whose meaning may change once embedded in an alternation. */
+  private static boolean isJoinable(String regex) {
+    for (int i = 0; i < regex.length() - 1; i++) {
+      char c = regex.charAt(i);
+      char next = regex.charAt(i + 1);
+      if (c == '\\') {
+        // Back references are numbered from the start of the whole pattern, a quote may run to its end
+        if (Character.isDigit(next) || (next == 'k') || (next == 'Q'))
+          return false;
+        i++;
+      } else if ((c == '(') && (next == '?')) {
+        // An inline comments flag turns the closing parenthesis into a comment
+        for (int j = i + 2; (j < regex.length()) && Character.isLetter(regex.charAt(j)); j++) {
+          if (regex.charAt(j) == 'x')
+            return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized String toString() {
+    Compiled compiled = getCompiled();
+    return _exclusions.size() + " exclusion and " + _inclusions.size() + " inclusion patterns, "
+            + compiled.separate.size() + " matched separately";
+  }
+}
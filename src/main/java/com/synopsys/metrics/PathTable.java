@@ -0,0 +1,236 @@
+package com.synopsys.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Canonicalizing symbol table for pathnames and qualified names.
+ * <p>
+ * A name is split on the separator into segments, each distinct segment is stored once and each distinct prefix of a
+ * name is a node of a trie identified by a small int. Two equal names always get the same id, the id of the directory
+ * (or enclosing package) of a name is its parent node and the last segment is the file (or simple) name, so all the
+ * functions of a file, and all the files of a directory, share the same storage.
+ * <p>
+ * The String of a name is only built when requested by toString(), and kept for the next requests. The splitting is
+ * lossless: empty segments (leading separator, double separators) are nodes too, so toString() gives back the exact
+ * name.
+ * <p>
+ * Interning is synchronized, reading the nodes is not: the arrays are only replaced by larger copies through volatile
+ * fields and an id is always handed over to other threads after its node is written.
+ */
+public class PathTable {
+
+  /** The id of the empty name, the root of all names. */
+  public static final int ROOT = 0;
+
+  /** Returned for the parent of the root. */
+  public static final int NONE = -1;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  protected final char _separator;
+
+  // Distinct segments, and an open addressing hash table of their indexes (-1 for a free slot)
+  private volatile String[] _segments = new String[INITIAL_CAPACITY];
+  private int[] _segmentSlots = newSlots(2 * INITIAL_CAPACITY);
+  private int _segmentCount = 0;
+
+  // Nodes, indexed by id
+  private volatile int[] _parents = new int[INITIAL_CAPACITY];
+  private volatile int[] _nodeSegments = new int[INITIAL_CAPACITY];
+  private volatile String[] _strings = new String[INITIAL_CAPACITY];
+  private volatile int _nodeCount = 1;
+
+  // Open addressing hash table of the node ids, keyed by (parent, segment)
+  private int[] _nodeSlots = newSlots(2 * INITIAL_CAPACITY);
+
+  // Consecutive functions are usually defined in the same file
+  private String _lastName = null;
+  private int _lastId = ROOT;
+
+  public PathTable(char separator) {
+    _separator = separator;
+    _parents[ROOT] = NONE;
+    _nodeSegments[ROOT] = -1;
+    _strings[ROOT] = "";
+  }
+
+  private static int[] newSlots(int size) {
+    int[] slots = new int[size];
+    Arrays.fill(slots, -1);
+    return slots;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns the id of the given name, adding it to the table if needed. */
+  public synchronized int intern(CharSequence name) {
+    if ((name == null) || (name.length() == 0))
+      return ROOT;
+
+    if ((_lastName != null) && (_lastName.contentEquals(name)))
+      return _lastId;
+
+    int node = ROOT;
+    int start = 0;
+    int length = name.length();
+    while (start <= length) {
+      int end = start;
+      while ((end < length) && (name.charAt(end) != _separator)) {
+        end++;
+      }
+      node = child(node, segment(name, start, end));
+      start = end + 1;
+    }
+
+    _lastName = name.toString();
+    _lastId = node;
+    return node;
+  }
+
+  private static int hash(CharSequence text, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + text.charAt(i);
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean equals(String segment, CharSequence text, int start, int end) {
+    if (segment.length() != end - start)
+      return false;
+    for (int i = 0; i < segment.length(); i++) {
+      if (segment.charAt(i) != text.charAt(start + i))
+        return false;
+    }
+    return true;
+  }
+
+  /** Returns the index of the segment text[start, end), adding it if needed. */
+  private int segment(CharSequence text, int start, int end) {
+    int mask = _segmentSlots.length - 1;
+    int slot = hash(text, start, end) & mask;
+    while (_segmentSlots[slot] != -1) {
+      int index = _segmentSlots[slot];
+      if (equals(_segments[index], text, start, end))
+        return index;
+      slot = (slot + 1) & mask;
+    }
+
+    String[] segments = _segments;
+    if (_segmentCount == segments.length) {
+      segments = Arrays.copyOf(segments, 2 * segments.length);
+    }
+    int index = _segmentCount++;
+    segments[index] = text.subSequence(start, end).toString();
+    _segments = segments;
+    _segmentSlots[slot] = index;
+
+    if (2 * _segmentCount > _segmentSlots.length) {
+      int[] slots = newSlots(2 * _segmentSlots.length);
+      for (int i = 0; i < _segmentCount; i++) {
+        String s = _segments[i];
+        int k = hash(s, 0, s.length()) & (slots.length - 1);
+        while (slots[k] != -1) {
+          k = (k + 1) & (slots.length - 1);
+        }
+        slots[k] = i;
+      }
+      _segmentSlots = slots;
+    }
+    return index;
+  }
+
+  private static int hash(int parent, int segment) {
+    int h = parent * 0x9E3779B9 + segment;
+    return h ^ (h >>> 16);
+  }
+
+  /** Returns the id of the node for the given segment under the given parent, adding it if needed. */
+  private int child(int parent, int segment) {
+    int[] parents = _parents;
+    int[] nodeSegments = _nodeSegments;
+    int mask = _nodeSlots.length - 1;
+    int slot = hash(parent, segment) & mask;
+    while (_nodeSlots[slot] != -1) {
+      int id = _nodeSlots[slot];
+      if ((parents[id] == parent) && (nodeSegments[id] == segment))
+        return id;
+      slot = (slot + 1) & mask;
+    }
+
+    int id = _nodeCount;
+    if (id == parents.length) {
+      int capacity = 2 * parents.length;
+      parents = Arrays.copyOf(parents, capacity);
+      nodeSegments = Arrays.copyOf(nodeSegments, capacity);
+      _strings = Arrays.copyOf(_strings, capacity);
+    }
+    parents[id] = parent;
+    nodeSegments[id] = segment;
+    _parents = parents;
+    _nodeSegments = nodeSegments;
+    _nodeSlots[slot] = id;
+    _nodeCount = id + 1;
+
+    if (2 * _nodeCount > _nodeSlots.length) {
+      int[] slots = newSlots(2 * _nodeSlots.length);
+      for (int i = ROOT + 1; i < _nodeCount; i++) {
+        int k = hash(parents[i], nodeSegments[i]) & (slots.length - 1);
+        while (slots[k] != -1) {
+          k = (k + 1) & (slots.length - 1);
+        }
+        slots[k] = i;
+      }
+      _nodeSlots = slots;
+    }
+    return id;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns the id of the directory (or enclosing name) of the given name, NONE for the root. */
+  public int parentOf(int id) {
+    return _parents[id];
+  }
+
+  /** Returns the last segment of the given name, the file name for a pathname. */
+  public String segmentOf(int id) {
+    return (id == ROOT) ? "" : _segments[_nodeSegments[id]];
+  }
+
+  /** Returns the name with the given id. */
+  public String toString(int id) {
+    String[] strings = _strings;
+    String result = strings[id];
+    if (result == null) {
+      int parent = _parents[id];
+      String segment = segmentOf(id);
+      result = (parent == ROOT) ? segment : toString(parent) + _separator + segment;
+      strings[id] = result;
+    }
+    return result;
+  }
+
+  /** Returns the number of distinct names (including all their prefixes) in the table. */
+  public int size() {
+    return _nodeCount;
+  }
+
+  /** Returns the number of distinct segments stored in the table. */
+  public synchronized int getSegmentCount() {
+    return _segmentCount;
+  }
+
+  /** Returns the number of characters stored for all the segments. */
+  public synchronized long getSegmentChars() {
+    long result = 0;
+    for (int i = 0; i < _segmentCount; i++) {
+      result += _segments[i].length();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,302 @@
+package com.synopsys.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable sketch of the distribution of the values of a metric, giving approximate quantiles with a bounded memory
+ * (KLL sketch).
+ * <p>
+ * As long as there are at most k distinct values, the sketch keeps them sorted with their counts: the quantiles are
+ * exact and don't depend on the order the values were added or merged. It's the usual case of the metrics of the
+ * functions, which are integers with few distinct values in a file, a class or a module.
+ * <p>
+ * Beyond, the values are kept in levels of compactors: an item of level h stands for 2^h values, a distinct value and
+ * its count being moved as one item per bit of the count. When a level is full it is sorted and one item out of two
+ * is promoted to the next level, the capacity of the lower levels decreasing geometrically. The sketch keeps at most
+ * about 3 * k values whatever the number of values added, and the rank of a quantile is approximated within about
+ * 1.7 / k of the number of values (1.7% for k = 200), see QuantileSketchTest.
+ * <p>
+ * Two sketches with the same k are merged level by level, so the sketch of a module or of a directory is built from
+ * the sketches of its files without going back to the functions. Which item of a pair is promoted alternates for each
+ * level instead of being random, so the same values added and merged in the same order always give the same
+ * quantiles. A sketch is not thread safe.
+ */
+public class QuantileSketch {
+
+  /** Default number of values kept by the top level, it sets the accuracy of the quantiles. */
+  public static final int DEFAULT_K = 200;
+
+  /** Smallest sketch size, also the smallest capacity of a level. */
+  public static final int MIN_K = 8;
+  private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+  protected final int _k;
+
+  // The distinct values sorted and their counts, null once there are more than k of them and they are moved into the
+  // levels
+  private double[] _distinct = new double[16];
+  private long[] _distinctCounts = new long[16];
+  private int _distinctSize = 0;
+
+  // The items of each level and their number, level 0 holds the values added
+  private double[][] _levels = new double[1][];
+  private int[] _sizes = new int[1];
+  // Which item of the pairs is promoted next time by each level
+  private boolean[] _odd = new boolean[1];
+
+  private long _count = 0;
+  private int _retained = 0;
+  private int _maxRetained;
+
+  // Items and cumulated weights sorted by value, built by quantile() and dropped by any change
+  private double[] _sortedValues = null;
+  private long[] _sortedWeights = null;
+
+  public QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+  public QuantileSketch(int k) {
+    if (k < MIN_K)
+      throw new IllegalArgumentException("Invalid quantile sketch size " + k + ", minimum is " + MIN_K);
+    _k = k;
+    _levels[0] = new double[Math.min(16, k)];
+    _maxRetained = capacity(0);
+  }
+
+  public int getK() {
+    return _k;
+  }
+
+  /** Returns the number of values added to the sketch. */
+  public long getCount() {
+    return _count;
+  }
+
+  /**
+   * Returns the number of values kept by the sketch, its memory is about 8 bytes per value kept, or 16 bytes per
+   * distinct value while the quantiles are exact.
+   */
+  public int getRetained() {
+    return (_distinct != null) ? _distinctSize : _retained;
+  }
+
+  /** Returns true while the sketch keeps all the distinct values and their counts, see the class comment. */
+  public boolean isExact() {
+    return _distinct != null;
+  }
+
+  public void add(double value) {
+    _count++;
+    _sortedValues = null;
+    if (_distinct != null) {
+      addDistinct(value, 1);
+      return;
+    }
+    append(0, value);
+    if (_retained > _maxRetained) {
+      compress();
+    }
+  }
+
+  /** Adds all the values summarized by the other sketch, which is left unchanged. */
+  public void merge(QuantileSketch other) {
+    if (other._k != _k)
+      throw new IllegalArgumentException("Can't merge quantile sketches of sizes " + _k + " and " + other._k);
+    if (other._distinct != null) {
+      for (int i = 0; i < other._distinctSize; i++) {
+        if (_distinct != null) {
+          addDistinct(other._distinct[i], other._distinctCounts[i]);
+        } else {
+          appendWeighted(other._distinct[i], other._distinctCounts[i]);
+        }
+      }
+    } else {
+      if (_distinct != null) {
+        moveDistinct();
+      }
+      for (int h = 0; h < other._levels.length; h++) {
+        for (int i = 0; i < other._sizes[h]; i++) {
+          append(h, other._levels[h][i]);
+        }
+      }
+    }
+    _count += other._count;
+    _sortedValues = null;
+    while (_retained > _maxRetained) {
+      compress();
+    }
+  }
+
+  /**
+   * Returns the smallest value whose rank is at least q * count (nearest rank), so 0.5 gives the median. Returns NaN
+   * when the sketch is empty.
+   */
+  public double quantile(double q) {
+    if ((q < 0.0) || (q > 1.0))
+      throw new IllegalArgumentException("Invalid quantile " + q);
+    if (_count == 0)
+      return Double.NaN;
+
+    if (_sortedValues == null) {
+      sort();
+    }
+    long rank = Math.max(1, (long) Math.ceil(q * _count));
+    int index = Arrays.binarySearch(_sortedWeights, rank);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return _sortedValues[Math.min(index, _sortedValues.length - 1)];
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Counts the given value, the distinct values being moved into the levels once there are more than k of them. */
+  private void addDistinct(double value, long count) {
+    int index = Arrays.binarySearch(_distinct, 0, _distinctSize, value);
+    if (index >= 0) {
+      _distinctCounts[index] += count;
+      return;
+    }
+    index = -index - 1;
+    if (_distinctSize == _distinct.length) {
+      _distinct = Arrays.copyOf(_distinct, 2 * _distinct.length);
+      _distinctCounts = Arrays.copyOf(_distinctCounts, 2 * _distinctCounts.length);
+    }
+    System.arraycopy(_distinct, index, _distinct, index + 1, _distinctSize - index);
+    System.arraycopy(_distinctCounts, index, _distinctCounts, index + 1, _distinctSize - index);
+    _distinct[index] = value;
+    _distinctCounts[index] = count;
+    _distinctSize++;
+
+    if (_distinctSize > _k) {
+      moveDistinct();
+    }
+  }
+
+  /** Moves the distinct values and their counts into the levels, the quantiles are no longer exact. */
+  private void moveDistinct() {
+    double[] values = _distinct;
+    long[] counts = _distinctCounts;
+    int size = _distinctSize;
+    _distinct = null;
+    _distinctCounts = null;
+    _distinctSize = 0;
+    for (int i = 0; i < size; i++) {
+      appendWeighted(values[i], counts[i]);
+    }
+    while (_retained > _maxRetained) {
+      compress();
+    }
+  }
+
+  /** Appends the given value as many times as the given count, as one item per bit of the count. */
+  private void appendWeighted(double value, long count) {
+    for (int h = 0; count != 0; h++) {
+      if ((count & 1) != 0) {
+        append(h, value);
+      }
+      count >>>= 1;
+    }
+  }
+
+  /** Returns the number of items the given level can hold before being compacted. */
+  private int capacity(int level) {
+    int depth = _levels.length - 1 - level;
+    return Math.max(MIN_K, (int) Math.ceil(_k * Math.pow(CAPACITY_RATIO, depth)));
+  }
+
+  private void append(int level, double value) {
+    while (level >= _levels.length) {
+      addLevel();
+    }
+    double[] items = _levels[level];
+    if (_sizes[level] == items.length) {
+      items = Arrays.copyOf(items, Math.max(16, 2 * items.length));
+      _levels[level] = items;
+    }
+    items[_sizes[level]++] = value;
+    _retained++;
+  }
+
+  private void addLevel() {
+    int levels = _levels.length + 1;
+    _levels = Arrays.copyOf(_levels, levels);
+    _levels[levels - 1] = new double[16];
+    _sizes = Arrays.copyOf(_sizes, levels);
+    _odd = Arrays.copyOf(_odd, levels);
+
+    _maxRetained = 0;
+    for (int h = 0; h < levels; h++) {
+      _maxRetained += capacity(h);
+    }
+  }
+
+  /** Compacts the lowest level above its capacity, promoting half of its items to the next level. */
+  private void compress() {
+    for (int h = 0; h < _levels.length; h++) {
+      if (_sizes[h] >= capacity(h)) {
+        double[] items = _levels[h];
+        int size = _sizes[h];
+        Arrays.sort(items, 0, size);
+
+        // An odd item out stays at this level
+        int pairs = size / 2;
+        int first = (size % 2 == 1) ? 1 : 0;
+        int offset = _odd[h] ? 1 : 0;
+        _odd[h] = !_odd[h];
+        for (int i = 0; i < pairs; i++) {
+          append(h + 1, items[first + 2 * i + offset]);
+        }
+        // append() may have replaced the arrays of the levels
+        _sizes[h] = first;
+        _retained -= 2 * pairs;
+        return;
+      }
+    }
+  }
+
+  private void sort() {
+    if (_distinct != null) {
+      long[] cumulated = new long[_distinctSize];
+      long total = 0;
+      for (int i = 0; i < _distinctSize; i++) {
+        total += _distinctCounts[i];
+        cumulated[i] = total;
+      }
+      _sortedValues = Arrays.copyOf(_distinct, _distinctSize);
+      _sortedWeights = cumulated;
+      return;
+    }
+
+    double[] values = new double[_retained];
+    long[] weights = new long[_retained];
+    int n = 0;
+    for (int h = 0; h < _levels.length; h++) {
+      for (int i = 0; i < _sizes[h]; i++) {
+        values[n] = _levels[h][i];
+        weights[n] = 1L << h;
+        n++;
+      }
+    }
+
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+    double[] sortedValues = new double[n];
+    long[] cumulated = new long[n];
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      sortedValues[i] = values[order[i]];
+      total += weights[order[i]];
+      cumulated[i] = total;
+    }
+    _sortedValues = sortedValues;
+    _sortedWeights = cumulated;
+  }
+}
@@ -0,0 +1,400 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the JSON file for cov-import-results as the defects are found by several threads: each thread renders its
+ * defects in its own buffer and keeps them in its own run, only the distinct sources and the counts of defects are
+ * kept until close() writes the report.
+ * <p>
+ * The issues are written in a stable order, whatever the order of the calls to write() and the number of threads: by
+ * name of checker, sources of the measured object, name of the function, line of the function (metric "ml") and then
+ * JSON text. A run is sorted and spilled into a file of a temporary directory when it exceeds the given size, close()
+ * merges the runs into the report and deletes the directory. The memory used doesn't depend on the number of defects.
+ * <p>
+ * The report file is deleted when some defects couldn't be written or when the writer is aborted, so that a partial
+ * report is never imported.
+ */
+public class ReportWriter implements Closeable {
+
+  protected static Logger _logger = LogManager.getLogger(ReportWriter.class);
+
+  private static final String HEADER = "\n" + "{\n" + "\t\"header\" : {\n" + "\t\t\"version\" : 1,\n"
+          + "\t\t\"format\" : \"cov-import-results input\" \n" + "\t},\n" + "\t\n" + "\t\"issues\": [\n";
+
+  /** Default number of chars of the issues of a run before it is spilled. */
+  public static final int RUN_SIZE = 1 << 20;
+
+  private static final MetricRef LINE = MetricRef.of("ml");
+
+  /** Order of the issues in the report. */
+  static final Comparator<Issue> ORDER = Comparator.comparing((Issue issue) -> issue.checker)
+          .thenComparing(issue -> issue.path)
+          .thenComparing(issue -> issue.function)
+          .thenComparingDouble(issue -> issue.line)
+          .thenComparing(issue -> issue.json);
+
+  private final Path _file;
+  private final Writer _writer;
+  private final int _runSize;
+  private volatile boolean _failed = false;
+  private volatile boolean _aborted = false;
+
+  // The runs of the threads, dropped when closed, and the files of the runs already spilled in their directory
+  private final Map<Thread, Run> _runs = new ConcurrentHashMap<>();
+  private Path _spillDirectory = null;
+  private final List<Path> _spills = new ArrayList<>();
+
+  // Merged from the runs when closed
+  private final Set<String> _sources = new TreeSet<>();
+  private int _count = 0;
+  private final Map<String, Integer> _countByChecker = new HashMap<>();
+  private final Map<String, Integer> _countByFile = new HashMap<>();
+
+  /** Creates the report file and writes its header. */
+  public ReportWriter(Path file) throws IOException {
+    this(file, RUN_SIZE);
+  }
+
+  /** Creates the report file, the runs of issues being spilled once they exceed the given number of chars. */
+  public ReportWriter(Path file, int runSize) throws IOException {
+    _file = file;
+    _runSize = runSize;
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    _writer = new OutputStreamWriter(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16),
+            StandardCharsets.UTF_8);
+    _writer.write(HEADER);
+  }
+
+  /**
+   * Renders the given defect into the run of the calling thread, returns false if it has no JSON or it can't be
+   * written. It may be called by several threads, but not during close().
+   */
+  public boolean write(Defect defect) {
+    Run run = _runs.computeIfAbsent(Thread.currentThread(), thread -> new Run());
+    run.count++;
+    run.countByChecker.merge(defect.checker.getName(), 1, Integer::sum);
+    String label = defect.measured.getSourcesLabel();
+    run.countByFile.merge(fileKey(defect.measured, label), 1, Integer::sum);
+    for (String source : label.split(",")) {
+      run.sources.add(source);
+    }
+
+    run.buffer.setLength(0);
+    if (!defect.appendJson(run.buffer)) {
+      _logger.error("Unable to retreive JSON excerpt for defect");
+      return false;
+    }
+    if (_failed)
+      return false;
+
+    Issue issue = new Issue(defect, label, run.buffer.toString());
+    run.issues.add(issue);
+    run.size += issue.size();
+    if (run.size > _runSize) {
+      try {
+        spill(run);
+      } catch (IOException e) {
+        _logger.error("Unable to write the defects of the report {}: {}", _file, e.getMessage());
+        _failed = true;
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Drops the report file when closed, as some defects couldn't be found. */
+  public void abort() {
+    _aborted = true;
+  }
+
+  /**
+   * Writes the issues merged from the runs and the sources of the defects, and completes the report file, unless a
+   * defect failed to be written or the writer was aborted.
+   */
+  @Override
+  public void close() throws IOException {
+    boolean written = false;
+    try {
+      if (_failed)
+        throw new IOException("Some defects couldn't be written into " + _file);
+      if (_aborted)
+        return;
+      for (Run run : _runs.values()) {
+        _count += run.count;
+        run.countByChecker.forEach((key, value) -> _countByChecker.merge(key, value, Integer::sum));
+        run.countByFile.forEach((key, value) -> _countByFile.merge(key, value, Integer::sum));
+        _sources.addAll(run.sources);
+      }
+
+      writeIssues();
+
+      // End of JSON segments for defects and beginning of the array for source files.
+      _writer.write("\n\t],\n" + "\t\"sources\": [\n");
+      boolean first = true;
+      for (String path : _sources) {
+        if (!first)
+          _writer.write(",\n");
+        _writer.write("\t\t{ \"file\": \"");
+        _writer.write(path);
+        _writer.write("\", \"encoding\": \"ASCII\" }");
+        first = false;
+      }
+      _writer.write("\n\t]\n}\n");
+      written = true;
+    } finally {
+      _runs.clear();
+      _writer.close();
+      for (Path spill : _spills) {
+        Files.deleteIfExists(spill);
+      }
+      if (_spillDirectory != null)
+        Files.deleteIfExists(_spillDirectory);
+      if (!written) {
+        Files.deleteIfExists(_file);
+        _logger.debug("Partial report {} deleted", _file);
+      }
+    }
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns the number of defects written, or which failed to be, once the report is closed. */
+  public int getCount() {
+    return _count;
+  }
+
+  /** Returns the number of defects by name of checker, once the report is closed. */
+  public Map<String, Integer> getCountByChecker() {
+    return Collections.unmodifiableMap(_countByChecker);
+  }
+
+  /** Returns the number of defects by kind of measured object and sources, once the report is closed. */
+  public Map<String, Integer> getCountByFile() {
+    return Collections.unmodifiableMap(_countByFile);
+  }
+
+  /** Returns the temporary directory of the spilled runs, null if no run was spilled. */
+  Path getSpillDirectory() {
+    synchronized (_spills) {
+      return _spillDirectory;
+    }
+  }
+
+  private static String fileKey(Measurable measured, String label) {
+    if (measured instanceof FuncMetrics) {
+      return "[FUNCTION]  " + label;
+    } else if (measured instanceof ModuleMetrics) {
+      return "[MODULE]    " + label;
+    } else if (measured instanceof FileMetrics) {
+      return "[FILE]      " + label;
+    }
+    return label;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** A rendered defect with the fields of its order in the report. */
+  static final class Issue {
+    final String checker;
+    final String path;
+    final String function;
+    final double line;
+    final String json;
+
+    Issue(String checker, String path, String function, double line, String json) {
+      this.checker = checker;
+      this.path = path;
+      this.function = function;
+      this.line = line;
+      this.json = json;
+    }
+
+    Issue(Defect defect, String path, String json) {
+      this(defect.checker.getName(), path, nonNull(defect.measured.getTemplateValue("function")),
+              defect.measured.isMetrics(LINE) ? defect.measured.getMetric(LINE) : 0, json);
+    }
+
+    private static String nonNull(String value) {
+      return (value == null) ? "" : value;
+    }
+
+    /** Returns the number of chars kept by this issue. */
+    int size() {
+      return checker.length() + path.length() + function.length() + json.length();
+    }
+  }
+
+  /** The defects written by a thread since its issues were last spilled. */
+  private static final class Run {
+    final StringBuilder buffer = new StringBuilder(8192);
+    final List<Issue> issues = new ArrayList<>();
+    long size = 0;
+
+    final Set<String> sources = new TreeSet<>();
+    int count = 0;
+    final Map<String, Integer> countByChecker = new HashMap<>();
+    final Map<String, Integer> countByFile = new HashMap<>();
+  }
+
+  /** Sorts the issues of the given run into a new file of the spill directory, and empties the run. */
+  private void spill(Run run) throws IOException {
+    run.issues.sort(ORDER);
+    Path spill;
+    synchronized (_spills) {
+      if (_spillDirectory == null)
+        _spillDirectory = Files.createTempDirectory("defects");
+      spill = _spillDirectory.resolve("run" + _spills.size());
+      _spills.add(spill);
+    }
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            Channels.newOutputStream(FileChannel.open(spill, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)),
+            1 << 16))) {
+      out.writeInt(run.issues.size());
+      for (Issue issue : run.issues) {
+        writeString(out, issue.checker);
+        writeString(out, issue.path);
+        writeString(out, issue.function);
+        out.writeDouble(issue.line);
+        writeString(out, issue.json);
+      }
+    }
+    run.issues.clear();
+    run.size = 0;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** The issues of a sorted run, in memory or spilled. */
+  private interface Cursor extends Closeable {
+    /** Returns the next issue of the run, null at its end. */
+    Issue next() throws IOException;
+  }
+
+  private static Cursor cursorOf(List<Issue> issues) {
+    Iterator<Issue> iterator = issues.iterator();
+    return new Cursor() {
+      @Override
+      public Issue next() {
+        return iterator.hasNext() ? iterator.next() : null;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  private static Cursor cursorOf(Path spill) throws IOException {
+    FileChannel channel = FileChannel.open(spill, StandardOpenOption.READ);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+    int count = in.readInt();
+    return new Cursor() {
+      private int _read = 0;
+
+      @Override
+      public Issue next() throws IOException {
+        if (_read == count)
+          return null;
+        _read++;
+        return new Issue(readString(in), readString(in), readString(in), in.readDouble(), readString(in));
+      }
+
+      @Override
+      public void close() throws IOException {
+        in.close();
+      }
+    };
+  }
+
+  /** A run being merged and its next issue. */
+  private static final class Head {
+    final Cursor cursor;
+    Issue issue;
+
+    Head(Cursor cursor, Issue issue) {
+      this.cursor = cursor;
+      this.issue = issue;
+    }
+  }
+
+  /** Writes the issues of all the runs, merged in their order. */
+  private void writeIssues() throws IOException {
+    List<Cursor> cursors = new ArrayList<>();
+    PriorityQueue<Head> heads = new PriorityQueue<>((h1, h2) -> ORDER.compare(h1.issue, h2.issue));
+    try {
+      for (Path spill : _spills) {
+        cursors.add(cursorOf(spill));
+      }
+      for (Run run : _runs.values()) {
+        run.issues.sort(ORDER);
+        cursors.add(cursorOf(run.issues));
+      }
+      for (Cursor cursor : cursors) {
+        Issue issue = cursor.next();
+        if (issue != null)
+          heads.add(new Head(cursor, issue));
+      }
+
+      boolean first = true;
+      while (!heads.isEmpty()) {
+        Head head = heads.poll();
+        if (!first)
+          _writer.write(",\n");
+        _writer.write("\t\t");
+        _writer.write(head.issue.json);
+        first = false;
+
+        head.issue = head.cursor.next();
+        if (head.issue != null)
+          heads.add(head);
+      }
+    } finally {
+      for (Cursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,406 @@
+package com.synopsys.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A condition on the metrics of a measured object, given by the "rule" of a checker, like
+ * "ccm > 20 && (loc > 300 || hf > 5000)" or "ccm_max > 40 || ccm_mean > 12".
+ * <p>
+ * A rule has the operators + - * /, the comparisons > >= < <= == !=, the logical operators && || ! and the
+ * parentheses. The names are the ones of the thresholds: a metric of the functions or a statistic of a composite like
+ * "loc_sum", "ccm_p90" or "count". A rule is parsed once into a tree of lambdas over the handles of its metrics: the
+ * constant expressions are folded and a comparison of a metric with a constant is a single lambda.
+ * <p>
+ * A metric not defined on the measured object is NaN, any comparison with it is false (but "!(ccm > 20)" is true).
+ */
+public final class Rule {
+
+  /** A numeric expression of a rule. */
+  @FunctionalInterface
+  public interface Value {
+    double of(Measurable measured);
+  }
+
+  /** A condition of a rule. */
+  @FunctionalInterface
+  public interface Condition {
+    boolean test(Measurable measured);
+  }
+
+  private final String _text;
+  private final Condition _condition;
+  // The names of the metrics in the order they appear in the rule
+  private final List<String> _metrics;
+
+  private Rule(String text, Condition condition, List<String> metrics) {
+    _text = text;
+    _condition = condition;
+    _metrics = Collections.unmodifiableList(metrics);
+  }
+
+  /**
+   * Parses the given rule, throws an IllegalArgumentException with the position of the error if it's not valid.
+   */
+  public static Rule parse(String text) {
+    if ((text == null) || text.trim().isEmpty())
+      throw new IllegalArgumentException("Empty rule.");
+    Parser parser = new Parser(text);
+    Condition condition = parser.parse();
+    return new Rule(text, condition, new ArrayList<>(parser._metrics));
+  }
+
+  /** Returns true if the given object satisfies the rule. */
+  public boolean test(Measurable measured) {
+    return _condition.test(measured);
+  }
+
+  public String getText() {
+    return _text;
+  }
+
+  /** Returns the distinct names of the metrics used by the rule. */
+  public List<String> getMetrics() {
+    return _metrics;
+  }
+
+  @Override
+  public String toString() {
+    return _text;
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns the value of the metric, NaN if it's not defined on the object. */
+  static double read(Measurable measured, MetricRef ref) {
+    return measured.isMetrics(ref) ? measured.getMetric(ref) : Double.NaN;
+  }
+
+  // A parsed expression, either numeric or a condition
+  private static final class Expr {
+    final int position;
+    final Value value;
+    final Condition condition;
+    // The metric of an expression made of a single name, null otherwise
+    final MetricRef metric;
+    final boolean constant;
+    final double constantValue;
+
+    private Expr(int position, Value value, Condition condition, MetricRef metric, boolean constant,
+                 double constantValue) {
+      this.position = position;
+      this.value = value;
+      this.condition = condition;
+      this.metric = metric;
+      this.constant = constant;
+      this.constantValue = constantValue;
+    }
+
+    static Expr constant(int position, double v) {
+      return new Expr(position, measured -> v, null, null, true, v);
+    }
+
+    static Expr metric(int position, MetricRef ref) {
+      return new Expr(position, measured -> read(measured, ref), null, ref, false, Double.NaN);
+    }
+
+    static Expr value(int position, Value value) {
+      return new Expr(position, value, null, null, false, Double.NaN);
+    }
+
+    static Expr condition(int position, Condition condition) {
+      return new Expr(position, null, condition, null, false, Double.NaN);
+    }
+  }
+
+  /** Recursive descent parser, from the lowest precedence (||) to the highest (names, numbers and parentheses). */
+  private static final class Parser {
+    private final String _text;
+    private int _pos = 0;
+    private final Set<String> _metrics = new LinkedHashSet<>();
+
+    Parser(String text) {
+      _text = text;
+    }
+
+    Condition parse() {
+      Expr result = parseOr();
+      skipSpaces();
+      if (_pos < _text.length())
+        throw error("Unexpected '" + _text.charAt(_pos) + "'", _pos);
+      return condition(result);
+    }
+
+    private Expr parseOr() {
+      Expr left = parseAnd();
+      while (match("||")) {
+        Condition a = condition(left);
+        Condition b = condition(parseAnd());
+        left = Expr.condition(left.position, measured -> a.test(measured) || b.test(measured));
+      }
+      return left;
+    }
+
+    private Expr parseAnd() {
+      Expr left = parseNot();
+      while (match("&&")) {
+        Condition a = condition(left);
+        Condition b = condition(parseNot());
+        left = Expr.condition(left.position, measured -> a.test(measured) && b.test(measured));
+      }
+      return left;
+    }
+
+    private Expr parseNot() {
+      skipSpaces();
+      int position = _pos;
+      if (lookingAt("!") && !lookingAt("!=")) {
+        _pos++;
+        Condition a = condition(parseNot());
+        return Expr.condition(position, measured -> !a.test(measured));
+      }
+      return parseComparison();
+    }
+
+    private Expr parseComparison() {
+      Expr left = parseSum();
+      for (String op : new String[] { ">=", "<=", "==", "!=", ">", "<" }) {
+        if (match(op)) {
+          Expr right = parseSum();
+          return Expr.condition(left.position, compare(op, value(left), value(right)));
+        }
+      }
+      return left;
+    }
+
+    private Expr parseSum() {
+      Expr left = parseProduct();
+      while (true) {
+        if (match("+")) {
+          left = arithmetic('+', value(left), value(parseProduct()));
+        } else if (match("-")) {
+          left = arithmetic('-', value(left), value(parseProduct()));
+        } else {
+          return left;
+        }
+      }
+    }
+
+    private Expr parseProduct() {
+      Expr left = parseUnary();
+      while (true) {
+        if (match("*")) {
+          left = arithmetic('*', value(left), value(parseUnary()));
+        } else if (match("/")) {
+          left = arithmetic('/', value(left), value(parseUnary()));
+        } else {
+          return left;
+        }
+      }
+    }
+
+    private Expr parseUnary() {
+      skipSpaces();
+      int position = _pos;
+      if (match("-")) {
+        Expr a = value(parseUnary());
+        if (a.constant)
+          return Expr.constant(position, -a.constantValue);
+        Value v = a.value;
+        return Expr.value(position, measured -> -v.of(measured));
+      }
+      return parsePrimary();
+    }
+
+    private Expr parsePrimary() {
+      skipSpaces();
+      int start = _pos;
+      if (start >= _text.length())
+        throw error("Unexpected end of rule", start);
+
+      char c = _text.charAt(start);
+      if (c == '(') {
+        _pos++;
+        Expr result = parseOr();
+        if (!match(")"))
+          throw error("Missing ')'", _pos);
+        return result;
+      }
+
+      if (Character.isDigit(c) || (c == '.')) {
+        while ((_pos < _text.length()) && (Character.isDigit(_text.charAt(_pos)) || (_text.charAt(_pos) == '.')))
+          _pos++;
+        if ((_pos < _text.length()) && ((_text.charAt(_pos) == 'e') || (_text.charAt(_pos) == 'E'))) {
+          _pos++;
+          if ((_pos < _text.length()) && ((_text.charAt(_pos) == '+') || (_text.charAt(_pos) == '-')))
+            _pos++;
+          while ((_pos < _text.length()) && Character.isDigit(_text.charAt(_pos)))
+            _pos++;
+        }
+        try {
+          return Expr.constant(start, Double.parseDouble(_text.substring(start, _pos)));
+        } catch (NumberFormatException e) {
+          throw error("Invalid number '" + _text.substring(start, _pos) + "'", start);
+        }
+      }
+
+      if (Character.isLetter(c) || (c == '_')) {
+        while ((_pos < _text.length()) && isNamePart(_text.charAt(_pos)))
+          _pos++;
+        String name = _text.substring(start, _pos);
+        _metrics.add(name);
+        return Expr.metric(start, MetricRef.of(name));
+      }
+
+      throw error("Unexpected '" + c + "'", start);
+    }
+
+    //
+    // ****************************************************************************************************************
+    //
+
+    private Expr arithmetic(char op, Expr left, Expr right) {
+      if (left.constant && right.constant) {
+        double a = left.constantValue;
+        double b = right.constantValue;
+        switch (op) {
+        case '+':
+          return Expr.constant(left.position, a + b);
+        case '-':
+          return Expr.constant(left.position, a - b);
+        case '*':
+          return Expr.constant(left.position, a * b);
+        default:
+          return Expr.constant(left.position, a / b);
+        }
+      }
+
+      Value a = left.value;
+      Value b = right.value;
+      switch (op) {
+      case '+':
+        return Expr.value(left.position, measured -> a.of(measured) + b.of(measured));
+      case '-':
+        return Expr.value(left.position, measured -> a.of(measured) - b.of(measured));
+      case '*':
+        return Expr.value(left.position, measured -> a.of(measured) * b.of(measured));
+      default:
+        return Expr.value(left.position, measured -> a.of(measured) / b.of(measured));
+      }
+    }
+
+    private Condition compare(String op, Expr left, Expr right) {
+      // The usual case of a metric and a threshold, without the lambda of each side
+      if ((left.metric != null) && right.constant) {
+        MetricRef ref = left.metric;
+        double c = right.constantValue;
+        switch (op) {
+        case ">":
+          return measured -> read(measured, ref) > c;
+        case ">=":
+          return measured -> read(measured, ref) >= c;
+        case "<":
+          return measured -> read(measured, ref) < c;
+        case "<=":
+          return measured -> read(measured, ref) <= c;
+        case "==":
+          return measured -> read(measured, ref) == c;
+        default:
+          return measured -> {
+            double v = read(measured, ref);
+            return (v < c) || (v > c);
+          };
+        }
+      }
+      if (left.constant && (right.metric != null)) {
+        return compare(swap(op), right, left);
+      }
+
+      Value a = left.value;
+      Value b = right.value;
+      switch (op) {
+      case ">":
+        return measured -> a.of(measured) > b.of(measured);
+      case ">=":
+        return measured -> a.of(measured) >= b.of(measured);
+      case "<":
+        return measured -> a.of(measured) < b.of(measured);
+      case "<=":
+        return measured -> a.of(measured) <= b.of(measured);
+      case "==":
+        return measured -> a.of(measured) == b.of(measured);
+      default:
+        // Not (a < b || a > b) to be false when a value is NaN, like the other comparisons
+        return measured -> {
+          double u = a.of(measured);
+          double v = b.of(measured);
+          return (u < v) || (u > v);
+        };
+      }
+    }
+
+    /** Returns the comparison with the operands swapped, "<" for ">". */
+    private static String swap(String op) {
+      switch (op) {
+      case ">":
+        return "<";
+      case ">=":
+        return "<=";
+      case "<":
+        return ">";
+      case "<=":
+        return ">=";
+      default:
+        return op;
+      }
+    }
+
+    private Condition condition(Expr expr) {
+      if (expr.condition == null)
+        throw error("A condition is expected", expr.position);
+      return expr.condition;
+    }
+
+    private Expr value(Expr expr) {
+      if (expr.value == null)
+        throw error("A value is expected", expr.position);
+      return expr;
+    }
+
+    //
+    // ****************************************************************************************************************
+    //
+
+    private static boolean isNamePart(char c) {
+      return Character.isLetterOrDigit(c) || (c == '_');
+    }
+
+    private void skipSpaces() {
+      while ((_pos < _text.length()) && Character.isWhitespace(_text.charAt(_pos)))
+        _pos++;
+    }
+
+    private boolean lookingAt(String token) {
+      return _text.startsWith(token, _pos);
+    }
+
+    /** Skips the given token and the spaces before it, returns false if it's not the next one. */
+    private boolean match(String token) {
+      skipSpaces();
+      if (lookingAt(token)) {
+        _pos += token.length();
+        return true;
+      }
+      return false;
+    }
+
+    private IllegalArgumentException error(String message, int position) {
+      return new IllegalArgumentException(message + " at position " + position + " of the rule '" + _text + "'");
+    }
+  }
+}
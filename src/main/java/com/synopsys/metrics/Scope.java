@@ -0,0 +1,50 @@
+package com.synopsys.metrics;
+
+/**
+ * The kinds of measurable objects, given by their name, to which the thresholds of the checkers apply.
+ * <p>
+ * The scope of a threshold is a regular expression matched against the name of the measured object. It's matched once
+ * per kind when the checker is compiled (see Checker.compile()), the objects with another name are matched by the
+ * regular expression each time.
+ */
+public enum Scope {
+
+  FUNCTION("Function Metrics"),
+  FILE("File Metrics"),
+  MODULE("Module Metrics"),
+  CLASS(ClassMetrics.NAME),
+  DIRECTORY(DirectoryMetrics.NAME),
+  /** Any other name. */
+  OTHER(null);
+
+  private final String _name;
+
+  Scope(String name) {
+    _name = name;
+  }
+
+  /** Returns the name of the measurable objects of this scope, null for OTHER. */
+  public String getName() {
+    return _name;
+  }
+
+  /** Returns the scope of the measurable objects with the given name. */
+  public static Scope of(String name) {
+    if (name == null)
+      return OTHER;
+    switch (name) {
+    case "Function Metrics":
+      return FUNCTION;
+    case "File Metrics":
+      return FILE;
+    case "Module Metrics":
+      return MODULE;
+    case ClassMetrics.NAME:
+      return CLASS;
+    case DirectoryMetrics.NAME:
+      return DIRECTORY;
+    default:
+      return OTHER;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.synopsys.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Set of the distinct source files of a composite, as the ids of their pathnames in FuncMetrics.getPaths().
+ * <p>
+ * The ids are kept sorted in an int array, so a file composite costs a single int and adding the functions of a file
+ * already in the set is a binary search without any String. The consecutive functions of a stream are usually in the
+ * same file, the last id added is checked first. A set is not thread safe.
+ */
+public class SourceSet {
+
+  private int[] _ids = new int[4];
+  private int _size = 0;
+
+  // Index of the last id added or found
+  private int _last = -1;
+
+  /** Adds the given path id, returns true if it was not in the set yet. */
+  public boolean add(int id) {
+    if ((_last >= 0) && (_ids[_last] == id))
+      return false;
+
+    int index = Arrays.binarySearch(_ids, 0, _size, id);
+    if (index >= 0) {
+      _last = index;
+      return false;
+    }
+
+    index = -index - 1;
+    if (_size == _ids.length) {
+      _ids = Arrays.copyOf(_ids, 2 * _ids.length);
+    }
+    System.arraycopy(_ids, index, _ids, index + 1, _size - index);
+    _ids[index] = id;
+    _size++;
+    _last = index;
+    return true;
+  }
+
+  /** Adds all the ids of the other set, which is left unchanged. */
+  public void addAll(SourceSet other) {
+    if (other._size == 0)
+      return;
+
+    // Merge of the two sorted arrays
+    int[] ids = new int[_size + other._size];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while ((i < _size) && (j < other._size)) {
+      int a = _ids[i];
+      int b = other._ids[j];
+      if (a <= b) {
+        i++;
+        if (a == b)
+          j++;
+        ids[size++] = a;
+      } else {
+        j++;
+        ids[size++] = b;
+      }
+    }
+    while (i < _size) {
+      ids[size++] = _ids[i++];
+    }
+    while (j < other._size) {
+      ids[size++] = other._ids[j++];
+    }
+    _ids = ids;
+    _size = size;
+    _last = -1;
+  }
+
+  public boolean contains(int id) {
+    return Arrays.binarySearch(_ids, 0, _size, id) >= 0;
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  /** Returns the pathnames of the set sorted by name. */
+  public String[] toSortedNames() {
+    PathTable paths = FuncMetrics.getPaths();
+    String[] result = new String[_size];
+    for (int i = 0; i < _size; i++) {
+      result[i] = paths.toString(_ids[i]);
+    }
+    Arrays.sort(result);
+    return result;
+  }
+}
@@ -27,9 +27,24 @@ public class StatData {
 			count = 1;
 		} else {
 			min = Double.min(min, v);
-			max = Double.max(min, v);
+			max = Double.max(max, v);
 			sum += v;
 			count++;
 		}
 	}
+
+	/** Adds the values summarized by the other statistics, as if they were added one by one. */
+	public void merge(StatData other) {
+		if (other.count == 0)
+			return;
+		if (count == 0) {
+			min = other.min;
+			max = other.max;
+		} else {
+			min = Double.min(min, other.min);
+			max = Double.max(max, other.max);
+		}
+		sum += other.sum;
+		count += other.count;
+	}
 }
\ No newline at end of file
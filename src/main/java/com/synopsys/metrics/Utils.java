@@ -79,6 +79,16 @@ public class Utils {
         return result;
     }
 
+    public static boolean getFieldAsBoolean(JsonNode node, String tag, boolean defaultValue, Consumer<Boolean> setter) {
+        boolean result = defaultValue;
+        if ((node != null) && node.hasNonNull(tag) && node.get(tag).isBoolean()) {
+            result = node.get(tag).asBoolean(defaultValue);
+            if (setter != null)
+                setter.accept(result);
+        }
+        return result;
+    }
+
     static public JsonNode getJsonNodeFromFile(String pathname) {
         try {
             File file = new File(pathname);
@@ -4,7 +4,6 @@ import com.synopsys.metrics.*;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Stream;
 
 public class ModuleHasTooManyFiles extends Checker {
 
@@ -21,8 +20,8 @@ public class ModuleHasTooManyFiles extends Checker {
 
 		fileCountThreshold = new Metrics();
 		fileCountThreshold.scope = "Module Metrics";
-		fileCountThreshold.metric = "file_count";
-		fileCountThreshold.name = "file_count";
+		fileCountThreshold.metric = CompositeMetrics.tagFILE_COUNT;
+		fileCountThreshold.name = CompositeMetrics.tagFILE_COUNT;
 		fileCountThreshold.value = 20;
 
 		_allMetrics.add(fileCountThreshold);
@@ -44,19 +43,10 @@ public class ModuleHasTooManyFiles extends Checker {
 		
 		Defect result = null;
 
-		double min_loc = 3;
-		double min_ccm = 1;
-
 		if (measured instanceof ModuleMetrics) {
 			ModuleMetrics cm = (ModuleMetrics) measured;
-			long count = cm.stream()//
-					.filter(m -> m.getMetric(Measurable.tagLOC) > min_loc)//
-					.filter(m -> m.getMetric(Measurable.tagCCM) > min_ccm)//
-					.flatMap(Measurable::getAllSources)//
-					.flatMap(strList -> Stream.of(strList.split(",",200)))
-					.sorted()//
-					.distinct() //
-					.count();
+			// Only the functions above CompositeMetrics.MIN_SIGNIFICANT_LOC and MIN_SIGNIFICANT_CCM are counted
+			long count = cm.getSignificantSourceCount();
 			
 			if (count > fileCountThreshold.value) {
 				result = new Defect(this, measured);
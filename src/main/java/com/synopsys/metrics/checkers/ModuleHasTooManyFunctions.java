@@ -43,15 +43,10 @@ public class ModuleHasTooManyFunctions extends Checker {
 
 		Defect result = null;
 
-		double min_loc = 3;
-		double min_ccm = 1;
-
 		if (measured instanceof ModuleMetrics) {
 			ModuleMetrics cm = (ModuleMetrics) measured;
-			long count = cm.stream()//
-					.filter(m -> m.getMetric(Measurable.tagLOC) > min_loc)//
-					.filter(m -> m.getMetric(Measurable.tagCCM) > min_ccm)//
-					.count();
+			// Only the functions above CompositeMetrics.MIN_SIGNIFICANT_LOC and MIN_SIGNIFICANT_CCM are counted
+			long count = cm.getSignificantCount();
 
 			if (count > funcCountThreshold.value) {
 				result = new Defect(this, measured);
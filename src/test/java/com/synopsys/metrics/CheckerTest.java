@@ -2,10 +2,16 @@ package com.synopsys.metrics;
 
 import org.junit.jupiter.api.*;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class CheckerTest {
 
@@ -64,4 +70,156 @@ class CheckerTest {
   @Test
   void save() {
   }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  private static Metrics threshold(String metric, double value, String scope) {
+    Metrics result = new Metrics();
+    result.name = metric;
+    result.metric = metric;
+    result.value = value;
+    result.scope = scope;
+    return result;
+  }
+
+  /** The violations found by Checker.check() before the thresholds were compiled, null if there's no defect. */
+  private static List<String> legacyViolations(Checker checker, Measurable measured) {
+    List<String> result = checker.metrics()
+            .filter(metric -> metric.scope.isEmpty() || (measured.getName().matches(metric.scope)))
+            .filter(metric -> measured.isMetrics(metric.metric) && (measured.getMetric(metric.metric) > metric.value))
+            .map(metric -> metric.metric)
+            .collect(Collectors.toList());
+    return (result.size() >= checker._allMetrics.size()) ? result : null;
+  }
+
+  @Test
+  void compiled() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    MetricsAggregator aggregates = functions.parallelStream().collect(MetricsAggregator.collector());
+    List<Measurable> measured = new ArrayList<>(functions);
+    measured.addAll(aggregates.getFiles().values());
+    measured.addAll(aggregates.getModules().values());
+    CompositeMetrics other = new CompositeMetrics("Custom Metrics");
+    functions.forEach(other::accumulate);
+    measured.add(other);
+
+    List<Checker> checkers = new ArrayList<>();
+    String[] scopes = { "", "Function Metrics", "(File|Module) Metrics", "Custom.*", "Module.*" };
+    for (String scope : scopes) {
+      Checker checker = new Checker();
+      checker.setName("METRICS.TEST");
+      checker._allMetrics.add(threshold(Measurable.tagLOC, 20, scope));
+      checker._allMetrics.add(threshold(Measurable.tagCCM, 5, ""));
+      checkers.add(checker);
+    }
+    Checker composite = new Checker();
+    composite.setName("METRICS.TEST_COMPOSITE");
+    composite._allMetrics.add(threshold("ccm_max", 10, "(File|Module) Metrics"));
+    composite._allMetrics.add(threshold("count", 10, "Module Metrics"));
+    checkers.add(composite);
+
+    int defects = 0;
+    for (Checker checker : checkers) {
+      checker.compile();
+      for (Measurable item : measured) {
+        Defect defect = checker.check(item);
+        List<String> expected = legacyViolations(checker, item);
+        assertEquals(expected != null, defect != null, checker.metrics().map(m -> m.scope).collect(Collectors.toList())
+                + " on " + item.getName());
+        if (defect != null) {
+          assertEquals(expected, defect.violations, "Violations on " + item.getName());
+          defects++;
+        }
+      }
+    }
+    assertTrue(defects > 0, "Some defects are expected.");
+
+    // The checker is compiled again when a scope is changed after it was enabled
+    Checker checker = checkers.get(1);
+    FuncMetrics function = functions.stream().filter(f -> checker.check(f) != null).findFirst().orElse(null);
+    assertNotNull(function, "A function with a defect is expected.");
+    checker._allMetrics.get(0).scope = "File Metrics";
+    assertNull(checker.check(function), "Scope changed to the files.");
+    checker._allMetrics.get(0).scope = "";
+    assertNotNull(checker.check(function), "Scope changed to all the objects.");
+    checker._allMetrics.add(threshold(Measurable.tagLOC, Double.MAX_VALUE, ""));
+    assertNull(checker.check(function), "New threshold.");
+  }
+
+  @Test
+  void dispatch() {
+    Config config = new Config();
+    config.setConfigDir("./config");
+    config.init();
+    assertTrue(config.enableAllCheckers(), "All the checkers are enabled.");
+
+    for (Scope scope : Scope.values()) {
+      for (Checker checker : config.enabledCheckers) {
+        boolean expected = (scope == Scope.OTHER) || checker.metrics()
+                .allMatch(m -> m.scope.isEmpty() || scope.getName().matches(m.scope));
+        assertEquals(expected, Arrays.asList(config.getCheckers(scope)).contains(checker),
+                checker.getName() + " for " + scope);
+      }
+    }
+    assertTrue(config.getCheckers(Scope.FUNCTION).length < config.enabledCheckers.size(),
+            "The composite checkers don't apply to the functions.");
+
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    MetricsAggregator aggregates = functions.parallelStream().collect(MetricsAggregator.collector());
+    List<Measurable> measured = new ArrayList<>(functions);
+    measured.addAll(aggregates.getFiles().values());
+    measured.addAll(aggregates.getModules().values());
+    int defects = 0;
+    for (Measurable item : measured) {
+      // All the enabled checkers, as before the buckets
+      List<Defect> expected = config.enabledCheckers.stream()
+              .filter(checker -> checker.canCheck(item))
+              .map(checker -> checker.check(item))
+              .filter(Objects::nonNull)
+              .collect(Collectors.toList());
+      List<Defect> actual = config.findDefects(item);
+      assertEquals(expected.size(), actual.size(), "Defects on " + item.getName());
+      for (int i = 0; i < expected.size(); i++) {
+        assertSame(expected.get(i).checker, actual.get(i).checker, "Checker of the defect on " + item.getName());
+      }
+      defects += actual.size();
+    }
+    assertTrue(defects > 0, "Some defects are expected.");
+  }
+
+  @Test
+  void allocations() {
+    Config config = new Config();
+    config.setConfigDir("./config");
+    config.init();
+    assertTrue(config.enableAllCheckers(), "All the checkers are enabled.");
+    assertFalse(config.enabledCheckers.isEmpty(), "Some checkers are expected.");
+
+    List<FuncMetrics> functions;
+    try (Stream<FuncMetrics> parsed = new Main().getParsedStream(ReaderTest.MBEDTLS_METRICS)) {
+      functions = parsed.filter(function -> config.findDefects(function).isEmpty()).collect(Collectors.toList());
+    }
+    assertFalse(functions.isEmpty(), "Some functions without defects are expected.");
+    for (FuncMetrics function : functions) {
+      config.findDefects(function);
+    }
+
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "Allocated bytes not available.");
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    long thread = Thread.currentThread().getId();
+    int iterations = 20;
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < iterations; i++) {
+      for (FuncMetrics function : functions) {
+        config.findDefects(function);
+      }
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+    long checks = (long) iterations * functions.size() * config.enabledCheckers.size();
+    System.out.println(checks + " checks without defect, " + allocated + " bytes allocated");
+    assertTrue(allocated / checks < 1, "A check without defect should not allocate, found " + allocated + " bytes");
+  }
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+package com.synopsys.metrics;
+
+import com.synopsys.sipm.model.Parameter;
+import com.synopsys.sipm.model.ParameterSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Compiled defect templates")
+class DefectTemplateTest {
+  protected static Logger logger = LogManager.getLogger(DefectTemplateTest.class);
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** The rendering of Defect.getJson() before the templates were compiled, the reference of the tests. */
+  private static String legacyJson(Defect defect) {
+    Checker checker = defect.checker;
+    Measurable measured = defect.measured;
+    String result = checker.getJsonDefectTemplate();
+    String eventTemplate = checker.getJsonDefectEventTemplate();
+
+    measured.publishMetrics();
+    result = measured.process(result);
+
+    ParameterSet set = new ParameterSet();
+    checker.metrics().forEach(
+            metrics -> set.add(metrics.name + ".threshold", Double.toString(metrics.value), Parameter.READ_WRITE));
+    checker.metrics().forEach(
+            metrics -> set.add(metrics.metric + ".threshold", Double.toString(metrics.value), Parameter.READ_WRITE));
+    checker.metrics().forEach(
+            metrics -> set.add(metrics.name, Double.toString(measured.getMetric(metrics.getRef())),
+                    Parameter.READ_WRITE));
+    checker.metrics().forEach(
+            metrics -> set.add(metrics.metric, Double.toString(measured.getMetric(metrics.getRef())),
+                    Parameter.READ_WRITE));
+    if (checker.getRule() != null) {
+      checker.getRule().getMetrics().stream()
+              .filter(name -> measured.isMetrics(MetricRef.of(name)))
+              .forEach(name -> set.add(name, Double.toString(measured.getMetric(MetricRef.of(name))),
+                      Parameter.READ_WRITE));
+    }
+    result = set.process(result);
+
+    if ((eventTemplate != null) && (!eventTemplate.isEmpty())) {
+      StringBuilder eventBuilder = new StringBuilder();
+      Stream.of(measured.getSourcesLabel().split(",")).forEach(source -> {
+        String strEvent = set.process(measured.process(eventTemplate));
+        if (eventBuilder.length() != 0)
+          eventBuilder.append(",\n");
+        eventBuilder.append(strEvent);
+      });
+      result = result.replace("EVENTS", eventBuilder.toString());
+    } else {
+      result = result.replace("EVENTS", "");
+    }
+    return result;
+  }
+
+  private static List<Defect> defects(Config config) {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    MetricsAggregator aggregates = functions.parallelStream().collect(MetricsAggregator.collector(true));
+    List<Measurable> measured = new ArrayList<>(functions);
+    measured.addAll(aggregates.getFiles().values());
+    measured.addAll(aggregates.getModules().values());
+    measured.addAll(aggregates.getClasses().values());
+    return measured.stream().flatMap(item -> config.findDefects(item).stream()).collect(Collectors.toList());
+  }
+
+  private static Config config() {
+    Config config = new Config();
+    config.setConfigDir("./config");
+    config.init();
+    assertTrue(config.enableAllCheckers(), "All the checkers are enabled.");
+    return config;
+  }
+
+  @Test
+  @DisplayName("Same JSON as the parameter sets")
+  void legacy() {
+    Config config = config();
+    List<Defect> defects = defects(config);
+    assertFalse(defects.isEmpty(), "Some defects are expected.");
+    for (Defect defect : defects) {
+      assertEquals(legacyJson(defect), defect.getJson(), "JSON of " + defect);
+    }
+  }
+
+  @Test
+  @DisplayName("Slots of a template")
+  void slots() {
+    Checker checker = new Checker();
+    checker.setName("METRICS.TEST_TEMPLATE");
+    Metrics threshold = new Metrics();
+    threshold.scope = "";
+    threshold.name = "complexity";
+    threshold.metric = Measurable.tagCCM;
+    threshold.value = 10;
+    checker._allMetrics.add(threshold);
+    checker.setRule(Rule.parse("loc > 30 || not_a_metric > 2"));
+    checker.setJsonDefectTemplate("{ \"f\": \"${function}\", \"ccm\": ${ccm}/${complexity.threshold}/${ccm.threshold},"
+            + " \"loc\": ${loc}, \"ml\": ${metrics.ml}, \"x\": \"${not_a_metric}${unknown}${metrics.unknown}\","
+            + " \"file\": \"${file}\", \"open\": \"${\", \"events\": [EVENTS], \"again\": [EVENTS] }");
+    checker.setJsonDefectEventTemplate("{ \"file\": \"${file}\", \"line\": ${metrics.ml}, \"tag\": \"EVENTS\" }");
+
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    List<CompositeMetrics> modules = new ArrayList<>(
+            functions.parallelStream().collect(MetricsAggregator.collector()).getModules().values());
+    List<Measurable> measured = new ArrayList<>(functions.subList(0, 100));
+    measured.addAll(modules);
+    for (Measurable item : measured) {
+      Defect defect = new Defect(checker, item);
+      assertEquals(legacyJson(defect), defect.getJson(), "JSON on " + item.getName());
+    }
+
+    // Compiled again when the threshold changes, the value is read when rendered
+    threshold.value = 12;
+    Defect defect = new Defect(checker, functions.get(0));
+    assertTrue(defect.getJson().contains("/12.0/12.0"), defect.getJson());
+    checker.setJsonDefectEventTemplate(null);
+    assertEquals(legacyJson(defect), defect.getJson(), "Without event template");
+    checker.setJsonDefectTemplate(null);
+    assertNull(defect.getJson(), "Without template");
+  }
+
+  @Test
+  @DisplayName("Number of the events")
+  void sources() {
+    for (String label : new String[] { "", "a", "a,b", "a,b,", ",a", "a,,b", ",", ",,", "a,b,,c,," }) {
+      assertEquals(label.split(",").length, DefectTemplate.countSources(label), "'" + label + "'");
+    }
+  }
+
+  @Test
+  @DisplayName("Cost of the rendering")
+  void benchmark() {
+    Config config = config();
+    List<Defect> defects = defects(config);
+    int iterations = 20;
+
+    // Warm up
+    StringBuilder buffer = new StringBuilder();
+    for (Defect defect : defects) {
+      legacyJson(defect);
+      buffer.setLength(0);
+      defect.appendJson(buffer);
+    }
+
+    long legacyLength = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (Defect defect : defects) {
+        legacyLength += legacyJson(defect).length();
+      }
+    }
+    long legacyTime = System.nanoTime() - start;
+
+    long length = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (Defect defect : defects) {
+        buffer.setLength(0);
+        defect.appendJson(buffer);
+        length += buffer.length();
+      }
+    }
+    long time = System.nanoTime() - start;
+
+    long count = (long) iterations * defects.size();
+    logger.info("{} defects rendered: {} ns each with the parameter sets, {} ns each compiled ({} MB/s)", count,
+            legacyTime / count, time / count, String.format("%.0f", length * 1000.0 / time));
+    assertEquals(legacyLength, length, "Same length");
+  }
+}
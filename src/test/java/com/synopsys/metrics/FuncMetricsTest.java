@@ -0,0 +1,134 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Function metrics")
+class FuncMetricsTest {
+  protected static Logger logger = LogManager.getLogger(FuncMetricsTest.class);
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Names derived from the pathname and the names element")
+  void names() {
+    FuncMetrics fm = new FuncMetrics();
+    fm.setElement(FuncMetrics.tagFILE, "/src/org/apache/Foo.java");
+    fm.setElement(FuncMetrics.tagNAMES, "fn:org.apache.Foo$Bar.run();cn:org.apache.Foo$Bar;");
+    fm.setElement(FuncMetrics.tagMETRICS, "lc:3;cc:1");
+    fm.autoset();
+
+    assertEquals("/src/org/apache", fm.getDirName(), "Directory name");
+    assertEquals("Foo.java", fm.getFileName(), "File name");
+    assertEquals("Foo.java", fm.getClassName(), "Class name before parsing");
+    assertEquals("/src/org/apache", fm.getModuleName(), "Module name before parsing");
+
+    assertTrue(fm.parse(), "Function metrics should parse");
+    assertEquals("org.apache.Foo$Bar.run()", fm.getFunctionName(), "Function name");
+    assertEquals("org.apache.Foo", fm.getClassName(), "Class name");
+    assertEquals("/src/org/apache", fm.getModuleName(), "Module name");
+    assertEquals("", fm.getElement(FuncMetrics.tagMETRICS), "Raw metrics must be released");
+
+    FuncMetrics other = new FuncMetrics();
+    other.setElement(FuncMetrics.tagFILE, new String("/src/org/apache/Foo.java"));
+    assertSame(fm.getPathname(), other.getPathname(), "Pathnames must be shared");
+
+    fm.publishMetrics();
+    assertEquals("Foo.java", fm.process("${fname}"), "Template parameter");
+    assertEquals("3.0", fm.process("${metrics.loc}"), "Template metric");
+  }
+
+  @Test
+  @DisplayName("Only the metrics of the projection are parsed")
+  void projection() {
+    Checker checker = new Checker();
+    Metrics threshold = new Metrics();
+    threshold.scope = "File Metrics";
+    threshold.name = "loc_sum";
+    threshold.metric = "loc_sum";
+    threshold.value = 500;
+    checker._allMetrics.add(threshold);
+    checker.setJsonDefectTemplate("{ \"line\": ${metrics.ml}, \"file\": \"${file}\", \"max\": ${loc.threshold} }");
+
+    MetricsProjection projection = MetricsProjection.of(Collections.singletonList(checker));
+    assertTrue(projection.contains("ml"), "Metric referenced by the template");
+    assertTrue(projection.contains(Measurable.tagLOC), "Metric of the threshold");
+    assertTrue(projection.contains(Measurable.tagCCM), "CCM is always needed");
+    assertFalse(projection.contains("hf"), "Metric not referenced");
+    assertFalse(projection.needsElement(FuncMetrics.tagCOVERAGE), "Coverage not referenced");
+
+    FuncMetrics fm = new FuncMetrics();
+    fm.setElement(FuncMetrics.tagFILE, "/src/org/apache/Foo.java");
+    fm.setElement(FuncMetrics.tagMETRICS, "lc:3;cc:1;hf:2;ml:150;xx:2.5");
+    fm.setElement(FuncMetrics.tagCOVERAGE, "cu:1;uu:2;cf:3;uf:4");
+    assertTrue(fm.parse(projection), "Function metrics should parse");
+
+    assertEquals(3.0, fm.getMetric(Measurable.tagLOC), "Bad value for loc");
+    assertEquals(150.0, fm.getMetric("ml"), "Bad value for ml");
+    assertFalse(fm.isMetrics("hf"), "hf must be skipped");
+    assertFalse(fm.isMetrics("xx"), "Unknown key must be skipped");
+    assertFalse(fm.isMetrics("cu"), "Coverage must be skipped");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Footprint of the parsed Tomcat functions")
+  void footprint() throws Exception {
+    // Only names and ids are kept by each function, the metrics are in the metric store
+    for (Class<?> type = FuncMetrics.class; type != Measurable.class.getSuperclass(); type = type.getSuperclass()) {
+      for (Field field : type.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers()))
+          continue;
+        Class<?> fieldType = field.getType();
+        assertFalse(Logger.class.isAssignableFrom(fieldType), "Logger of each function: " + field);
+        assertFalse(Map.class.isAssignableFrom(fieldType) || Collection.class.isAssignableFrom(fieldType)
+                || fieldType.isArray(), "Collection of each function: " + field);
+      }
+    }
+
+    int count = 0;
+    try (FuncMetricsIter iter = new FuncMetricsIter(ReaderTest.TOMCAT_METRICS)) {
+      while (iter.hasNext()) {
+        FuncMetrics fm = iter.next();
+        if ((fm == null) || !fm.parse())
+          continue;
+        count++;
+        for (String tag : new String[] { FuncMetrics.tagMETRICS, FuncMetrics.tagNAMES, FuncMetrics.tagCOVERAGE,
+                FuncMetrics.tagIMPACT }) {
+          assertEquals("", fm.getElement(tag), "Raw " + tag + " kept once parsed");
+        }
+        assertFalse(fm.getPathname().isEmpty(), "Pathname kept as an id");
+        fm.release();
+      }
+    }
+    assertTrue(count > 0, "No function metrics found in " + ReaderTest.TOMCAT_METRICS);
+  }
+
+}
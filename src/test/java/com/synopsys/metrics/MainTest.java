@@ -6,9 +6,20 @@ import org.apache.logging.log4j.core.config.ConfigurationSource;
 import org.apache.logging.log4j.core.config.Configurator;
 import org.junit.jupiter.api.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MainTest {
 
@@ -80,4 +91,113 @@ class MainTest {
 
   }
 
-}
\ No newline at end of file
+  /** Returns the sorted JSON of the given defects. */
+  static List<String> jsonOf(List<Defect> defects) {
+    return defects.stream().map(Defect::getJson).sorted().collect(Collectors.toList());
+  }
+
+  @Test
+  void streaming() throws IOException {
+    File report = File.createTempFile("defects", ".json");
+    report.deleteOnExit();
+
+    Main main = new Main();
+    main.init(("--all --metrics " + ReaderTest.MBEDTLS_METRICS + " -o " + report.getPath()).split(" "));
+
+    List<String> expected = jsonOf(main.checkAll(ReaderTest.MBEDTLS_METRICS));
+    assertFalse(expected.isEmpty(), "Defects expected on " + ReaderTest.MBEDTLS_METRICS);
+
+    List<String> actual = jsonOf(main.checkStreaming(ReaderTest.MBEDTLS_METRICS));
+    assertEquals(expected, actual, "Streaming mode must find the same defects");
+  }
+
+  /** Returns the report written before the ReportWriter from the list of all the defects, with the issues sorted. */
+  static String legacyReport(List<Defect> defects) {
+    StringBuilder result = new StringBuilder();
+    result.append("\n" + "{\n" + "\t\"header\" : {\n" + "\t\t\"version\" : 1,\n"
+            + "\t\t\"format\" : \"cov-import-results input\" \n" + "\t},\n" + "\t\n" + "\t\"issues\": [\n");
+    result.append(defects.stream()
+            .map(defect -> new ReportWriter.Issue(defect, defect.measured.getSourcesLabel(), defect.getJson()))
+            .sorted(ReportWriter.ORDER)
+            .map(issue -> "\t\t" + issue.json)
+            .collect(Collectors.joining(",\n")));
+    result.append("\n\t],\n" + "\t\"sources\": [\n");
+    result.append(defects.stream()
+            .flatMap(defect -> Stream.of(defect.measured.getSourcesLabel().split(",")))
+            .sorted()
+            .distinct()
+            .map(path -> "\t\t{ \"file\": \"" + path + "\", \"encoding\": \"ASCII\" }")
+            .collect(Collectors.joining(",\n")));
+    result.append("\n\t]\n}\n");
+    return result.toString();
+  }
+
+  @Test
+  void report() throws IOException {
+    File report = File.createTempFile("defects", ".json");
+    report.deleteOnExit();
+    String args = "--all --metrics " + ReaderTest.MBEDTLS_METRICS + " -o " + report.getPath();
+
+    Main main = new Main();
+    main.init(args.split(" "));
+    String expected = legacyReport(main.checkAll(ReaderTest.MBEDTLS_METRICS));
+
+    Main.main(args.split(" "));
+    String actual = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+    assertEquals(expected, actual, "The report must be the one written from the list of the defects");
+
+    // The defects are found in another order
+    Main.main((args + " --streaming").split(" "));
+    actual = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+    assertEquals(expected, actual, "Streaming mode must write the same report");
+  }
+
+  /**
+   * Returns the report of checkers on the quantiles of the functions of each kind of composite, written by the given
+   * number of threads.
+   */
+  private static String quantilesReport(String options, int threads) throws Exception {
+    File report = File.createTempFile("defects", ".json");
+    report.deleteOnExit();
+    Main main = new Main();
+    main.init(("--metrics " + ReaderTest.MBEDTLS_METRICS + " -o " + report.getPath() + " " + options).split(" "));
+    for (String scope : new String[] { "File Metrics", "Module Metrics", ClassMetrics.NAME, DirectoryMetrics.NAME }) {
+      String name = "METRICS.TEST_QUANTILES_" + Scope.of(scope);
+      String json = "{ \"name\": \"" + name + "\", \"description\": \"Test\", \"scope\": \"" + scope + "\","
+              + " \"rule\": \"ccm_p90 > 1 || loc_p50 > 1\", \"defect-template\": \"\" }";
+      Checker checker = new Checker(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+      checker.setJsonDefectTemplate("{ \"checker\": \"" + name + "\", \"file\": \"${file}\","
+              + " \"count\": ${metrics.count}, \"ccm_p90\": ${ccm_p90}, \"loc_p50\": ${loc_p50},"
+              + " \"loc_p99\": ${metrics.loc_p99} }");
+      main.config.availableCheckers.add(checker);
+      main.config.enableChecker(name);
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try (ReportWriter writer = new ReportWriter(report.toPath())) {
+      if (options.contains("--streaming")) {
+        pool.submit(() -> main.checkStreaming(ReaderTest.MBEDTLS_METRICS, writer::write)).get();
+      } else {
+        pool.submit(() -> main.checkAll(ReaderTest.MBEDTLS_METRICS, writer::write)).get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void quantiles() throws Exception {
+    String options = "--class-metrics --directory-metrics";
+    String expected = quantilesReport(options, 1);
+    assertTrue(expected.contains("ccm_p90"), "Defects on the quantiles expected");
+    for (int threads : new int[] { 8, 3 }) {
+      assertEquals(expected, quantilesReport(options, threads), "Report by " + threads + " threads");
+    }
+    // The functions are accumulated in the order they are read
+    for (int threads : new int[] { 1, 8, 3 }) {
+      assertEquals(expected, quantilesReport(options + " --streaming", threads),
+              "Report in streaming mode by " + threads + " threads");
+    }
+  }
+}
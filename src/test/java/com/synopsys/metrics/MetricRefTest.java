@@ -0,0 +1,214 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Resolved metric names")
+class MetricRefTest {
+  protected static Logger logger = LogManager.getLogger(MetricRefTest.class);
+
+  private static final String[] SUFFIXES = { "", "_min", "_max", "_mean", "_sum", "_count", "_p90" };
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** The resolution of a name by CompositeMetrics.isMetrics() before the handles, the reference of the tests. */
+  private static boolean legacyIsMetrics(CompositeMetrics composite, String metricName) {
+    if (metricName.equals(CompositeMetrics.tagFILE_COUNT))
+      return true;
+    if (!composite.isMetrics(Measurable.getSchema().find(metricName))) {
+      int pos = metricName.lastIndexOf('_');
+      if (pos != -1) {
+        String prefix = metricName.substring(0, pos);
+        String suffix = metricName.substring(pos + 1);
+        if (suffix.matches("(min)|(max)|(mean)|(sum)|(count)|(p[0-9][0-9])")) {
+          return composite.isMetrics(Measurable.getSchema().find(prefix));
+        }
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /** The resolution of a name by CompositeMetrics.getMetric() before the handles. */
+  private static double legacyGetMetric(CompositeMetrics composite, String name) {
+    double result;
+    if (name.equals(CompositeMetrics.tagFILE_COUNT)) {
+      result = composite.getSignificantSourceCount();
+    } else if (name.endsWith("_max")) {
+      result = composite.getMetricStat(name.substring(0, name.lastIndexOf("_max"))).max;
+    } else if (name.endsWith("_min")) {
+      result = composite.getMetricStat(name.substring(0, name.lastIndexOf("_min"))).min;
+    } else if (name.endsWith("_mean")) {
+      result = composite.getMetricStat(name.substring(0, name.lastIndexOf("_mean"))).mean();
+    } else if (name.endsWith("_sum")) {
+      result = composite.getMetricStat(name.substring(0, name.lastIndexOf("_sum"))).sum;
+    } else if (name.endsWith("_count")) {
+      result = composite.getMetricStat(name.substring(0, name.lastIndexOf("_count"))).count;
+    } else if (CompositeMetrics.quantileOf(name) >= 0) {
+      result = composite.getQuantile(name.substring(0, name.length() - 4), CompositeMetrics.quantileOf(name));
+    } else if (name.equals("count")) {
+      result = composite.getCount();
+    } else {
+      result = composite.getMetric(Measurable.getSchema().find(name));
+      if (Double.isNaN(result))
+        result = 0.0;
+    }
+    return result;
+  }
+
+  /** Returns the names of all the metrics of the schema with all the suffixes. */
+  private static List<String> names() {
+    List<String> result = new ArrayList<>();
+    MetricSchema schema = Measurable.getSchema();
+    for (int id = 0; id < schema.size(); id++) {
+      for (String suffix : SUFFIXES) {
+        result.add(schema.nameOf(id) + suffix);
+      }
+    }
+    result.add(CompositeMetrics.tagFILE_COUNT);
+    result.add("func_count");
+    result.add("unknown");
+    return result;
+  }
+
+  @Test
+  @DisplayName("Operations of the names")
+  void resolve() {
+    assertEquals(MetricRef.Op.MAX, MetricRef.of("loc_max").getOp(), "loc_max");
+    assertEquals(Measurable.tagLOC, MetricRef.of("loc_max").getBaseName(), "loc_max");
+    assertEquals(MetricRef.Op.MEAN, MetricRef.of("ccm_mean").getOp(), "ccm_mean");
+    assertEquals(MetricRef.Op.QUANTILE, MetricRef.of("ccm_p90").getOp(), "ccm_p90");
+    assertEquals(0.9, MetricRef.of("ccm_p90").getQuantile(), "ccm_p90");
+    assertEquals(MetricRef.Op.COMPOSITE_COUNT, MetricRef.of("count").getOp(), "count");
+    assertEquals(MetricRef.Op.COUNT, MetricRef.of("func_count").getOp(), "func_count");
+    assertEquals(MetricRef.Op.FILE_COUNT, MetricRef.of(CompositeMetrics.tagFILE_COUNT).getOp(), "file_count");
+    assertEquals(MetricRef.Op.VALUE, MetricRef.of("ml").getOp(), "ml");
+    assertSame(MetricRef.of("loc_max"), MetricRef.of(new String("loc_max")), "Same handle");
+
+    MetricRef unknown = MetricRef.of("not_registered_yet_sum");
+    assertEquals(MetricSchema.UNKNOWN, unknown.getBaseId(), "Not registered");
+    int id = Measurable.getSchema().idOf("not_registered_yet");
+    assertEquals(id, unknown.getBaseId(), "Registered after the resolution");
+
+    Metrics threshold = new Metrics();
+    threshold.metric = "loc_sum";
+    assertSame(MetricRef.of("loc_sum"), threshold.getRef(), "Threshold handle");
+    threshold.metric = "ccm_sum";
+    assertSame(MetricRef.of("ccm_sum"), threshold.getRef(), "Threshold handle after a change");
+  }
+
+  @Test
+  @DisplayName("Same values as the names")
+  void values() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    CompositeMetrics.setQuantileMetrics(java.util.Collections.singleton(Measurable.tagCCM), QuantileSketch.DEFAULT_K);
+    try {
+      MetricsAggregator aggregates = functions.parallelStream().collect(MetricsAggregator.collector());
+      List<CompositeMetrics> composites = new ArrayList<>(aggregates.getFiles().values());
+      composites.addAll(aggregates.getModules().values());
+      for (CompositeMetrics composite : composites) {
+        for (String name : names()) {
+          boolean defined = legacyIsMetrics(composite, name);
+          assertEquals(defined, composite.isMetrics(MetricRef.of(name)), "Defined " + name);
+          if (defined) {
+            assertEquals(legacyGetMetric(composite, name), composite.getMetric(MetricRef.of(name)), "Value " + name);
+          }
+        }
+      }
+      FuncMetrics function = functions.get(0);
+      for (String name : names()) {
+        assertEquals(function.isMetrics(Measurable.getSchema().find(name)), function.isMetrics(MetricRef.of(name)),
+                "Defined " + name + " on a function");
+      }
+    } finally {
+      CompositeMetrics.setQuantileMetrics(java.util.Collections.emptySet(), QuantileSketch.DEFAULT_K);
+    }
+  }
+
+  @Test
+  @DisplayName("Cost of the evaluation of a threshold")
+  void benchmark() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    List<CompositeMetrics> composites = new ArrayList<>(
+            functions.parallelStream().collect(MetricsAggregator.collector()).getModules().values());
+    String[] names = { "loc_max", "ccm_mean", "loc_sum", "count", "func_count", Measurable.tagLOC };
+    MetricRef[] refs = new MetricRef[names.length];
+    for (int i = 0; i < names.length; i++) {
+      refs[i] = MetricRef.of(names[i]);
+    }
+    int iterations = 20000;
+    long evaluations = (long) iterations * composites.size() * names.length;
+
+    // Warm up, so that the JIT and the snapshots of the statistics don't count.
+    double expected = 0;
+    double actual = 0;
+    for (int i = 0; i < iterations; i++) {
+      for (CompositeMetrics composite : composites) {
+        for (int m = 0; m < names.length; m++) {
+          if (legacyIsMetrics(composite, names[m]))
+            expected += legacyGetMetric(composite, names[m]);
+          if (composite.isMetrics(refs[m]))
+            actual += composite.getMetric(refs[m]);
+        }
+      }
+    }
+    assertEquals(expected, actual, 1e-9 * Math.abs(expected), "Same values");
+
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (CompositeMetrics composite : composites) {
+        for (int m = 0; m < names.length; m++) {
+          if (legacyIsMetrics(composite, names[m]))
+            expected += legacyGetMetric(composite, names[m]);
+        }
+      }
+    }
+    long legacyTime = System.nanoTime() - start;
+
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean threads = (bean instanceof com.sun.management.ThreadMXBean)
+            ? (com.sun.management.ThreadMXBean) bean : null;
+    long thread = Thread.currentThread().getId();
+    long before = (threads != null) ? threads.getThreadAllocatedBytes(thread) : 0;
+    start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (CompositeMetrics composite : composites) {
+        for (int m = 0; m < refs.length; m++) {
+          if (composite.isMetrics(refs[m]))
+            actual += composite.getMetric(refs[m]);
+        }
+      }
+    }
+    long time = System.nanoTime() - start;
+    long allocated = (threads != null) ? threads.getThreadAllocatedBytes(thread) - before : 0;
+
+    logger.info("{} threshold evaluations: {} ns each by name, {} ns each by handle, {} bytes allocated", evaluations,
+            String.format("%.1f", (double) legacyTime / evaluations), String.format("%.1f", (double) time / evaluations),
+            allocated);
+    assertEquals(expected, actual, 1e-9 * Math.abs(expected), "Same values");
+    assertTrue(allocated / evaluations < 1, "Evaluation should not allocate, found " + allocated + " bytes");
+  }
+
+}
@@ -0,0 +1,140 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Columnar storage of the metrics")
+class MetricStoreTest {
+  protected static Logger logger = LogManager.getLogger(MetricStoreTest.class);
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Metric names are interned to stable ids")
+  void schema() {
+    MetricSchema schema = new MetricSchema();
+    assertEquals(MetricSchema.UNKNOWN, schema.find("loc"), "Name not registered yet");
+    int loc = schema.idOf("loc");
+    int ccm = schema.idOf("ccm");
+    assertEquals(0, loc, "First id");
+    assertEquals(1, ccm, "Second id");
+    assertEquals(loc, schema.idOf("loc"), "Id must be stable");
+    assertEquals(loc, schema.find("loc"), "Registered name");
+    assertEquals("ccm", schema.nameOf(ccm), "Name of an id");
+    assertEquals(2, schema.size(), "Number of names");
+  }
+
+  @Test
+  @DisplayName("Undefined values and chunk boundaries")
+  void values() {
+    MetricStore store = new MetricStore(new MetricSchema());
+    int id = store.getSchema().idOf("loc");
+
+    int first = store.newRow();
+    assertFalse(store.isDefined(first, id), "No value yet");
+    assertTrue(Double.isNaN(store.get(first, "unknown")), "Unknown metric");
+
+    store.set(first, id, 3.0);
+    assertEquals(3.0, store.get(first, id), "Value not stored");
+
+    int last = first;
+    while (last < MetricStore.CHUNK_SIZE + 1) {
+      last = store.newRow();
+    }
+    assertFalse(store.isDefined(last, id), "Row in a new chunk");
+    store.set(last, "loc", 5.0);
+    assertEquals(5.0, store.get(last, id), "Value in a new chunk");
+    assertEquals(3.0, store.get(first, id), "Value in the first chunk");
+
+    store.set(last, id, Double.NaN);
+    assertFalse(store.isDefined(last, id), "NaN undefines the value");
+
+    int unallocated = 2 * MetricStore.CHUNK_SIZE;
+    assertThrows(IllegalArgumentException.class, () -> store.set(unallocated, id, 1.0), "Row not allocated");
+  }
+
+  @Test
+  @DisplayName("Rows written concurrently")
+  void concurrent() {
+    MetricStore store = new MetricStore(new MetricSchema());
+    int rows = 4 * MetricStore.CHUNK_SIZE;
+
+    IntStream.range(0, rows).parallel().forEach(i -> {
+      int row = store.newRow();
+      store.set(row, "loc", row);
+      store.set(row, "m" + (row % 7), -row);
+    });
+
+    assertEquals(rows, store.getRowCount(), "Rows allocated");
+    assertEquals(8, store.getSchema().size(), "Metrics registered");
+    for (int row = 0; row < rows; row++) {
+      assertEquals(row, store.get(row, "loc"), "Bad value at row " + row);
+      assertEquals(-row, store.get(row, "m" + (row % 7)), "Bad value at row " + row);
+    }
+  }
+
+  @Test
+  @DisplayName("Measurable metrics are published as parameters")
+  void measurable() {
+    FileMetrics file = new FileMetrics("File Metrics");
+    assertTrue(file.isMetrics(Measurable.tagLOC), "Default metric");
+    assertFalse(file.isMetrics("foo"), "Unknown metric");
+    assertNull(file.get(Measurable.tagMETRICS_PREFIX + Measurable.tagLOC), "Not published yet");
+
+    file.setMetrics("foo", 2.5);
+    assertEquals(2.5, file.getMetric("foo"), "Metric value");
+    assertEquals(2.5, file.getMetric(Measurable.getSchema().find("foo")), "Metric value by id");
+
+    file.publishMetrics();
+    assertEquals("2.5", file.get(Measurable.tagMETRICS_PREFIX + "foo"), "Published metric");
+    assertEquals("0.0", file.get(Measurable.tagMETRICS_PREFIX + Measurable.tagLOC), "Published default metric");
+  }
+
+  @Test
+  @DisplayName("Objects of each analysis in their own stores")
+  void stores() {
+    FileMetrics before = new FileMetrics("File Metrics");
+    before.setMetrics("foo", 1.0);
+    MetricStore previous = MetricStore.getCurrent();
+
+    MetricStore store = MetricStore.startNew();
+    assertSame(store, MetricStore.getCurrent(), "Store of the new objects");
+    assertNotSame(previous, store, "New store");
+    assertSame(previous.getSchema(), store.getSchema(), "Same metric ids");
+
+    FuncMetrics function = new FuncMetrics();
+    function.setMetrics(Measurable.tagLOC, 12);
+    assertEquals(1, store.getRowCount(), "Row of the function");
+    int chunks = store.getChunkCount();
+
+    DirectoryMetrics directory = new DirectoryMetrics(0, "/", 0);
+    directory.accumulate(function);
+    assertEquals(1, store.getRowCount(), "Row of the composite in its own store");
+    assertEquals(1, store.getCompositeStore().getRowCount(), "Row of the composite");
+    assertEquals(chunks, store.getChunkCount(), "No chunk for the metrics of the composites among the functions");
+    assertEquals(12, directory.getMetric("loc_sum"), "Metrics of the composite");
+    assertEquals(0, directory.getMetric("depth"), "Metrics of the composite");
+    assertEquals(1.0, before.getMetric("foo"), "Metrics of an object of the previous store");
+  }
+
+}
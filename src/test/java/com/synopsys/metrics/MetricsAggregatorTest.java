@@ -0,0 +1,306 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Aggregation of the functions by files and modules")
+class MetricsAggregatorTest {
+  protected static Logger logger = LogManager.getLogger(MetricsAggregatorTest.class);
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Checks that both composites have the same statistics for all the metrics. */
+  private static void assertSameStats(CompositeMetrics expected, CompositeMetrics actual) {
+    assertEquals(expected.getCount(), actual.getCount(), "Count of " + expected.getSourcesLabel());
+    assertEquals(expected.getSourcesLabel(), actual.getSourcesLabel(), "Sources");
+    assertEquals(expected.getSignificantCount(), actual.getSignificantCount(), "Significant count");
+    assertEquals(expected.getSignificantSourceCount(), actual.getSignificantSourceCount(), "Significant sources");
+    MetricSchema schema = Measurable.getSchema();
+    for (int id = 0; id < schema.size(); id++) {
+      StatData e = expected.getMetricStat(schema.nameOf(id));
+      StatData a = actual.getMetricStat(schema.nameOf(id));
+      String label = schema.nameOf(id) + " of " + expected.getSourcesLabel();
+      assertEquals(e.count, a.count, "Count of " + label);
+      assertEquals(e.min, a.min, "Min of " + label);
+      assertEquals(e.max, a.max, "Max of " + label);
+      assertEquals(e.sum, a.sum, 1e-9 * Math.abs(e.sum), "Sum of " + label);
+    }
+  }
+
+  @Test
+  @DisplayName("Parallel aggregation gives the same composites as the sequential one")
+  void parallel() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    assertFalse(functions.isEmpty(), "No function metrics found in " + ReaderTest.MBEDTLS_METRICS);
+
+    MetricsAggregator sequential = new MetricsAggregator();
+    functions.forEach(sequential::add);
+    sequential.complete();
+
+    long start = System.nanoTime();
+    MetricsAggregator parallel = functions.parallelStream().collect(MetricsAggregator.collector());
+    logger.info("{} functions aggregated in {} ms", functions.size(), (System.nanoTime() - start) / 1000000);
+
+    for (Map.Entry<Integer, CompositeMetrics> entry : sequential.getFiles().entrySet()) {
+      assertSameStats(entry.getValue(), parallel.getFiles().get(entry.getKey()));
+    }
+    for (Map.Entry<Long, CompositeMetrics> entry : sequential.getModules().entrySet()) {
+      assertSameStats(entry.getValue(), parallel.getModules().get(entry.getKey()));
+      assertEquals(entry.getValue().get("file"), parallel.getModules().get(entry.getKey()).get("file"),
+              "Module sources label");
+    }
+    assertEquals(sequential.getFiles().size(), parallel.getFiles().size(), "Files");
+    assertEquals(sequential.getModules().size(), parallel.getModules().size(), "Modules");
+  }
+
+  @Test
+  @DisplayName("Merged statistics")
+  void merge() {
+    StatData all = new StatData();
+    StatData first = new StatData();
+    StatData second = new StatData();
+    double[] values = { 4, -1, 7, 2.5, 0 };
+    for (int i = 0; i < values.length; i++) {
+      all.add(values[i]);
+      (i < 2 ? first : second).add(values[i]);
+    }
+    first.merge(second);
+    first.merge(new StatData());
+    assertEquals(all.min, first.min, "Min");
+    assertEquals(all.max, first.max, "Max");
+    assertEquals(all.sum, first.sum, "Sum");
+    assertEquals(all.count, first.count, "Count");
+
+    StatData empty = new StatData();
+    empty.merge(second);
+    assertEquals(second.min, empty.min, "Min merged into empty statistics");
+  }
+
+  @Test
+  @DisplayName("Statistics of a composite are computed once")
+  void statCache() throws Exception {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    ModuleMetrics module = new ModuleMetrics("Module Metrics");
+    functions.forEach(module::add);
+
+    long misses = CompositeMetrics.getStatCacheMisses();
+    long hits = CompositeMetrics.getStatCacheHits();
+    int threads = 8;
+    int reads = 1000;
+    List<Callable<Double>> tasks = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      tasks.add(() -> {
+        double sum = 0;
+        for (int i = 0; i < reads; i++) {
+          sum += module.getMetricStat(Measurable.tagLOC).sum + module.getMetricStat(Measurable.tagCCM).max;
+        }
+        return sum;
+      });
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (Future<Double> result : executor.invokeAll(tasks)) {
+        assertEquals(reads * (module.getMetric("loc_sum") + module.getMetric("ccm_max")), (double) result.get(),
+                "Same sums");
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(misses + 2, CompositeMetrics.getStatCacheMisses(), "One computation per metric");
+    assertTrue(CompositeMetrics.getStatCacheHits() >= hits + 2L * threads * reads - 2, "Other reads are hits");
+
+    StatData before = module.getMetricStat(Measurable.tagLOC);
+    module.add(functions.get(0));
+    StatData after = module.getMetricStat(Measurable.tagLOC);
+    assertEquals(before.count + 1, after.count, "Snapshot dropped when the composite changes");
+    assertEquals(misses + 3, CompositeMetrics.getStatCacheMisses(), "New snapshot");
+  }
+
+  @Test
+  @DisplayName("Directory tree rolled up from the files")
+  void directories() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    MetricsAggregator aggregates = functions.parallelStream().collect(MetricsAggregator.collector());
+
+    long start = System.nanoTime();
+    Map<Integer, CompositeMetrics> directories = MetricsAggregator.rollupDirectories(aggregates.getFiles());
+    logger.info("{} directories rolled up from {} files in {} ms", directories.size(), aggregates.getFiles().size(),
+            (System.nanoTime() - start) / 1000000);
+    assertFalse(directories.isEmpty(), "Directories expected");
+
+    for (CompositeMetrics composite : directories.values()) {
+      DirectoryMetrics directory = (DirectoryMetrics) composite;
+      String path = directory.getPathname();
+      String prefix = path.endsWith("/") ? path : path + "/";
+
+      // Same statistics as the ones of the functions of the directory tree
+      ModuleMetrics expected = new ModuleMetrics("Module Metrics");
+      functions.stream().filter(fm -> fm.getPathname().startsWith(prefix)).forEach(expected::accumulate);
+      assertEquals(expected.getCount(), directory.getCount(), "Count of " + path);
+      assertEquals(expected.getSourceCount(), directory.getSourceCount(), "Files of " + path);
+      assertEquals(expected.getSignificantSourceCount(), directory.getSignificantSourceCount(), "Significant files");
+      for (String metric : new String[] { Measurable.tagLOC, Measurable.tagCCM }) {
+        assertEquals(expected.getMetric(metric + "_sum"), directory.getMetric(metric + "_sum"), "Sum of " + path);
+        assertEquals(expected.getMetric(metric + "_max"), directory.getMetric(metric + "_max"), "Max of " + path);
+        assertEquals(expected.getMetric(metric + "_min"), directory.getMetric(metric + "_min"), "Min of " + path);
+      }
+
+      long depth = prefix.chars().filter(c -> c == '/').count() - 1;
+      assertEquals(depth, directory.getMetric("depth"), "Depth of " + path);
+      assertEquals(DirectoryMetrics.NAME, directory.getName(), "Scope of the checkers");
+    }
+  }
+
+  @Test
+  @DisplayName("Classes aggregated along with the files and modules")
+  void classes() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.TOMCAT_METRICS);
+    MetricsAggregator aggregates = functions.parallelStream().collect(MetricsAggregator.collector(true));
+    assertFalse(aggregates.getClasses().isEmpty(), "Classes expected");
+    assertTrue(functions.parallelStream().collect(MetricsAggregator.collector()).getClasses().isEmpty(),
+            "Classes only on demand");
+
+    Map<Integer, List<FuncMetrics>> expected = functions.stream().filter(fm -> fm.getClassId() != PathTable.NONE)
+            .collect(Collectors.groupingBy(FuncMetrics::getClassId));
+    assertEquals(expected.size(), aggregates.getClasses().size(), "Classes");
+    for (Map.Entry<Integer, List<FuncMetrics>> entry : expected.entrySet()) {
+      CompositeMetrics composite = aggregates.getClasses().get(entry.getKey());
+      String className = entry.getValue().get(0).getClassName();
+      assertEquals(ClassMetrics.NAME, composite.getName(), "Scope of the checkers");
+      assertEquals(className, composite.get("class"), "Class name");
+      assertEquals(entry.getValue().size(), composite.getCount(), "Methods of " + className);
+      assertEquals(entry.getValue().stream().mapToDouble(fm -> fm.getMetric(Measurable.tagCCM)).sum(),
+              composite.getMetric("ccm_sum"), "Complexity of " + className);
+      assertEquals(composite.getSourcesLabel(), composite.get("file"), "Sources of " + className);
+    }
+  }
+
+  @Test
+  @DisplayName("Distinct sources of a composite")
+  void sources() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    ModuleMetrics module = new ModuleMetrics("Module Metrics");
+    ModuleMetrics first = new ModuleMetrics("Module Metrics");
+    ModuleMetrics second = new ModuleMetrics("Module Metrics");
+    for (int i = 0; i < functions.size(); i++) {
+      module.add(functions.get(i));
+      (i % 3 == 0 ? first : second).add(functions.get(i));
+    }
+    first.merge(second);
+
+    TreeSet<String> expected = functions.stream().map(FuncMetrics::getPathname)
+            .collect(Collectors.toCollection(TreeSet::new));
+    TreeSet<String> significant = functions.stream().filter(CompositeMetrics::isSignificant)
+            .map(FuncMetrics::getPathname).collect(Collectors.toCollection(TreeSet::new));
+    long start = System.nanoTime();
+    String label = module.getSourcesLabel();
+    logger.info("Label of {} functions in {} files built in {} us", functions.size(), expected.size(),
+            (System.nanoTime() - start) / 1000);
+    assertEquals(String.join(",", expected), label, "Sorted distinct sources");
+    assertSame(label, module.getSourcesLabel(), "Label built once");
+    assertEquals(label, first.getSourcesLabel(), "Merged sources");
+    assertEquals(expected.size(), module.getSourceCount(), "Source count");
+    assertEquals(significant.size(), module.getSignificantSourceCount(), "Significant source count");
+    assertEquals(significant.size(), module.getMetric(CompositeMetrics.tagFILE_COUNT), "file_count metric");
+    assertEquals(significant.size(), first.getSignificantSourceCount(), "Merged significant source count");
+
+    FuncMetrics other = functions.get(0);
+    ModuleMetrics single = new ModuleMetrics("Module Metrics");
+    single.add(other);
+    String before = single.getSourcesLabel();
+    single.add(module);
+    assertNotEquals(before, single.getSourcesLabel(), "Label built again when the sources change");
+    assertEquals(label, single.getSourcesLabel(), "Sources of an added composite");
+  }
+
+  @Test
+  @DisplayName("Quantiles of the files, modules and directories")
+  void quantiles() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    CompositeMetrics.setQuantileMetrics(Collections.singleton(Measurable.tagCCM), QuantileSketch.DEFAULT_K);
+    try {
+      MetricsAggregator aggregates = functions.parallelStream().collect(MetricsAggregator.collector());
+      Map<Integer, CompositeMetrics> directories = MetricsAggregator.rollupDirectories(aggregates.getFiles());
+
+      List<CompositeMetrics> composites = new ArrayList<>(aggregates.getModules().values());
+      composites.addAll(directories.values());
+      for (CompositeMetrics composite : composites) {
+        assertTrue(composite.isMetrics("ccm_p90"), "Quantile suffix");
+        double[] values = composite.stream().mapToDouble(fm -> fm.getMetric(Measurable.tagCCM)).sorted().toArray();
+        if (values.length == 0) {
+          // A directory, compared with the bounds of its statistics
+          assertTrue(composite.getMetric("ccm_p90") <= composite.getMetric("ccm_max"), "Bounded quantile");
+          assertTrue(composite.getMetric("ccm_p90") >= composite.getMetric("ccm_min"), "Bounded quantile");
+          continue;
+        }
+        // Exact until the sketch is compacted, then within the rank error of the sketch
+        int tolerance = (int) Math.ceil(2.0 * values.length / QuantileSketch.DEFAULT_K);
+        for (int p : new int[] { 50, 90, 99 }) {
+          int rank = (int) Math.max(1, Math.ceil(p / 100.0 * values.length));
+          double low = values[Math.max(0, rank - 1 - tolerance)];
+          double high = values[Math.min(values.length - 1, rank - 1 + tolerance)];
+          double quantile = composite.getMetric("ccm_p" + p);
+          assertTrue((quantile >= low) && (quantile <= high), "Quantile " + p + " of " + values.length + " functions");
+        }
+      }
+      assertEquals(0.0, composites.get(0).getMetric("loc_p90"), "Quantiles of the metrics without sketch");
+    } finally {
+      CompositeMetrics.setQuantileMetrics(Collections.emptySet(), QuantileSketch.DEFAULT_K);
+    }
+  }
+
+  @Test
+  @DisplayName("Memory of the quantiles bounded whatever the number of functions")
+  void quantilesMemory() {
+    List<FuncMetrics> functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    int k = QuantileSketch.MIN_K * 4;
+    CompositeMetrics.setQuantileMetrics(List.of(Measurable.tagLOC, Measurable.tagCCM), k);
+    try {
+      int locId = Measurable.getSchema().find(Measurable.tagLOC);
+      int ccmId = Measurable.getSchema().find(Measurable.tagCCM);
+      FileMetrics file = new FileMetrics("File Metrics");
+      for (int round = 1; round <= 32; round++) {
+        functions.forEach(file::accumulate);
+        for (int id : new int[] { locId, ccmId }) {
+          QuantileSketch sketch = file._sketches[id];
+          assertEquals((long) round * functions.size(), sketch.getCount(), "Values of the sketch");
+          assertTrue(sketch.getRetained() <= 3 * k + 8 * 64, "Values kept for " + sketch.getCount() + " functions: "
+                  + sketch.getRetained());
+        }
+      }
+      assertFalse(file._sketches[locId].isExact(), "Sketch compacted");
+    } finally {
+      CompositeMetrics.setQuantileMetrics(Collections.emptySet(), QuantileSketch.DEFAULT_K);
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Binary cache of the parsed metrics")
+class MetricsCacheTest {
+  protected static Logger logger = LogManager.getLogger(MetricsCacheTest.class);
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns a string with the names and all the metrics of the function. */
+  private static String describe(FuncMetrics fm) {
+    StringBuilder result = new StringBuilder();
+    result.append(fm.getPathname()).append('|').append(fm.getFunctionName()).append('|');
+    result.append(fm.getModuleName()).append('|').append(fm.getClassName());
+    MetricSchema schema = Measurable.getSchema();
+    for (int id = 0; id < schema.size(); id++) {
+      if (fm.isMetrics(id))
+        result.append('|').append(schema.nameOf(id)).append('=').append(fm.getMetric(id));
+    }
+    return result.toString();
+  }
+
+  @Test
+  @DisplayName("Functions read from the cache are the parsed ones")
+  void roundTrip() throws IOException {
+    Path cacheFile = Files.createTempFile("metrics", ".cache");
+    cacheFile.toFile().deleteOnExit();
+
+    MetricsCache cache = new MetricsCache(ReaderTest.MBEDTLS_METRICS, cacheFile.toString());
+
+    long start = System.nanoTime();
+    List<String> expected;
+    try (MetricsCache.Writer writer = cache.newWriter();
+         Stream<FuncMetrics> functions = new Main().getParsedStream(ReaderTest.MBEDTLS_METRICS)) {
+      expected = functions.peek(writer::add).map(MetricsCacheTest::describe).sorted().collect(Collectors.toList());
+    }
+    long parsed = System.nanoTime();
+
+    Stream<FuncMetrics> cached = cache.load();
+    assertNotNull(cached, "Cache must be valid");
+    List<String> actual = cached.map(MetricsCacheTest::describe).sorted().collect(Collectors.toList());
+    long loaded = System.nanoTime();
+
+    assertFalse(expected.isEmpty(), "No function metrics found in " + ReaderTest.MBEDTLS_METRICS);
+    assertEquals(expected, actual, "Cached functions must be the same");
+    logger.info("{} functions parsed in {} ms, loaded from cache in {} ms", expected.size(),
+            (parsed - start) / 1000000, (loaded - parsed) / 1000000);
+  }
+
+  @Test
+  @DisplayName("Cache is ignored when the metrics file changes")
+  void invalidation() throws IOException {
+    Path source = Files.createTempFile("metrics", ".xml.gz");
+    source.toFile().deleteOnExit();
+    Files.copy(Paths.get(ReaderTest.MBEDTLS_METRICS), source, StandardCopyOption.REPLACE_EXISTING);
+
+    Path cacheFile = Files.createTempFile("metrics", ".cache");
+    cacheFile.toFile().deleteOnExit();
+
+    MetricsCache cache = new MetricsCache(source.toString(), cacheFile.toString());
+    assertNull(cache.load(), "Empty cache file");
+
+    try (MetricsCache.Writer writer = cache.newWriter();
+         Stream<FuncMetrics> functions = new Main().getParsedStream(source.toString())) {
+      functions.forEach(writer::add);
+    }
+    assertNotNull(cache.load(), "Cache must be valid");
+
+    // Same size and modification time, another content
+    FileTime modified = Files.getLastModifiedTime(source);
+    byte[] bytes = Files.readAllBytes(source);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(source, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+    Files.setLastModifiedTime(source, modified);
+    assertNull(new MetricsCache(source.toString(), cacheFile.toString()).load(), "Cache must be out of date");
+  }
+
+  @Test
+  @DisplayName("Cache is not saved when the parsing fails")
+  void aborted() throws IOException {
+    Path cacheFile = Files.createTempFile("metrics", ".cache");
+    Files.delete(cacheFile);
+    cacheFile.toFile().deleteOnExit();
+
+    Main main = new Main();
+    main.init(("--all --metrics " + ReaderTest.MBEDTLS_METRICS + " --cache-file " + cacheFile).split(" "));
+    AtomicInteger count = new AtomicInteger();
+    assertThrows(IllegalStateException.class, () -> main.forEachFunction(ReaderTest.MBEDTLS_METRICS, fm -> {
+      if (count.incrementAndGet() > 100)
+        throw new IllegalStateException("Failing consumer");
+    }), "The failure of the consumer");
+
+    assertFalse(Files.exists(cacheFile), "No cache file");
+    assertNull(new MetricsCache(ReaderTest.MBEDTLS_METRICS, cacheFile.toString()).load(),
+            "No cache after a failed parsing");
+  }
+
+  @Test
+  @DisplayName("Main saves and then uses the cache")
+  void main() throws IOException {
+    Path cacheFile = Files.createTempFile("metrics", ".cache");
+    Files.delete(cacheFile);
+    cacheFile.toFile().deleteOnExit();
+
+    Main main = new Main();
+    main.init(("--all --metrics " + ReaderTest.MBEDTLS_METRICS + " --cache-file " + cacheFile).split(" "));
+    List<String> first = MainTest.jsonOf(main.checkAll(ReaderTest.MBEDTLS_METRICS));
+    assertTrue(Files.isRegularFile(cacheFile), "Cache must be saved");
+
+    assertFalse(first.isEmpty(), "Defects expected");
+
+    List<String> second = MainTest.jsonOf(main.checkAll(ReaderTest.MBEDTLS_METRICS));
+    assertEquals(first, second, "Same defects with the cache");
+  }
+
+}
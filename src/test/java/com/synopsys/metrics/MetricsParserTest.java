@@ -0,0 +1,169 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Parser of the metrics key:value strings")
+class MetricsParserTest {
+  protected static Logger logger = LogManager.getLogger(MetricsParserTest.class);
+
+  public static final String METRICS = "be:0;fe:0;bl:1;lc:3;on:1;ot:0;cc:1;pce:1;pcs:1;hf:0;hr:0;ml:150";
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Known and unknown keys")
+  void keys() {
+    double[] values = new double[FuncMetrics.METRICS_KEYS.length + 1];
+    Arrays.fill(values, Double.NaN);
+    List<String> unknown = new ArrayList<>();
+
+    int count = MetricsParser.parse(METRICS + ";xx:2.5", FuncMetrics.METRICS_KEYS, values, 1,
+            (name, value) -> unknown.add(name + "=" + value));
+
+    assertEquals(13, count, "Unexpected number of pairs");
+    assertTrue(Double.isNaN(values[0]), "Slot before offset must not be changed");
+    assertEquals(3.0, values[1 + 3], "Bad value for lc");
+    assertEquals(1.0, values[1 + 6], "Bad value for cc");
+    assertEquals(150.0, values[1 + 11], "Bad value for ml");
+    assertEquals(Arrays.asList("xx=2.5"), unknown, "Unknown keys not reported");
+  }
+
+  @Test
+  @DisplayName("Values not wanted are skipped")
+  void wanted() {
+    double[] values = new double[FuncMetrics.METRICS_KEYS.length];
+    Arrays.fill(values, Double.NaN);
+    boolean[] wanted = new boolean[values.length];
+    wanted[3] = true;
+
+    int count = MetricsParser.parse(METRICS, FuncMetrics.METRICS_KEYS, values, 0, wanted, null);
+
+    assertEquals(12, count, "Skipped pairs are counted");
+    assertEquals(3.0, values[3], "Bad value for lc");
+    assertTrue(Double.isNaN(values[6]), "Value of cc must be skipped");
+    assertEquals(MetricsParser.BAD_FORMAT,
+            MetricsParser.parse("lc:3;cc:", FuncMetrics.METRICS_KEYS, values, 0, wanted, null), "Missing value");
+  }
+
+  @Test
+  @DisplayName("Numbers are decoded like Double.parseDouble")
+  void numbers() {
+    String[] samples = { "0", "-1", "+7", "150", "0.1", "3.14159", "-0.5", "12345678901234567890", "1e3", "2.5E-4",
+            "0.30000000000000004", "123456.789012345678", "9007199254740993" };
+    for (String sample : samples) {
+      assertEquals(Double.parseDouble(sample), MetricsParser.parseDouble(sample, 0, sample.length()),
+              "Bad value for " + sample);
+    }
+    assertTrue(Double.isNaN(MetricsParser.parseDouble("abc", 0, 3)), "Not a number");
+    assertTrue(Double.isNaN(MetricsParser.parseDouble("", 0, 0)), "Empty value");
+  }
+
+  @Test
+  @DisplayName("Coverage and impact syntax, bad formats")
+  void formats() {
+    double[] values = new double[FuncMetrics.IMPACT_KEYS.length];
+    assertEquals(5, MetricsParser.parse("ad:-1;sd:-1;dd:-1;id:-1;md:-1;", FuncMetrics.IMPACT_KEYS, values, 0, null),
+            "Trailing separator must be ignored");
+    assertEquals(-1.0, values[4], "Bad value for md");
+
+    assertEquals(0, MetricsParser.parse("", FuncMetrics.IMPACT_KEYS, values, 0, null), "Empty text");
+    assertEquals(MetricsParser.BAD_FORMAT, MetricsParser.parse("ad", FuncMetrics.IMPACT_KEYS, values, 0, null),
+            "Missing value");
+    assertEquals(MetricsParser.BAD_FORMAT, MetricsParser.parse("ad;sd:1", FuncMetrics.IMPACT_KEYS, values, 0, null),
+            "Missing separator");
+    assertEquals(MetricsParser.BAD_FORMAT, MetricsParser.parse("ad:x", FuncMetrics.IMPACT_KEYS, values, 0, null),
+            "Bad value");
+  }
+
+  @Test
+  @DisplayName("Function metrics are parsed into slots")
+  void function() {
+    FuncMetrics fm = new FuncMetrics();
+    fm.setElement(FuncMetrics.tagFILE, "/src/a.c");
+    fm.setElement(FuncMetrics.tagMETRICS, METRICS);
+    fm.setElement(FuncMetrics.tagCOVERAGE, "cu:-1;uu:-1;cf:-1;uf:-1");
+    fm.autoset();
+
+    assertTrue(fm.parse(), "Function metrics should parse");
+    assertEquals(3.0, fm.getMetric(Measurable.tagLOC), "Bad value for loc");
+    assertEquals(1.0, fm.getMetric(Measurable.tagCCM), "Bad value for ccm");
+    assertEquals(-1.0, fm.getMetric("uf"), "Bad value for uf");
+    assertFalse(fm.isMetrics("md"), "No impact was given");
+
+    fm.publishMetrics();
+    assertEquals("3.0", fm.get(Measurable.tagMETRICS_PREFIX + Measurable.tagLOC), "loc not published");
+    assertEquals("150.0", fm.get(Measurable.tagMETRICS_PREFIX + "ml"), "ml not published");
+
+    fm.setElement(FuncMetrics.tagMETRICS, "lc:3;cc");
+    assertFalse(fm.parse(), "Bad metrics format should be reported");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Parsing allocates nothing")
+  void allocations() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "No allocation counter");
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported(), "No allocation counter");
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    int iterations = 100000;
+    double[] values = new double[FuncMetrics.METRICS_KEYS.length];
+    long thread = Thread.currentThread().getId();
+
+    // Warm up, so that the JIT and the lazy initializations don't count.
+    for (int i = 0; i < iterations; i++) {
+      MetricsParser.parse(METRICS, FuncMetrics.METRICS_KEYS, values, 0, null);
+    }
+
+    long before = threads.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      MetricsParser.parse(METRICS, FuncMetrics.METRICS_KEYS, values, 0, null);
+    }
+    long time = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    long splitBefore = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < iterations; i++) {
+      for (String metric : METRICS.split(";")) {
+        String[] pair = metric.split(":");
+        values[0] = Double.parseDouble(pair[1]);
+      }
+    }
+    long splitAllocated = threads.getThreadAllocatedBytes(thread) - splitBefore;
+
+    logger.info("Parsed {} metrics in {} ms, {} bytes per parse ({} bytes with split)", iterations, time / 1000000,
+            allocated / iterations, splitAllocated / iterations);
+    assertTrue(allocated / iterations < 8, "Parsing should not allocate, found " + allocated / iterations + " bytes");
+  }
+
+}
@@ -0,0 +1,98 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Compiled pathname filters")
+class PathFilterTest {
+  protected static Logger logger = LogManager.getLogger(PathFilterTest.class);
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  private static final List<String> PATHNAMES = Arrays.asList("", "/usr/include/stdio.h", "/usr/include",
+          "/usr/include/", "/usr/included/a.h", "/src/tests/a.c", "/src/test/a.c", "/src/lib/a.c", "/src/lib/a.h",
+          "/src/lib/aa.c", "/src/lib/a+b.c", "/src/gen/x/x.c", "/src/gen/x/y.c", "/SRC/Vendor/z.c",
+          "/src/lib/a.c,/src/lib/b.c", "/usr/include/a.h,/src/lib/a.c", "/usr/include/multi\nline.h");
+
+  @Test
+  @DisplayName("Same decisions as the regular expressions")
+  void equivalence() {
+    List<String> regexes = Arrays.asList("/usr/include/.*", // Literal prefix
+            "/src/lib/a\\.c", // Literal pathname
+            "/src/lib/a\\+b\\.c", // Escaped literal
+            ".*/tests/.*", // Joined
+            "/src/lib/.*\\.h", // Joined
+            "/src/gen/(\\w+)/\\1\\.c", // Back reference
+            "(?i)/src/vendor/.*", // Inline flag
+            "\\Q/src/lib/aa.c\\E"); // Quote
+
+    PathFilter filter = new PathFilter();
+    assertTrue(filter.isEmpty(), "No pattern");
+    for (String regex : regexes) {
+      filter.add(regex, true);
+    }
+    assertFalse(filter.isEmpty(), "Patterns were added");
+
+    List<Pattern> patterns = new ArrayList<>();
+    regexes.forEach(regex -> patterns.add(Pattern.compile(regex)));
+
+    for (int pass = 0; pass < 2; pass++) { // Second pass for the decisions kept
+      for (String pathname : PATHNAMES) {
+        boolean expected = patterns.stream().anyMatch(p -> p.matcher(pathname).matches());
+        assertEquals(expected, filter.isExcluded(pathname), "Bad decision for " + pathname);
+      }
+    }
+    assertFalse(filter.isExcluded(null), "Null pathname is never excluded");
+    logger.info("Filter: {}", filter);
+  }
+
+  @Test
+  @DisplayName("Inclusion patterns and invalid patterns")
+  void inclusion() {
+    PathFilter filter = new PathFilter();
+    filter.add("/src/.*", false);
+    assertTrue(filter.accepts("/src/lib/a.c"), "Included pathname");
+    assertFalse(filter.accepts("/usr/include/stdio.h"), "Pathname not included");
+
+    filter.add("/src/tests/.*", true);
+    assertFalse(filter.accepts("/src/tests/a.c"), "Excluded pathname, decision changed by the new pattern");
+
+    assertThrows(PatternSyntaxException.class, () -> filter.add("/src/(", true), "Invalid pattern");
+    assertTrue(filter.accepts("/src/lib/a.c"), "Filter unchanged by an invalid pattern");
+  }
+
+  @Test
+  @DisplayName("Literal patterns")
+  void literals() {
+    assertEquals("/usr/include/", PathFilter.literalOf("/usr/include/"), "Plain characters");
+    assertEquals("/a.b+c", PathFilter.literalOf("/a\\.b\\+c"), "Escaped punctuation");
+    assertNull(PathFilter.literalOf("/a.b"), "Any character");
+    assertNull(PathFilter.literalOf("/a\\d"), "Character class");
+    assertNull(PathFilter.literalOf("/a\\"), "Dangling escape");
+  }
+
+}
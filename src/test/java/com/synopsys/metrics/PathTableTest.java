@@ -0,0 +1,81 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Symbol table of the pathnames")
+class PathTableTest {
+  protected static Logger logger = LogManager.getLogger(PathTableTest.class);
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Names are given back exactly")
+  void roundTrip() {
+    PathTable table = new PathTable('/');
+    String[] names = { "", "a", "/a", "/a/b.c", "a/", "//a//b", "/a/b.c/", "/src/a.c", "/src/b.c" };
+    for (String name : names) {
+      assertEquals(name, table.toString(table.intern(name)), "Bad name");
+    }
+    assertEquals(PathTable.ROOT, table.intern(""), "Empty name is the root");
+    assertEquals(table.intern("/a/b.c"), table.intern(new StringBuilder("/a/b.c")), "Same name, same id");
+  }
+
+  @Test
+  @DisplayName("Directories and file names")
+  void hierarchy() {
+    PathTable table = new PathTable('/');
+    int a = table.intern("/src/lib/a.c");
+    int b = table.intern("/src/lib/b.c");
+    int lib = table.parentOf(a);
+
+    assertEquals(lib, table.parentOf(b), "Same directory");
+    assertEquals("/src/lib", table.toString(lib), "Directory name");
+    assertEquals("a.c", table.segmentOf(a), "File name");
+    assertEquals(PathTable.NONE, table.parentOf(PathTable.ROOT), "Root has no parent");
+
+    // "", "src", "lib", "a.c", "b.c"
+    assertEquals(5, table.getSegmentCount(), "Segments are stored once");
+    // root, "", "/src", "/src/lib" and the two files
+    assertEquals(6, table.size(), "Nodes");
+  }
+
+  @Test
+  @DisplayName("Growth of the tables")
+  void growth() {
+    PathTable table = new PathTable('.');
+    Set<Integer> ids = new HashSet<>();
+    for (int i = 0; i < 10000; i++) {
+      ids.add(table.intern("org.pkg" + (i % 100) + ".Class" + i));
+    }
+    assertEquals(10000, ids.size(), "Distinct names");
+    for (int i = 0; i < 10000; i += 97) {
+      String name = "org.pkg" + (i % 100) + ".Class" + i;
+      assertEquals(name, table.toString(table.intern(name)), "Bad name");
+    }
+    logger.info("{} names stored in {} nodes and {} segments of {} chars", ids.size(), table.size(),
+            table.getSegmentCount(), table.getSegmentChars());
+  }
+
+}
@@ -0,0 +1,202 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Quantile sketches")
+class QuantileSketchTest {
+  protected static Logger logger = LogManager.getLogger(QuantileSketchTest.class);
+
+  private static final double[] QUANTILES = { 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99 };
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns the largest distance between the rank of a quantile of the sketch and its exact rank, over n values. */
+  private static double rankError(QuantileSketch sketch, double[] sorted) {
+    double result = 0;
+    for (double q : QUANTILES) {
+      double value = sketch.quantile(q);
+      // Any rank of the value is correct when it's repeated
+      int low = lowerBound(sorted, value);
+      int high = lowerBound(sorted, Math.nextUp(value));
+      double rank = Math.ceil(q * sorted.length);
+      double error = (rank < low) ? low - rank : (rank > high) ? rank - high : 0;
+      result = Math.max(result, error / sorted.length);
+    }
+    return result;
+  }
+
+  private static int lowerBound(double[] sorted, double value) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sorted[middle] < value) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /** Returns values like the complexity of functions: mostly small, with a long tail. */
+  private static double[] values(int n, long seed) {
+    Random random = new Random(seed);
+    double[] result = new double[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = Math.exp(random.nextGaussian() * 1.2 + 1.0);
+    }
+    return result;
+  }
+
+  @Test
+  @DisplayName("Exact quantiles of a few values")
+  void exact() {
+    QuantileSketch sketch = new QuantileSketch();
+    assertTrue(Double.isNaN(sketch.quantile(0.5)), "No quantile of an empty sketch");
+    for (int i = 1; i <= 100; i++) {
+      sketch.add(101 - i);
+    }
+    assertEquals(100, sketch.getCount(), "Count");
+    assertEquals(1, sketch.quantile(0.0), "Minimum");
+    assertEquals(50, sketch.quantile(0.5), "Median");
+    assertEquals(90, sketch.quantile(0.9), "90th percentile");
+    assertEquals(100, sketch.quantile(1.0), "Maximum");
+    assertThrows(IllegalArgumentException.class, () -> sketch.quantile(1.5));
+    assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(QuantileSketch.MIN_K - 1));
+  }
+
+  @Test
+  @DisplayName("Accuracy and memory of the sketches by size")
+  void accuracy() {
+    int n = 1000000;
+    double[] values = values(n, 42);
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+
+    for (int k : new int[] { 50, 200, 800 }) {
+      QuantileSketch sketch = new QuantileSketch(k);
+      long start = System.nanoTime();
+      for (double value : values) {
+        sketch.add(value);
+      }
+      long time = System.nanoTime() - start;
+      double error = rankError(sketch, sorted);
+      logger.info("k={}: {} values added in {} ms, {} kept, rank error {}%", k, n, time / 1000000,
+              sketch.getRetained(), String.format("%.3f", 100 * error));
+
+      assertEquals(n, sketch.getCount(), "Count");
+      assertTrue(error < 2.0 / k, "Rank error " + error + " with k=" + k);
+      assertTrue(sketch.getRetained() <= 3 * k + 8 * 64, "Values kept with k=" + k + ": " + sketch.getRetained());
+    }
+  }
+
+  @Test
+  @DisplayName("Merged sketches are as accurate as a single one")
+  void merge() {
+    int parts = 64;
+    int n = 20000;
+    double[] all = new double[parts * n];
+    QuantileSketch merged = new QuantileSketch();
+    for (int p = 0; p < parts; p++) {
+      double[] values = values(n, p);
+      System.arraycopy(values, 0, all, p * n, n);
+      QuantileSketch part = new QuantileSketch();
+      for (double value : values) {
+        part.add(value);
+      }
+      merged.merge(part);
+      assertEquals(n, part.getCount(), "Merged sketch unchanged");
+    }
+    Arrays.sort(all);
+
+    double error = rankError(merged, all);
+    logger.info("{} sketches merged, {} values kept, rank error {}%", parts, merged.getRetained(),
+            String.format("%.3f", 100 * error));
+    assertEquals(all.length, merged.getCount(), "Count");
+    assertTrue(error < 2.0 / merged.getK(), "Rank error " + error);
+    assertThrows(IllegalArgumentException.class, () -> merged.merge(new QuantileSketch(100)));
+  }
+
+  @Test
+  @DisplayName("Same quantiles for the same values")
+  void deterministic() {
+    double[] values = values(100000, 7);
+    QuantileSketch first = new QuantileSketch();
+    QuantileSketch second = new QuantileSketch();
+    for (double value : values) {
+      first.add(value);
+      second.add(value);
+    }
+    for (double q : QUANTILES) {
+      assertEquals(first.quantile(q), second.quantile(q), "Quantile " + q);
+    }
+  }
+
+  @Test
+  @DisplayName("Exact quantiles of few distinct values whatever their order")
+  void distinct() {
+    double[] values = new double[200000];
+    Random random = new Random(3);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Math.min(150, Math.floor(Math.exp(random.nextGaussian() + 1.0)));
+    }
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+
+    QuantileSketch ordered = new QuantileSketch();
+    for (double value : sorted) {
+      ordered.add(value);
+    }
+    QuantileSketch merged = new QuantileSketch();
+    for (int p = 0; p < 10; p++) {
+      QuantileSketch part = new QuantileSketch();
+      for (int i = p; i < values.length; i += 10) {
+        part.add(values[i]);
+      }
+      merged.merge(part);
+    }
+    assertTrue(merged.isExact(), "Distinct values kept");
+    assertTrue(merged.getRetained() <= 151, "Distinct values kept");
+    for (double q : QUANTILES) {
+      double expected = sorted[(int) Math.ceil(q * sorted.length) - 1];
+      assertEquals(expected, ordered.quantile(q), "Quantile " + q + " of the sorted values");
+      assertEquals(expected, merged.quantile(q), "Quantile " + q + " of the merged values");
+    }
+
+    // Then as accurate as any sketch once there are too many distinct values
+    double[] more = values(100000, 5);
+    for (double value : more) {
+      merged.add(value);
+    }
+    double[] all = Arrays.copyOf(values, values.length + more.length);
+    System.arraycopy(more, 0, all, values.length, more.length);
+    Arrays.sort(all);
+    assertFalse(merged.isExact(), "Sketch compacted");
+    assertEquals(all.length, merged.getCount(), "Count");
+    assertTrue(rankError(merged, all) < 2.0 / merged.getK(), "Rank error");
+  }
+
+}
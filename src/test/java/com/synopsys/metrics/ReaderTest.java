@@ -0,0 +1,258 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Readers for the function metrics file")
+class ReaderTest {
+
+  protected static Logger _logger;
+
+  public static final String MBEDTLS_METRICS = "tests/metrics/mbedtls-2.1.0-FUNCTION.metrics.xml.gz";
+  public static final String TOMCAT_METRICS = "tests/metrics/Tomcat-8.5.0-FUNCTION.metrics.xml.gz";
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeAll
+  static void initAll() throws IOException {
+    String log4jConfigFile = "./tests/log4j2.xml";
+    ConfigurationSource source = new ConfigurationSource(new FileInputStream(log4jConfigFile));
+    Configurator.initialize(null, source);
+    _logger = LogManager.getLogger(ReaderTest.class);
+  }
+
+  @BeforeEach
+  void init() {
+    _logger.info("");
+    _logger.info("+---------------------------+");
+    _logger.info("| New Test Case             |");
+    _logger.info("+---------------------------+");
+    _logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Returns the file name of each function found by the given iterator, in the order of the metrics file. */
+  /** Returns all the functions parsed from the given file, the stream of the reader being closed. */
+  static List<FuncMetrics> parseAll(String filename) {
+    try (Stream<FuncMetrics> functions = new Main().getParsedStream(filename)) {
+      return functions.collect(Collectors.toList());
+    }
+  }
+
+  static List<String> pathnames(Iterator<FuncMetrics> iter) {
+    List<String> result = new ArrayList<>();
+    while (iter.hasNext()) {
+      result.add(iter.next().getPathname());
+    }
+    return result;
+  }
+
+  @Test
+  @DisplayName("Pipeline reader produces the same functions as the StAX reader")
+  void pipeline() throws Exception {
+
+    List<String> expected;
+    try (FuncMetricsIter iter = new FuncMetricsIter(MBEDTLS_METRICS)) {
+      expected = pathnames(iter);
+    }
+    assertFalse(expected.isEmpty(), "No function metrics found in " + MBEDTLS_METRICS);
+
+    // Small buffers and queue to exercise the hand-over between the stages.
+    try (FuncMetricsPipeline pipeline = new FuncMetricsPipeline(MBEDTLS_METRICS, 1000, 3)) {
+      assertEquals(expected, pathnames(pipeline), "Pipeline reader differs from StAX reader");
+      assertFalse(pipeline.hasNext(), "Pipeline should stay at end of records");
+    }
+  }
+
+  @Test
+  @DisplayName("Pipeline threads end when the parsing fails")
+  void pipelineFailure() throws Exception {
+    File corrupted = File.createTempFile("corrupted", ".xml.gz");
+    corrupted.deleteOnExit();
+    try (OutputStream out = new GZIPOutputStream(new FileOutputStream(corrupted))) {
+      out.write("<?xml version=\"1.0\"?>\n<root><fnmetric><file>".getBytes(StandardCharsets.UTF_8));
+      // Much more data than the buffers of the pipeline
+      byte[] garbage = new byte[100000];
+      Arrays.fill(garbage, (byte) '<');
+      out.write(garbage);
+    }
+
+    // Not closed, the pipeline must stop by itself
+    FuncMetricsPipeline pipeline = new FuncMetricsPipeline(corrupted.getPath(), 1000, 3);
+    assertFalse(pipeline.hasNext(), "No function read");
+    for (int i = 0; (i < 500) && pipeline.isRunning(); i++) {
+      Thread.sleep(10);
+    }
+    assertFalse(pipeline.isRunning(), "Threads of the pipeline ended");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Parallel parse in batches on the Tomcat metrics")
+  void spliterator() throws Exception {
+
+    // Reading is done ahead so that only the parse phase is measured.
+    List<FuncMetrics> raw = new ArrayList<>();
+    try (FuncMetricsIter iter = new FuncMetricsIter(TOMCAT_METRICS)) {
+      iter.forEachRemaining(raw::add);
+    }
+
+    Spliterator<FuncMetrics> split = new FuncMetricsSpliterator(raw.iterator(), 100);
+    assertTrue(split.hasCharacteristics(Spliterator.ORDERED), "Source order must be kept");
+    assertFalse(split.hasCharacteristics(Spliterator.SIZED), "The number of records is unknown");
+
+    Spliterator<FuncMetrics> batch = split.trySplit();
+    assertNotNull(batch, "A batch is expected");
+    assertTrue(batch.hasCharacteristics(Spliterator.SIZED | Spliterator.ORDERED), "Batches are sized and ordered");
+    assertEquals(100, batch.estimateSize(), "Unexpected batch size");
+
+    // A second copy of the records for the parallel parse.
+    List<FuncMetrics> copy = new ArrayList<>();
+    try (FuncMetricsIter iter = new FuncMetricsIter(TOMCAT_METRICS)) {
+      iter.forEachRemaining(copy::add);
+    }
+
+    long start = System.nanoTime();
+    long sequential = raw.stream().filter(FuncMetrics::parse).count();
+    long sequentialTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    long parallel = StreamSupport.stream(new FuncMetricsSpliterator(copy.iterator()), true)
+            .filter(FuncMetrics::parse).count();
+    long parallelTime = System.nanoTime() - start;
+
+    assertEquals(raw.size(), sequential, "All Tomcat functions should parse");
+    assertEquals(sequential, parallel, "Parallel parse must find the same functions");
+
+    _logger.info("Parsed {} functions in {} ms sequentially, {} ms in parallel on {} cores", sequential,
+            sequentialTime / 1000000, parallelTime / 1000000, Runtime.getRuntime().availableProcessors());
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Memory mapped reader produces the same functions as the StAX reader")
+  void mapped() throws Exception {
+
+    File inflated = File.createTempFile("FUNCTION.metrics", ".xml");
+    inflated.deleteOnExit();
+    try (InputStream is = new GZIPInputStream(new FileInputStream(MBEDTLS_METRICS))) {
+      Files.copy(is, inflated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    List<FuncMetrics> expected = new ArrayList<>();
+    try (FuncMetricsIter iter = new FuncMetricsIter(inflated.getPath())) {
+      iter.forEachRemaining(expected::add);
+    }
+
+    MappedFuncMetricsReader reader = new MappedFuncMetricsReader(inflated.getPath());
+    List<FuncMetrics> actual = new ArrayList<>();
+    reader.iterator().forEachRemaining(actual::add);
+
+    assertEquals(expected.size(), actual.size(), "Mapped reader found a different number of functions");
+    for (int i = 0; i < expected.size(); i++) {
+      for (String tag : FuncMetrics.loadedTags) {
+        assertEquals(expected.get(i).getElement(tag), actual.get(i).getElement(tag), "Different " + tag + " for function " + i);
+      }
+    }
+
+    long parallel = StreamSupport.stream(reader.spliterator(), true).filter(FuncMetrics::parse).count();
+    assertEquals(expected.size(), parallel, "Parallel scan found a different number of functions");
+  }
+
+  @Test
+  @DisplayName("Memory mapped reader falls back to StAX on unexpected records")
+  void mappedFallback() throws Exception {
+
+    String xml = "<fnmetric>\n<file>/src/a.c</file>\n<metrics>lc:3;cc:1</metrics>\n</fnmetric>\n" //
+            + "<fnmetric>\n<file>/src/b&amp;c.c</file>\n<metrics>lc:4;cc:2</metrics>\n</fnmetric>\n" //
+            + "<fnmetric>\n<file>/src/d.c</file>\n<extra>x</extra>\n<metrics>lc:5;cc:3</metrics>\n</fnmetric>\n";
+
+    File file = File.createTempFile("FUNCTION.metrics", ".xml");
+    file.deleteOnExit();
+    Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+
+    List<String> paths = pathnames(new MappedFuncMetricsReader(file.getPath()).iterator());
+    assertEquals(Arrays.asList("/src/a.c", "/src/b&c.c", "/src/d.c"), paths, "Unexpected functions read");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @Test
+  @DisplayName("Readers skip the functions of the excluded files")
+  void filter() throws Exception {
+
+    File inflated = File.createTempFile("FUNCTION.metrics", ".xml");
+    inflated.deleteOnExit();
+    try (InputStream is = new GZIPInputStream(new FileInputStream(MBEDTLS_METRICS))) {
+      Files.copy(is, inflated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    List<String> all;
+    try (FuncMetricsIter iter = new FuncMetricsIter(MBEDTLS_METRICS)) {
+      all = pathnames(iter);
+    }
+    List<String> expected = new ArrayList<>();
+    for (String pathname : all) {
+      if (!pathname.startsWith("/usr/include/"))
+        expected.add(pathname);
+    }
+    assertTrue(expected.size() < all.size(), "Some functions of " + MBEDTLS_METRICS + " are expected in /usr/include");
+
+    FunctionFilter filter = new FunctionFilter(pathname -> !pathname.startsWith("/usr/include/"));
+
+    List<String> actual;
+    try (FuncMetricsIter iter = new FuncMetricsIter(MBEDTLS_METRICS)) {
+      iter.setFilter(filter);
+      actual = pathnames(iter);
+    }
+    assertEquals(expected, actual, "StAX reader with a filter");
+
+    try (FuncMetricsPipeline pipeline = new FuncMetricsPipeline(MBEDTLS_METRICS, 1000, 3, MetricsProjection.ALL,
+            filter)) {
+      assertEquals(expected, pathnames(pipeline), "Pipeline reader with a filter");
+    }
+
+    MappedFuncMetricsReader reader = new MappedFuncMetricsReader(inflated.getPath());
+    reader.setFilter(filter);
+    assertEquals(expected, pathnames(reader.iterator()), "Mapped reader with a filter");
+  }
+
+}
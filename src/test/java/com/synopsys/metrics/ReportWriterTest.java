@@ -0,0 +1,119 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Report for cov-import-results")
+class ReportWriterTest {
+  protected static Logger logger = LogManager.getLogger(ReportWriterTest.class);
+
+  private static List<Defect> defects;
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeAll
+  static void initAll() {
+    Main main = new Main();
+    main.init(("--all --class-metrics --metrics " + ReaderTest.MBEDTLS_METRICS).split(" "));
+    defects = main.checkAll(ReaderTest.MBEDTLS_METRICS);
+  }
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  /** Writes the defects in the given order by the given number of threads, returns the report. */
+  private static String write(List<Defect> defects, int threads, int runSize) throws Exception {
+    File report = File.createTempFile("defects", ".json");
+    report.deleteOnExit();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    ReportWriter writer = new ReportWriter(report.toPath(), runSize);
+    try (writer) {
+      pool.submit(() -> defects.parallelStream().forEach(writer::write)).get();
+      pool.shutdown();
+    }
+    if (runSize == 1)
+      assertNotNull(writer.getSpillDirectory(), "Runs spilled");
+    if (writer.getSpillDirectory() != null)
+      assertFalse(Files.exists(writer.getSpillDirectory()), "The spilled runs are removed");
+    return new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  @DisplayName("Same report whatever the order of the defects and the threads")
+  void order() throws Exception {
+    assertFalse(defects.isEmpty(), "Defects expected on " + ReaderTest.MBEDTLS_METRICS);
+    String expected = MainTest.legacyReport(defects);
+
+    Random random = new Random(42);
+    for (int threads : new int[] { 1, 2, 8 }) {
+      for (int runSize : new int[] { ReportWriter.RUN_SIZE, 16384, 1 }) {
+        List<Defect> shuffled = new ArrayList<>(defects);
+        Collections.shuffle(shuffled, random);
+        assertEquals(expected, write(shuffled, threads, runSize),
+                "Report written by " + threads + " threads with runs of " + runSize + " chars");
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Counts of the defects")
+  void counts() throws IOException, ExecutionException, InterruptedException {
+    File report = File.createTempFile("defects", ".json");
+    report.deleteOnExit();
+    ReportWriter writer = new ReportWriter(report.toPath(), 4096);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    pool.submit(() -> defects.parallelStream().forEach(writer::write)).get();
+    pool.shutdown();
+    writer.close();
+
+    assertEquals(defects.size(), writer.getCount(), "Count of the defects");
+    assertEquals(defects.size(), writer.getCountByFile().values().stream().mapToInt(Integer::intValue).sum(),
+            "Counts by file");
+    Map<String, Integer> expected = defects.stream()
+            .collect(Collectors.toMap(defect -> defect.checker.getName(), defect -> 1, Integer::sum));
+    assertEquals(expected, writer.getCountByChecker(), "Counts by checker");
+  }
+
+  @Test
+  @DisplayName("No report when aborted")
+  void aborted() throws IOException {
+    File report = File.createTempFile("defects", ".json");
+    report.deleteOnExit();
+    ReportWriter writer = new ReportWriter(report.toPath(), 1);
+    try (writer) {
+      defects.stream().limit(100).forEach(writer::write);
+      writer.abort();
+    }
+    assertNotNull(writer.getSpillDirectory(), "Runs spilled");
+    assertFalse(Files.exists(writer.getSpillDirectory()), "The spilled runs are removed");
+    assertFalse(report.exists(), "Partial report deleted");
+  }
+}
@@ -0,0 +1,217 @@
+package com.synopsys.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Rules of the checkers")
+class RuleTest {
+  protected static Logger logger = LogManager.getLogger(RuleTest.class);
+
+  private static List<FuncMetrics> functions;
+  private static MetricsAggregator aggregates;
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  @BeforeAll
+  static void initAll() {
+    functions = ReaderTest.parseAll(ReaderTest.MBEDTLS_METRICS);
+    aggregates = functions.parallelStream().collect(MetricsAggregator.collector());
+  }
+
+  @BeforeEach
+  void init() {
+    logger.info("");
+    logger.info("+---------------------------+");
+    logger.info("| New Test Case             |");
+    logger.info("+---------------------------+");
+    logger.info("");
+  }
+
+  //
+  // ******************************************************************************************************************
+  //
+
+  private static double value(Measurable measured, String name) {
+    MetricRef ref = MetricRef.of(name);
+    return measured.isMetrics(ref) ? measured.getMetric(ref) : Double.NaN;
+  }
+
+  private static <T extends Measurable> void assertRule(String rule, Predicate<T> expected, List<T> measured) {
+    Rule parsed = Rule.parse(rule);
+    int matches = 0;
+    for (T item : measured) {
+      boolean result = parsed.test(item);
+      assertEquals(expected.test(item), result, rule + " on " + item.getName());
+      if (result)
+        matches++;
+    }
+    logger.info("Rule '{}' holds on {} of {} objects", rule, matches, measured.size());
+  }
+
+  @Test
+  @DisplayName("Evaluation of the functions")
+  void functions() {
+    assertRule("ccm > 20 && (loc > 300 || hf > 5000)",
+            f -> value(f, "ccm") > 20 && (value(f, "loc") > 300 || value(f, "hf") > 5000), functions);
+    assertRule("ccm > 20 || loc > 300 && hf > 5000",
+            f -> value(f, "ccm") > 20 || (value(f, "loc") > 300 && value(f, "hf") > 5000), functions);
+    assertRule("!(ccm <= 10) && loc >= 50", f -> !(value(f, "ccm") <= 10) && value(f, "loc") >= 50, functions);
+    assertRule("loc - 2 * ccm > 100", f -> value(f, "loc") - 2 * value(f, "ccm") > 100, functions);
+    assertRule("(loc - 2) * ccm > 1000", f -> (value(f, "loc") - 2) * value(f, "ccm") > 1000, functions);
+    assertRule("loc / ccm < 3 && ccm != 1", f -> value(f, "loc") / value(f, "ccm") < 3 && value(f, "ccm") != 1,
+            functions);
+    assertRule("10 < ccm", f -> value(f, "ccm") > 10, functions);
+    assertRule("ccm == 5", f -> value(f, "ccm") == 5, functions);
+    assertRule("-ccm < -2 * 2.5e0 + 1", f -> -value(f, "ccm") < -4, functions);
+    assertRule("1 + 2 * 3 == 7", f -> true, functions.subList(0, 1));
+  }
+
+  @Test
+  @DisplayName("Evaluation of the composites")
+  void composites() {
+    List<CompositeMetrics> composites = new ArrayList<>(aggregates.getFiles().values());
+    composites.addAll(aggregates.getModules().values());
+    assertRule("ccm_max > 40 || ccm_mean > 12",
+            c -> c.getMetricStat(Measurable.tagCCM).max > 40 || c.getMetricStat(Measurable.tagCCM).mean() > 12,
+            composites);
+    assertRule("count > 50 && loc_sum / count > 20",
+            c -> c.getCount() > 50 && c.getMetricStat(Measurable.tagLOC).sum / c.getCount() > 20, composites);
+  }
+
+  @Test
+  @DisplayName("Undefined metrics")
+  void undefined() {
+    FuncMetrics function = functions.get(0);
+    assertFalse(Rule.parse("not_a_metric > 0").test(function), "Greater than");
+    assertFalse(Rule.parse("not_a_metric <= 0").test(function), "Lower than");
+    assertFalse(Rule.parse("not_a_metric != 0").test(function), "Not equal");
+    assertFalse(Rule.parse("not_a_metric + 1 != 0").test(function), "Not equal");
+    assertTrue(Rule.parse("!(not_a_metric > 0)").test(function), "Negation");
+    assertEquals(Arrays.asList("not_a_metric", "ccm"), Rule.parse("not_a_metric > ccm || ccm > 2").getMetrics(),
+            "Metrics of the rule");
+  }
+
+  @Test
+  @DisplayName("Syntax errors")
+  void errors() {
+    String[] invalid = { "", "ccm >", "ccm > 20 &&", "(ccm > 20", "ccm > 20)", "ccm", "ccm + 2", "ccm > 20 + (loc > 3)",
+            "!ccm", "ccm > 20 & loc > 3", "ccm # 2", "1.2.3 > ccm" };
+    for (String rule : invalid) {
+      IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> Rule.parse(rule), rule);
+      logger.info("{}", error.getMessage());
+    }
+  }
+
+  @Test
+  @DisplayName("Checker with a rule")
+  void checker() {
+    String json = "{ \"name\": \"METRICS.TEST_RULE\", \"description\": \"Test\", \"scope\": \"Function Metrics\","
+            + " \"rule\": \"ccm > 20 && (loc > 300 || hf > 5000)\", \"defect-template\": \"\" }";
+    Checker checker = new Checker(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    assertTrue(checker.isValid(), "A checker with only a rule is valid.");
+    assertNotNull(checker.getRule(), "Rule");
+    assertEquals(Arrays.asList("ccm", "loc", "hf"), checker.metricNames().collect(Collectors.toList()), "Metrics");
+    assertTrue(checker.appliesTo(Scope.FUNCTION), "Function scope");
+    assertFalse(checker.appliesTo(Scope.MODULE), "Module scope");
+
+    int defects = 0;
+    for (FuncMetrics function : functions) {
+      Defect defect = checker.check(function);
+      boolean expected = value(function, "ccm") > 20 && (value(function, "loc") > 300 || value(function, "hf") > 5000);
+      assertEquals(expected, defect != null, function.getName());
+      if (defect != null) {
+        assertEquals(Arrays.asList("ccm", "loc", "hf"), defect.violations, "Violations");
+        defects++;
+      }
+    }
+    assertTrue(defects > 0, "Some defects are expected.");
+    for (CompositeMetrics module : aggregates.getModules().values()) {
+      assertNull(checker.check(module), "Out of the scope of the rule");
+    }
+
+    // With a threshold, both the threshold and the rule must be passed over
+    Metrics threshold = new Metrics();
+    threshold.name = threshold.metric = Measurable.tagLOC;
+    threshold.scope = "";
+    threshold.value = 500;
+    checker._allMetrics.add(threshold);
+    for (FuncMetrics function : functions) {
+      boolean expected = value(function, "loc") > 500 && value(function, "ccm") > 20;
+      assertEquals(expected, checker.check(function) != null, function.getName() + " with a threshold");
+    }
+
+    String invalid = "{ \"name\": \"METRICS.TEST_RULE\", \"description\": \"Test\", \"rule\": \"ccm >\","
+            + " \"defect-template\": \"\" }";
+    assertFalse(new Checker().load(new ByteArrayInputStream(invalid.getBytes(StandardCharsets.UTF_8))),
+            "Invalid rule");
+  }
+
+  @Test
+  @DisplayName("Cost of the evaluation of a rule")
+  void benchmark() {
+    MetricRef ccm = MetricRef.of(Measurable.tagCCM);
+    MetricRef loc = MetricRef.of(Measurable.tagLOC);
+    MetricRef hf = MetricRef.of("hf");
+    // The same condition written in Java, as a checker class would
+    Predicate<Measurable> java = f -> (f.isMetrics(ccm) && f.getMetric(ccm) > 20)
+            && ((f.isMetrics(loc) && f.getMetric(loc) > 300) || (f.isMetrics(hf) && f.getMetric(hf) > 5000));
+    Rule rule = Rule.parse("ccm > 20 && (loc > 300 || hf > 5000)");
+    FuncMetrics[] items = functions.toArray(new FuncMetrics[0]);
+    int iterations = 200;
+
+    // Warm up
+    long expected = 0;
+    long actual = 0;
+    for (int i = 0; i < iterations; i++) {
+      for (FuncMetrics item : items) {
+        if (java.test(item))
+          expected++;
+        if (rule.test(item))
+          actual++;
+      }
+    }
+    assertEquals(expected, actual, "Same results");
+
+    long javaTime = Long.MAX_VALUE;
+    long ruleTime = Long.MAX_VALUE;
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        for (FuncMetrics item : items) {
+          if (java.test(item))
+            expected++;
+        }
+      }
+      javaTime = Math.min(javaTime, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        for (FuncMetrics item : items) {
+          if (rule.test(item))
+            actual++;
+        }
+      }
+      ruleTime = Math.min(ruleTime, System.nanoTime() - start);
+    }
+    long evaluations = (long) iterations * items.length;
+    logger.info("{} evaluations: {} ns each in Java, {} ns each by the rule", evaluations,
+            String.format("%.1f", (double) javaTime / evaluations),
+            String.format("%.1f", (double) ruleTime / evaluations));
+    assertEquals(expected, actual, "Same results");
+    assertTrue(ruleTime < 3 * javaTime, "The rule should be about as fast as the Java code, " + ruleTime + " ns vs "
+            + javaTime + " ns");
+  }
+}